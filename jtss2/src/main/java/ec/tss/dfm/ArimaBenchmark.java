@@ -0,0 +1,363 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tss.dfm;
+
+import ec.tstoolkit.modelling.DefaultTransformationType;
+import ec.tstoolkit.modelling.arima.PreprocessingModel;
+import ec.tstoolkit.modelling.arima.tramo.ArimaSpec;
+import ec.tstoolkit.modelling.arima.tramo.TramoSpecification;
+import ec.tstoolkit.sarima.SarimaSpecification;
+import ec.tstoolkit.timeseries.Day;
+import ec.tstoolkit.timeseries.forecasts.ArimaForecaster;
+import ec.tstoolkit.timeseries.information.TsInformationSet;
+import ec.tstoolkit.timeseries.information.TsVintageIndex;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Arima forecasts used as benchmark in the real-time simulation of dynamic
+ * factor models.
+ *
+ * For each series, the arima model is completely identified (following the
+ * given Tramo specification) on the first vintage and on the first vintage
+ * after each re-estimation day. The other vintages only re-estimate the
+ * identified model (fixed orders and transformation). The forecasts of a
+ * vintage whose data are identical to the data of the previous vintage are
+ * reused.
+ *
+ * The different series x vintage jobs are executed in parallel when an
+ * executor is provided. Each job uses its own processor, built from the
+ * specifications.
+ *
+ * @author Jean Palate
+ */
+public class ArimaBenchmark {
+
+    private final TramoSpecification spec_;
+    private ExecutorService executor_;
+    private Day[] estimationDays_;
+    private final AtomicInteger nidentified_ = new AtomicInteger(), nestimated_ = new AtomicInteger(), nreused_ = new AtomicInteger();
+
+    /**
+     *
+     * @param spec The specification used for the identification of the
+     * models (not modified)
+     */
+    public ArimaBenchmark(TramoSpecification spec) {
+        spec_ = spec.clone();
+    }
+
+    public ExecutorService getExecutor() {
+        return executor_;
+    }
+
+    /**
+     * Sets the executor used to process the different jobs in parallel. When
+     * no executor is provided (default), the jobs are processed sequentially
+     * in the calling thread. The executor is not shut down by the benchmark.
+     *
+     * @param executor The executor. May be null
+     */
+    public void setExecutor(ExecutorService executor) {
+        executor_ = executor;
+    }
+
+    public Day[] getEstimationDays() {
+        return estimationDays_;
+    }
+
+    /**
+     * Sets the days where the models are re-identified. The first vintage
+     * published on or after each of the days is re-identified.
+     *
+     * @param days The re-estimation days. May be null
+     */
+    public void setEstimationDays(Day[] days) {
+        if (days == null) {
+            estimationDays_ = null;
+        } else {
+            estimationDays_ = days.clone();
+            Arrays.sort(estimationDays_);
+        }
+    }
+
+    /**
+     *
+     * @return The number of complete identifications done by the last
+     * processing
+     */
+    public int getIdentificationsCount() {
+        return nidentified_.get();
+    }
+
+    /**
+     *
+     * @return The number of re-estimations (without identification) done by
+     * the last processing
+     */
+    public int getEstimationsCount() {
+        return nestimated_.get();
+    }
+
+    /**
+     *
+     * @return The number of vintages that reused the forecasts of the previous
+     * vintage in the last processing
+     */
+    public int getReusedCount() {
+        return nreused_.get();
+    }
+
+    /**
+     * Computes the forecasts of some series for all the vintages of a
+     * publication calendar
+     *
+     * @param info The reference information set
+     * @param series The positions of the series in the information set
+     * @param delays The publication delays of the series of the information
+     * set (see TsInformationSet.generateInformation)
+     * @param cal The publication calendar (sorted)
+     * @param horizon The end of the forecasts
+     * @return The forecasts, for each series (in the order of the array
+     * "series") and for each vintage. Null when the forecasts of a vintage
+     * couldn't be computed
+     */
+    public TsData[][] process(TsInformationSet info, int[] series, List<Integer> delays, Day[] cal, Day horizon) {
+        return process(info.createVintageIndex(delays), series, cal, horizon);
+    }
+
+    /**
+     * Computes the forecasts of some series for all the vintages of a
+     * publication calendar. The vintages of the series are generated from the
+     * index when they are processed: they are not kept in memory. The same
+     * index can be used for successive calls (series by series).
+     *
+     * @param index The vintage index of the reference information set
+     * @param series The positions of the series in the information set
+     * @param cal The publication calendar (sorted)
+     * @param horizon The end of the forecasts
+     * @return The forecasts, for each series (in the order of the array
+     * "series") and for each vintage. Null when the forecasts of a vintage
+     * couldn't be computed
+     */
+    public TsData[][] process(TsVintageIndex index, int[] series, Day[] cal, Day horizon) {
+        nidentified_.set(0);
+        nestimated_.set(0);
+        nreused_.set(0);
+        Vintages vintages = new Vintages(index, cal);
+        boolean[] identified = identificationDays(cal);
+        TsData[][] forecasts = new TsData[series.length][];
+        if (executor_ == null) {
+            for (int j = 0; j < series.length; ++j) {
+                forecasts[j] = processSeries(vintages, series[j], identified, horizon);
+            }
+        } else {
+            List<CompletableFuture<?>> jobs = new ArrayList<>();
+            for (int j = 0; j < series.length; ++j) {
+                forecasts[j] = new TsData[cal.length];
+                processParallel(vintages, series[j], identified, horizon, forecasts[j], jobs);
+            }
+            try {
+                CompletableFuture.allOf(jobs.toArray(new CompletableFuture[jobs.size()])).join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+            for (int j = 0; j < series.length; ++j) {
+                fillReused(vintages, series[j], identified, forecasts[j]);
+            }
+        }
+        return forecasts;
+    }
+
+    private TsData[] processSeries(Vintages vintages, int s, boolean[] identified, Day horizon) {
+        TsData[] f = new TsData[vintages.cal.length];
+        TramoSpecification fspec = null;
+        for (int i = 0; i < vintages.cal.length; ++i) {
+            if (i > 0 && !identified[i] && vintages.isUnchanged(s, i)) {
+                f[i] = f[i - 1];
+                nreused_.incrementAndGet();
+            } else if (identified[i] || fspec == null) {
+                fspec = identify(vintages, s, i, horizon, f);
+            } else {
+                f[i] = forecast(new ArimaForecaster(fspec.build()), vintages.get(s, i), horizon);
+                nestimated_.incrementAndGet();
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Creates the jobs of a series. The vintages are split in segments
+     * starting at each identification day. The first vintage of a segment
+     * identifies the model used by all the other vintages of the segment,
+     * which are then processed independently. As in the sequential
+     * processing, when the identification fails, the next vintage is
+     * identified again and the following vintages wait for its model. The
+     * vintages that reuse the previous forecasts are not processed (see
+     * fillReused).
+     */
+    private void processParallel(Vintages vintages, int s, boolean[] identified, Day horizon, TsData[] f, List<CompletableFuture<?>> jobs) {
+        int i = 0;
+        while (i < vintages.cal.length) {
+            final int head = i;
+            CompletableFuture<TramoSpecification> model = CompletableFuture.supplyAsync(() -> identify(vintages, s, head, horizon, f), executor_);
+            jobs.add(model);
+            while (++i < vintages.cal.length && !identified[i]) {
+                if (vintages.isUnchanged(s, i)) {
+                    continue;
+                }
+                final int cur = i;
+                final CompletableFuture<TramoSpecification> cmodel = model;
+                CompletableFuture<TramoSpecification> job = cmodel.thenApplyAsync(fspec -> {
+                    if (fspec == null) {
+                        return identify(vintages, s, cur, horizon, f);
+                    } else {
+                        f[cur] = forecast(new ArimaForecaster(fspec.build()), vintages.get(s, cur), horizon);
+                        nestimated_.incrementAndGet();
+                        return fspec;
+                    }
+                }, executor_);
+                jobs.add(job);
+                // the model of the next vintages is only changed by a new
+                // identification
+                model = cmodel.thenCompose(fspec -> fspec != null ? cmodel : job);
+            }
+        }
+    }
+
+    /**
+     * Identifies the model of a vintage and computes its forecasts
+     *
+     * @return The specification of the identified model, or null if the
+     * identification failed
+     */
+    private TramoSpecification identify(Vintages vintages, int s, int i, Day horizon, TsData[] f) {
+        ArimaForecaster af = new ArimaForecaster(spec_.build());
+        f[i] = forecast(af, vintages.get(s, i), horizon);
+        nidentified_.incrementAndGet();
+        return fixedSpecification(af.getModel());
+    }
+
+    private void fillReused(Vintages vintages, int s, boolean[] identified, TsData[] f) {
+        for (int i = 1; i < vintages.cal.length; ++i) {
+            if (!identified[i] && vintages.isUnchanged(s, i)) {
+                f[i] = f[i - 1];
+                nreused_.incrementAndGet();
+            }
+        }
+    }
+
+    private static TsData forecast(ArimaForecaster af, TsInformationSet info, Day horizon) {
+        try {
+            if (!af.process(info, 0, horizon)) {
+                return null;
+            }
+        } catch (RuntimeException err) {
+            // too short series... The identification (if any) has failed
+            return null;
+        }
+        return af.getForecast();
+    }
+
+    /**
+     * Vintages of the series of a calendar, generated on demand
+     */
+    private static class Vintages {
+
+        private final TsVintageIndex index;
+        private final Day[] cal;
+
+        private Vintages(TsVintageIndex index, Day[] cal) {
+            this.index = index;
+            this.cal = cal;
+        }
+
+        /**
+         * Information set that only contains the vintage i of the series s
+         */
+        private TsInformationSet get(int s, int i) {
+            return new TsInformationSet(new TsData[]{index.getSeries(s, cal[i])});
+        }
+
+        /**
+         * The vintages of a series are the first periods of the series, so
+         * that they are identical when they have the same length
+         */
+        private boolean isUnchanged(int s, int i) {
+            return index.getVisibleCount(s, cal[i]) == index.getVisibleCount(s, cal[i - 1]);
+        }
+    }
+
+    /**
+     * Flags the vintages where the models must be identified: the first
+     * vintage and the first vintage on or after each estimation day
+     */
+    private boolean[] identificationDays(Day[] cal) {
+        boolean[] identified = new boolean[cal.length];
+        if (cal.length == 0) {
+            return identified;
+        }
+        identified[0] = true;
+        if (estimationDays_ != null) {
+            int j = 0;
+            for (int i = 0; i < cal.length && j < estimationDays_.length; ++i) {
+                if (cal[i].isNotBefore(estimationDays_[j])) {
+                    identified[i] = true;
+                    while (j < estimationDays_.length && cal[i].isNotBefore(estimationDays_[j])) {
+                        ++j;
+                    }
+                }
+            }
+        }
+        return identified;
+    }
+
+    /**
+     * Specification that re-estimates a given model, without automatic
+     * identification of the arima model and of the transformation
+     *
+     * @param model The identified model
+     * @return The specification or null if the model is not available
+     */
+    private TramoSpecification fixedSpecification(PreprocessingModel model) {
+        if (model == null) {
+            return null;
+        }
+        TramoSpecification fspec = spec_.clone();
+        SarimaSpecification sspec = model.description.getSpecification();
+        ArimaSpec arima = fspec.getArima();
+        arima.setP(sspec.getP());
+        arima.setD(sspec.getD());
+        arima.setQ(sspec.getQ());
+        arima.setBP(sspec.getBP());
+        arima.setBD(sspec.getBD());
+        arima.setBQ(sspec.getBQ());
+        arima.setMean(model.description.isMean());
+        fspec.getAutoModel().setEnabled(false);
+        fspec.getTransform().setFunction(model.isMultiplicative() ? DefaultTransformationType.Log : DefaultTransformationType.None);
+        return fspec;
+    }
+}
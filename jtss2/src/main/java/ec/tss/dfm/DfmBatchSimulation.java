@@ -0,0 +1,339 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tss.dfm;
+
+import ec.tss.xml.information.XmlInformationSet;
+import ec.tstoolkit.dfm.DfmSimulationSpec;
+import ec.tstoolkit.dfm.MeasurementSpec;
+import ec.tstoolkit.information.InformationSet;
+import ec.tstoolkit.modelling.arima.tramo.TramoSpecification;
+import ec.tstoolkit.timeseries.Day;
+import ec.tstoolkit.timeseries.information.TsInformationSet;
+import ec.tstoolkit.timeseries.information.TsVintageIndex;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+/**
+ * Headless execution of the real-time simulation of a dynamic factor model.
+ *
+ * The simulation is applied on the current document of a versioned document.
+ * The results of each vintage are written to disk as soon as they are
+ * available, so that the vintages are not kept in memory. The output folder
+ * contains:
+ * - dfm.txt: the smoothed series (in the scale of the raw data) of each
+ * vintage
+ * - arima.txt: the arima benchmark forecasts of each vintage (optional)
+ *
+ * Both files are tab-separated, with one line for each vintage x series x
+ * period: publication day, series (1-based), period, value. The lines of
+ * different vintages are not necessarily ordered.
+ *
+ * The series of the document must be available in the current environment
+ * (frozen data or providers registered in the class path).
+ *
+ * @author Jean Palate
+ */
+public class DfmBatchSimulation {
+
+    public static final String DFM_FILE = "dfm.txt", ARIMA_FILE = "arima.txt";
+
+    private int nthreads_ = Runtime.getRuntime().availableProcessors();
+    private TramoSpecification arimaSpec_ = TramoSpecification.TRfull;
+    private boolean verbose_;
+
+    /**
+     *
+     * @return The number of threads used by the simulation
+     */
+    public int getThreadsCount() {
+        return nthreads_;
+    }
+
+    /**
+     * Sets the number of threads used by the simulation. The vintages are
+     * processed sequentially when n is 1
+     *
+     * @param n
+     */
+    public void setThreadsCount(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("The number of threads should be positive");
+        }
+        nthreads_ = n;
+    }
+
+    /**
+     *
+     * @return The specification of the arima benchmark. Null if the benchmark
+     * is not computed
+     */
+    public TramoSpecification getArimaSpecification() {
+        return arimaSpec_;
+    }
+
+    public void setArimaSpecification(TramoSpecification spec) {
+        arimaSpec_ = spec;
+    }
+
+    public boolean isVerbose() {
+        return verbose_;
+    }
+
+    public void setVerbose(boolean verbose) {
+        verbose_ = verbose;
+    }
+
+    /**
+     * Runs the simulation
+     *
+     * @param vdoc The document. It is not modified
+     * @param spec The specification of the simulation. If null, the
+     * specification of the document is used
+     * @param folder The output folder
+     * @return The number of processed vintages
+     * @throws IOException
+     */
+    public int process(VersionedDfmDocument vdoc, DfmSimulationSpec spec, File folder) throws IOException {
+        // the specification of the simulation is changed on a copy
+        DfmDocument doc = vdoc.getCurrent().clone();
+        if (spec != null) {
+            doc.getSpecification().setSimulationSpec(spec.clone());
+        }
+        DfmSimulationSpec sspec = doc.getSpecification().getSimulationSpec();
+        Day[] estimationDays = sspec.getEstimationDays().clone();
+        Arrays.sort(estimationDays);
+
+        TsInformationSet info = new TsInformationSet(doc.getData());
+        TsPeriod last = info.getCurrentDomain().getLast();
+        last.move(last.getFrequency().intValue());
+        Day horizon = last.lastday();
+
+        List<MeasurementSpec> measurements = doc.getSpecification().getModelSpec().getMeasurements();
+        int[] series = IntStream.range(0, measurements.size()).filter(j -> measurements.get(j).isWatched()).toArray();
+        if (series.length == 0) {
+            series = IntStream.range(0, measurements.size()).toArray();
+        }
+        List<Integer> delays = new ArrayList<>();
+        for (MeasurementSpec m : measurements) {
+            delays.add(m.getDelay());
+        }
+
+        Day[] cal = DfmSimulation.generateCalendar(doc);
+        ExecutorService executor = nthreads_ > 1 ? Executors.newFixedThreadPool(nthreads_) : null;
+        try {
+            DfmSimulation simulation = new DfmSimulation(horizon);
+            simulation.setExecutor(executor);
+            if (verbose_) {
+                simulation.addPropertyChangeListener(evt -> {
+                    if (evt.getPropertyName().equals(DfmSimulation.CALENDAR_RESULTS)) {
+                        System.out.println("Processing vintage " + evt.getNewValue());
+                    }
+                });
+            }
+            final int[] sseries = series;
+            try (Writer writer = Files.newBufferedWriter(new File(folder, DFM_FILE).toPath(), StandardCharsets.UTF_8)) {
+                writeHeader(writer);
+                simulation.setResultsConsumer((day, rslts) -> {
+                    if (rslts != null && rslts.getSimulationResults() != null) {
+                        for (int s : sseries) {
+                            write(writer, day, s, rslts.getSimulationResults().getData("var" + (s + 1), TsData.class));
+                        }
+                    }
+                });
+                simulation.process(doc, cal, new ArrayList<>(Arrays.asList(estimationDays)));
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+
+            if (arimaSpec_ != null) {
+                ArimaBenchmark benchmark = new ArimaBenchmark(arimaSpec_);
+                benchmark.setExecutor(executor);
+                benchmark.setEstimationDays(estimationDays);
+                // the vintages are generated on demand from the index, which
+                // is shared by all the series
+                TsVintageIndex index = info.createVintageIndex(delays);
+                try (Writer writer = Files.newBufferedWriter(new File(folder, ARIMA_FILE).toPath(), StandardCharsets.UTF_8)) {
+                    writeHeader(writer);
+                    // series by series, to limit the memory usage
+                    for (int s : series) {
+                        if (verbose_) {
+                            System.out.println("Processing arima benchmark of series " + (s + 1));
+                        }
+                        TsData[] f = benchmark.process(index, new int[]{s}, cal, horizon)[0];
+                        for (int i = 0; i < cal.length; ++i) {
+                            write(writer, cal[i], s, f[i]);
+                        }
+                    }
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        return cal.length;
+    }
+
+    private static void writeHeader(Writer writer) throws IOException {
+        writer.append("day\tseries\tperiod\tvalue").append(System.lineSeparator());
+    }
+
+    private static void write(Writer writer, Day day, int s, TsData data) {
+        if (data == null) {
+            return;
+        }
+        try {
+            String prefix = day.toString() + '\t' + (s + 1) + '\t';
+            TsPeriod start = data.getStart();
+            for (int i = 0; i < data.getLength(); ++i) {
+                double v = data.get(i);
+                if (Double.isFinite(v)) {
+                    writer.append(prefix).append(start.plus(i).toString())
+                            .append('\t').append(Double.toString(v)).append(System.lineSeparator());
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Reads an information set (generic xml format of the workspaces)
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static InformationSet readInformation(File file) throws IOException {
+        try {
+            XmlInformationSet xml = (XmlInformationSet) JAXBContext.newInstance(XmlInformationSet.class)
+                    .createUnmarshaller().unmarshal(file);
+            return xml.create();
+        } catch (JAXBException ex) {
+            throw new IOException("Invalid file: " + file, ex);
+        }
+    }
+
+    /**
+     * Command line execution:
+     * DfmBatchSimulation document folder [-spec simulation] [-threads n]
+     * [-noarima] [-verbose]
+     *
+     * - document: the versioned document (xml file of the workspace)
+     * - folder: the output folder
+     * - simulation: a specification of the simulation (xml file). By default,
+     * the specification of the document is used
+     * - n: the number of threads (number of processors by default)
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        File docFile = new File(args[0]), folder = new File(args[1]);
+        File specFile = null;
+        DfmBatchSimulation batch = new DfmBatchSimulation();
+        for (int i = 2; i < args.length; ++i) {
+            switch (args[i]) {
+                case "-spec":
+                    if (++i == args.length) {
+                        usage();
+                        return;
+                    }
+                    specFile = new File(args[i]);
+                    break;
+                case "-threads":
+                    if (++i == args.length) {
+                        usage();
+                        return;
+                    }
+                    int n = threads(args[i]);
+                    if (n < 1) {
+                        System.err.println("Invalid number of threads: " + args[i]);
+                        usage();
+                        return;
+                    }
+                    batch.setThreadsCount(n);
+                    break;
+                case "-noarima":
+                    batch.setArimaSpecification(null);
+                    break;
+                case "-verbose":
+                    batch.setVerbose(true);
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+        try {
+            VersionedDfmDocument vdoc = new VersionedDfmDocument();
+            if (!vdoc.read(readInformation(docFile))) {
+                System.err.println("Invalid document: " + docFile);
+                return;
+            }
+            DfmSimulationSpec spec = null;
+            if (specFile != null) {
+                spec = new DfmSimulationSpec();
+                if (!spec.read(readInformation(specFile))) {
+                    System.err.println("Invalid specification: " + specFile);
+                    return;
+                }
+            }
+            if (!folder.exists() && !folder.mkdirs()) {
+                System.err.println("Invalid folder: " + folder);
+                return;
+            }
+            long t0 = System.currentTimeMillis();
+            int n = batch.process(vdoc, spec, folder);
+            long t1 = System.currentTimeMillis();
+            System.out.println(n + " vintages processed in " + (t1 - t0) + " ms");
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    private static int threads(String arg) {
+        try {
+            return Integer.parseInt(arg);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: DfmBatchSimulation document folder [-spec simulation] [-threads n] [-noarima] [-verbose]");
+    }
+}
@@ -63,9 +63,19 @@ import ec.tstoolkit.timeseries.information.TsInformationSet;
 import ec.tstoolkit.timeseries.simplets.TsData;
 import ec.tstoolkit.timeseries.simplets.TsDomain;
 import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  *
@@ -226,56 +236,17 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
 
             @Override
             public IProcessing.Status process(TsData[] input, Map<String, IProcResults> results) {
-                List<MeasurementSpec> measurements = spec.getModelSpec().getMeasurements();
                 int n = input.length;
-                if (n != measurements.size()) {
+                if (n != spec.getModelSpec().getMeasurements().size()) {
                     return IProcessing.Status.Invalid;
                 }
                 TsData[] trs = new TsData[n];
-                TsData[] sc = new TsData[n];
-                DfmSeriesDescriptor[] desc = new DfmSeriesDescriptor[n];
-                int k = 0;
-                for (MeasurementSpec ms : measurements) {
-                    desc[k] = new DfmSeriesDescriptor(k);
-                    TsData s = input[k].clone();
-                    if (s == null) {
-                        return IProcessing.Status.Invalid;
-                    }
-                    TsData[] stack = transform(s, ms.getSeriesTransformations(), spec.getSaSpec());
-                    s = stack[stack.length - 1];
-                    if (s == null) {
-                        return IProcessing.Status.Invalid;
-                    }
-
-                    double m = ms.getMean(), e = ms.getStdev();
-                    if (Double.isNaN(m) || Double.isNaN(e)) {
-                        DescriptiveStatistics stats = new DescriptiveStatistics(s);
-                        m = stats.getAverage();
-                        e = stats.getStdev();
-                    }
-                    trs[k] = s.clone();
-                    s.getValues().sub(m);
-                    s.getValues().div(e);
-                    desc[k].mean = m;
-                    desc[k].stdev = e;
-                    desc[k].transformations = ms.getSeriesTransformations();
-                    sc[k++] = s;
+                DfmResults start = prepare(spec, spec.getModelSpec().build(), input, spec.getModelSpec().getForecastHorizon(), trs);
+                if (start == null) {
+                    return IProcessing.Status.Invalid;
                 }
                 MultiTsData inputc = new MultiTsData("var", trs);
                 results.put(INPUTC, inputc);
-                TsInformationSet dinfo = new TsInformationSet(sc);
-                int fh = spec.getModelSpec().getForecastHorizon();
-                if (fh < 0) {
-                    fh = -fh * dinfo.getCurrentDomain().getFrequency().intValue();
-                }
-                if (fh > 0) {
-                    TsPeriod last = dinfo.getCurrentDomain().getLast();
-                    last.move(fh);
-                    Day lastday = last.lastday();
-                    dinfo = dinfo.extendTo(lastday);
-                }
-                DfmResults start = new DfmResults(spec.getModelSpec().build(), dinfo);
-                start.setDescriptions(desc);
                 if (!spec.getModelSpec().isDefined()) {
                     new DefaultInitializer().initialize(start.getModel(), start.getInput());
                 }
@@ -345,27 +316,12 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
 
             @Override
             public IProcessing.Status process(TsData[] input, Map<String, IProcResults> results) {
-                List<MeasurementSpec> measurements = spec.getModelSpec().getMeasurements();
                 int n = input.length;
-                if (n != measurements.size()) {
+                if (n != spec.getModelSpec().getMeasurements().size()) {
                     return IProcessing.Status.Invalid;
                 }
-                TsData[] trs = new TsData[n];
                 DfmResults dfm = (DfmResults) results.get(DFM);
-                for (int i = 0; i < n; ++i) {
-                    TsData s = dfm.getData(DfmResults.SMOOTHED + (i + 1), TsData.class);
-                    if (s != null) {
-                        try {
-                            s = s.changeFrequency(input[i].getFrequency(), TsAggregationType.Last, false);
-                        } catch (ArrayIndexOutOfBoundsException ex) {
-                            s = s.changeFrequency(input[i].getFrequency(), TsAggregationType.Last, false);
-                        }
-                        DfmSeriesDescriptor desc = dfm.getDescription(i);
-                        TsData[] stack = untransform(input[i], s, desc.transformations, spec.getSaSpec());
-                        trs[i] = stack[0];
-                    }
-                }
-                MultiTsData finalc = new MultiTsData("var", trs);
+                MultiTsData finalc = new MultiTsData("var", finalSeries(input, dfm, spec.getSaSpec()));
                 results.put(FINALC, finalc);
 
                 return IProcessing.Status.Valid;
@@ -407,6 +363,7 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
                 em.setMaxIter(spec.getMaxIter());
                 em.setCorrectingInitialVariance(end);
                 em.setEpsilon(spec.getPrecision());
+                em.setAccelerated(spec.getAcceleration() == EmSpec.Acceleration.Squarem);
                 initializer = em;
                 if (DfmProcessingFactory.this.hasHooks()) {
                     hook = new IProcessingHook<DfmEM2, DynamicFactorModel>() {
@@ -516,6 +473,10 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
             estimator.setIndependentVarShocks(spec.isIndependentVarShocks());
             estimator.setUsingBlockIterations(spec.isBlockIterations());
             estimator.setPrecision(spec.getPrecision());
+            estimator.setSteadyStateTolerance(spec.getSteadyStateTolerance());
+            estimator.setUnivariate(spec.isUnivariate());
+            estimator.setAnalyticDerivatives(spec.isAnalyticDerivatives());
+            estimator.setThreadsCount(spec.getThreadsCount());
             if (!estimator.estimate(rslts.getModel(), actualData)) {
                 return IProcessing.Status.Invalid;
             } else {
@@ -556,6 +517,237 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
         }
     }
 
+    /**
+     * Transforms and scales the input of a dynamic factor model, following the
+     * given specification, and creates the corresponding (unprocessed)
+     * results.
+     *
+     * @param spec The specification (not modified)
+     * @param model The model used in the results
+     * @param input The raw series
+     * @param fh The forecast horizon, in periods (&gt; 0) or in years (&lt; 0)
+     * @param trs The transformed (not scaled) series, filled by the method. May
+     * be null
+     * @return The results or null if the input is invalid
+     */
+    public static DfmResults prepare(DfmSpec spec, DynamicFactorModel model, TsData[] input, int fh, TsData[] trs) {
+        List<MeasurementSpec> measurements = spec.getModelSpec().getMeasurements();
+        int n = input.length;
+        if (n != measurements.size()) {
+            return null;
+        }
+        for (int i = 0; i < n; ++i) {
+            if (input[i] == null) {
+                return null;
+            }
+        }
+        // the (possibly expensive) transformations of the different series
+        // are independent
+        List<MeasurementSpec.Transformation[]> transformations = new ArrayList<>();
+        for (MeasurementSpec ms : measurements) {
+            transformations.add(ms.getSeriesTransformations());
+        }
+        TsData[] tr = new TsData[n];
+        forEach(transformations, i -> {
+            TsData[] stack = transform(input[i], transformations.get(i), spec.getSaSpec());
+            tr[i] = stack[stack.length - 1];
+        });
+        TsData[] sc = new TsData[n];
+        DfmSeriesDescriptor[] desc = new DfmSeriesDescriptor[n];
+        int k = 0;
+        for (MeasurementSpec ms : measurements) {
+            desc[k] = new DfmSeriesDescriptor(k);
+            TsData s = tr[k];
+            if (s == null) {
+                return null;
+            }
+
+            double m = ms.getMean(), e = ms.getStdev();
+            if (Double.isNaN(m) || Double.isNaN(e)) {
+                DescriptiveStatistics stats = new DescriptiveStatistics(s);
+                m = stats.getAverage();
+                e = stats.getStdev();
+            }
+            if (trs != null) {
+                trs[k] = s.clone();
+            }
+            s.getValues().sub(m);
+            s.getValues().div(e);
+            desc[k].mean = m;
+            desc[k].stdev = e;
+            desc[k].transformations = ms.getSeriesTransformations();
+            sc[k++] = s;
+        }
+        TsInformationSet dinfo = new TsInformationSet(sc);
+        if (fh < 0) {
+            fh = -fh * dinfo.getCurrentDomain().getFrequency().intValue();
+        }
+        if (fh > 0) {
+            TsPeriod last = dinfo.getCurrentDomain().getLast();
+            last.move(fh);
+            Day lastday = last.lastday();
+            dinfo = dinfo.extendTo(lastday);
+        }
+        DfmResults rslts = new DfmResults(model, dinfo);
+        rslts.setDescriptions(desc);
+        NumericalProcessingSpec nspec = spec.getEstimationSpec().getNumericalProcessingSpec();
+        rslts.getProcessor().setSteadyStateTolerance(nspec.getSteadyStateTolerance());
+        rslts.getProcessor().setUnivariate(nspec.isUnivariate());
+        rslts.getProcessor().setCheckpointInterval(nspec.getCheckpointInterval());
+        return rslts;
+    }
+
+    /**
+     * Smoothed series of a processed model, expressed in the scale of the
+     * raw input
+     *
+     * @param input The raw series
+     * @param dfm The results of the model
+     * @param saspec The specification used for the seasonal adjustment
+     * @return
+     */
+    public static TsData[] finalSeries(TsData[] input, DfmResults dfm, ISaSpecification saspec) {
+        int n = input.length;
+        TsData[] smoothed = new TsData[n];
+        for (int i = 0; i < n; ++i) {
+            smoothed[i] = dfm.getData(DfmResults.SMOOTHED + (i + 1), TsData.class);
+        }
+        TsData[] trs = new TsData[n];
+        List<MeasurementSpec.Transformation[]> transformations = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            transformations.add(dfm.getDescription(i).transformations);
+        }
+        forEach(transformations, i -> {
+            TsData s = smoothed[i];
+            if (s != null) {
+                try {
+                    s = s.changeFrequency(input[i].getFrequency(), TsAggregationType.Last, false);
+                } catch (ArrayIndexOutOfBoundsException ex) {
+                    s = s.changeFrequency(input[i].getFrequency(), TsAggregationType.Last, false);
+                }
+                TsData[] stack = untransform(input[i], s, transformations.get(i), saspec);
+                trs[i] = stack[0];
+            }
+        });
+        return trs;
+    }
+
+    /**
+     * Processes the series. The series are processed in parallel when at
+     * least one of them is seasonally adjusted (the other transformations are
+     * too cheap to justify it).
+     *
+     * The series are processed in the executor of the current environment, if
+     * any (see Environment), or in the common fork-join pool otherwise. In
+     * both cases, the tasks run in the environment of the calling thread.
+     */
+    private static void forEach(List<MeasurementSpec.Transformation[]> transformations, IntConsumer fn) {
+        int n = transformations.size();
+        if (n < 2 || !transformations.stream()
+                .anyMatch(tr -> tr != null && Arrays.asList(tr).contains(MeasurementSpec.Transformation.Sa))) {
+            for (int i = 0; i < n; ++i) {
+                fn.accept(i);
+            }
+            return;
+        }
+        Environment env = ENVIRONMENT.get();
+        if (env == null) {
+            IntStream.range(0, n).parallel().forEach(fn);
+        } else if (env.executor == null) {
+            IntStream.range(0, n).parallel().forEach(i -> env.run(() -> fn.accept(i)));
+        } else {
+            // the calling thread takes the tasks that are not started yet, so
+            // that the workers of the executor never wait for its queue
+            List<FutureTask<Void>> tasks = new ArrayList<>();
+            for (int i = 1; i < n; ++i) {
+                final int j = i;
+                FutureTask<Void> task = new FutureTask<>(() -> env.run(() -> fn.accept(j)), null);
+                env.executor.execute(task);
+                tasks.add(task);
+            }
+            fn.accept(0);
+            for (FutureTask<Void> task : tasks) {
+                task.run();
+            }
+            for (FutureTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(ex);
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
+                    }
+                    if (ex.getCause() instanceof Error) {
+                        throw (Error) ex.getCause();
+                    }
+                    throw new IllegalStateException(ex.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Environment of the processing, bound to the current thread by call or
+     * run. The environment provides its own cache of seasonal adjustments
+     * (see seasonalAdjustment), which is discarded with the environment, and
+     * the executor used to process the different series of a model (see
+     * prepare and finalSeries). A simulation creates an environment for its
+     * run, so that its (numerous) seasonal adjustments don't replace the ones
+     * of the documents and so that the whole simulation is processed by its
+     * own executor.
+     */
+    public static final class Environment {
+
+        private final Map<SaKey, SoftReference<CompositeResults>> cache = createSaCache();
+        private final Executor executor;
+
+        /**
+         *
+         * @param executor The executor used to process the series in parallel.
+         * If null, the common fork-join pool is used
+         */
+        public Environment(Executor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Calls a function in this environment
+         *
+         * @param <T>
+         * @param fn The function
+         * @return The result of the function
+         */
+        public <T> T call(Supplier<T> fn) {
+            Environment old = ENVIRONMENT.get();
+            ENVIRONMENT.set(this);
+            try {
+                return fn.get();
+            } finally {
+                if (old == null) {
+                    ENVIRONMENT.remove();
+                } else {
+                    ENVIRONMENT.set(old);
+                }
+            }
+        }
+
+        /**
+         * Runs a task in this environment
+         *
+         * @param fn The task
+         */
+        public void run(Runnable fn) {
+            call(() -> {
+                fn.run();
+                return null;
+            });
+        }
+    }
+
+    private static final ThreadLocal<Environment> ENVIRONMENT = new ThreadLocal<>();
+
     public static TsData transform(TsData s, MeasurementSpec.Transformation tr, ISaSpecification spec) {
         if (s == null) {
             return null;
@@ -568,7 +760,7 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
             case DiffY:
                 return s.delta(s.getFrequency().intValue());
             case Sa:
-                CompositeResults sarslts = SaManager.instance.process(spec, s);
+                CompositeResults sarslts = seasonalAdjustment(spec, s);
                 if (sarslts == null) {
                     return null;
                 }
@@ -576,7 +768,8 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
                 if (sa == null) {
                     return s.clone();
                 } else {
-                    return sa;
+                    // the cached results must not be modified
+                    return sa.clone();
                 }
         }
         return null;
@@ -658,7 +851,7 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
                 return orig.clone();
             }
         }
-        CompositeResults sarslts = SaManager.instance.process(spec, orig);
+        CompositeResults sarslts = seasonalAdjustment(spec, orig);
         if (sarslts == null) {
             return cur;
         }
@@ -724,4 +917,111 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
         return x;
     }
 
+    /**
+     * Maximum number of seasonal adjustments kept in the cache
+     */
+    public static final int SA_CACHE_SIZE = 200;
+
+    /**
+     * Recent seasonal adjustments, identified by the adjusted series and by
+     * the specification. The same series are adjusted again and again when a
+     * document is re-computed, when its final series are computed (see
+     * untransform) or when the successive vintages of a simulation are
+     * processed (most series are unchanged between two vintages).
+     *
+     * The results are softly referenced, so that they can be reclaimed when
+     * the memory is low. The simulations use the cache of their own
+     * environment (see Environment).
+     */
+    private static final Map<SaKey, SoftReference<CompositeResults>> SA_CACHE = createSaCache();
+
+    private static Map<SaKey, SoftReference<CompositeResults>> createSaCache() {
+        return new LinkedHashMap<SaKey, SoftReference<CompositeResults>>(16, .75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SaKey, SoftReference<CompositeResults>> eldest) {
+                return size() > SA_CACHE_SIZE;
+            }
+        };
+    }
+
+    private static final class SaKey {
+
+        private final TsData s;
+        private final ISaSpecification spec;
+        private final int hash;
+
+        SaKey(TsData s, ISaSpecification spec) {
+            this.s = s;
+            this.spec = spec;
+            this.hash = 31 * s.getDomain().hashCode() + Arrays.hashCode(s.getValues().internalStorage());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SaKey)) {
+                return false;
+            }
+            SaKey other = (SaKey) obj;
+            return hash == other.hash && s.getDomain().equals(other.s.getDomain())
+                    && Arrays.equals(s.getValues().internalStorage(), other.s.getValues().internalStorage())
+                    && spec.equals(other.spec);
+        }
+    }
+
+    /**
+     * Seasonal adjustment of a series, which is reused when the same series is
+     * adjusted with the same specification. The results should not be
+     * modified. The cache of the current environment (if any) is used instead
+     * of the global cache.
+     *
+     * @param spec The specification
+     * @param s The series
+     * @return The results of the seasonal adjustment (may be null)
+     */
+    public static CompositeResults seasonalAdjustment(ISaSpecification spec, TsData s) {
+        if (spec == null) {
+            return SaManager.instance.process(spec, s);
+        }
+        Environment env = ENVIRONMENT.get();
+        Map<SaKey, SoftReference<CompositeResults>> cache = env == null ? SA_CACHE : env.cache;
+        SaKey key = new SaKey(s, spec);
+        synchronized (cache) {
+            SoftReference<CompositeResults> ref = cache.get(key);
+            if (ref != null) {
+                CompositeResults rslts = ref.get();
+                if (rslts != null) {
+                    return rslts;
+                }
+                cache.remove(key);
+            }
+        }
+        CompositeResults rslts = SaManager.instance.process(spec, s);
+        if (rslts != null) {
+            // the key is protected against further modifications
+            SaKey nkey = new SaKey(s.clone(), (ISaSpecification) spec.clone());
+            synchronized (cache) {
+                cache.put(nkey, new SoftReference<>(rslts));
+            }
+        }
+        return rslts;
+    }
+
+    /**
+     * Removes all the seasonal adjustments kept in the global cache (the
+     * caches of the environments are not affected)
+     */
+    public static void clearSaCache() {
+        synchronized (SA_CACHE) {
+            SA_CACHE.clear();
+        }
+    }
 }
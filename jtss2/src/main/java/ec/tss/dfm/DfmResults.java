@@ -41,6 +41,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  *
@@ -72,8 +73,14 @@ public class DfmResults implements IProcResults {
     private TsData[] smoothedSignalUncertainty; // incorporates stdev
     private DfmSeriesDescriptor[] description;
     private TsData[] smoothedSignalProjection; // incorporates mean and stdev
+    private double[][][][] responses; // irf and fevd: variables x shocks x periods, incorporates stdev
+    private int responsesHorizon;
+    // options of the smoothing
+    private final DfmProcessor processor = new DfmProcessor();
 
     private final List<ProcessingInformation> infos = new ArrayList<>();
+    // chunks of periods used in the computation of the signals
+    private static final int SIGNAL_CHUNK = 64, SIGNAL_PARALLEL_THRESHOLD = 20000;
 
     public DfmResults(DynamicFactorModel model, TsInformationSet input) {
         this.model = model;
@@ -84,6 +91,19 @@ public class DfmResults implements IProcResults {
         return model;
     }
 
+    /**
+     * Gets the processor used for the computation of the smoothed states. Its
+     * options (steady state, univariate treatment, checkpoints) should be set
+     * before the first access to the smoothed results. Only the filtered
+     * states (getFactor_Filtered) are used from the filtering results, so
+     * that they don't depend on these options.
+     *
+     * @return
+     */
+    public DfmProcessor getProcessor() {
+        return processor;
+    }
+
     public void clear() {
         if (filtering != null) {
             filtering.clear();
@@ -97,6 +117,7 @@ public class DfmResults implements IProcResults {
         }
         input = null;
         mssf = null;
+        responses = null;
         if (likelihood != null) {
             likelihood.clear();
         }
@@ -151,6 +172,8 @@ public class DfmResults implements IProcResults {
 
     public void setDescriptions(DfmSeriesDescriptor[] desc) {
         description = desc;
+        // the cached responses incorporate the stdev of the variables
+        responses = null;
     }
 
     public void setLikelihood(Likelihood ll) {
@@ -264,10 +287,24 @@ public class DfmResults implements IProcResults {
         return new TsData(currentDomain.getStart(), smoothing.componentStdev(idx * model.getBlockLength()), true);
     }
 
+    /**
+     * Computes the smoothed states. Only the variances of the states and of
+     * the signals (ZPZ' for each measurement) are kept; the complete
+     * covariance matrices are not stored
+     */
     private void calcSmoothedStates() {
-        DfmProcessor processor = new DfmProcessor();
         processor.setCalcVariance(true);
-        processor.process(model, input);
+        IMSsf ssf = getSsf();
+        int N = ssf.getVarsCount();
+        Matrix Z = new Matrix(N, ssf.getStateDim());
+        for (int v = 0; v < N; ++v) {
+            ssf.Z(0, v, Z.row(v));
+        }
+        MSmoothingResults srslts = new MSmoothingResults();
+        srslts.setSaveFullP(false);
+        srslts.setSaveDiagonal(true);
+        srslts.setProjections(Z);
+        processor.process(model, input, srslts);
         smoothing = processor.getSmoothingResults();
         filtering = processor.getFilteringResults();
 
@@ -324,56 +361,7 @@ public class DfmResults implements IProcResults {
     }
 
     public void calcSmoothedSignal() {
-
-        if (smoothing == null) {
-            calcSmoothedStates();
-        }
-
-        DataBlockStorage m_a = smoothing.getSmoothedStates();
-
-        if (m_a == null) {
-            throw new Error("smoothed states are null");
-        }
-
-        int m_used = m_a.getCurrentSize();
-        int r = model.getFactorsCount();
-        int c_ = model.getBlockLength();
-        int nlags = model.getTransition().nlags;
-        // arrange the factors in a notation compatible with the state-space 
-        // representation
-        Matrix Z = new Matrix(r * c_, m_used);
-        for (int i = 0; i < r * c_; i++) {
-            Z.row(i).copy(m_a.item(i));
-        }
-
-        IMSsf ssf = getSsf();
-        int N = ssf.getVarsCount();
-
-        // List<DynamicFactorModel.MeasurementDescriptor> measurements = model.getMeasurements();
-        double[][] signal = new double[N][m_used];
-
-        for (int t = 0; t < m_used; t++) {
-            DataBlock temp = Z.column(t);
-            for (int v = 0; v < N; v++) {
-                signal[v][t] = ssf.ZX(0, v, temp);
-            }
-        }
-
-        TsDomain currentDomain = input.getCurrentDomain();
-        TsData[] smoothedSignal_ = new TsData[N];
-        for (int v = 0; v < N; v++) {
-            smoothedSignal_[v] = new TsData(currentDomain.getStart(), signal[v], false);
-        }
-
-        if (description == null) {
-            throw new Error("missing description of the data transformations, mean and standard deviation  (object of the class DfmSeriesDescriptor[] has not been defined)");
-        }
-
-        smoothedSignal = new TsData[N];
-        for (int v = 0; v < N; v++) {
-            smoothedSignal[v] = smoothedSignal_[v].times(description[v].stdev);//.plus(description[v].mean);
-        }
-
+        calcSmoothedSignals();
     }
 
     public void calcSmoothedNoise() {
@@ -506,29 +494,19 @@ public class DfmResults implements IProcResults {
     public Matrix getVarianceDecompositionIdx(int[] horizon, int v) {
 
         int r = model.getFactorsCount();
+        double[][][] fevd = responses(horizon)[1];
         varianceDecompositionIdx = new Matrix(r + 1, horizon.length);
-        Matrix varDec;
-
-        for (int shock = 0; shock < r + 1; shock++) {
-
-            if (shock < r) {
-
-                varDec = getVarianceDecompositionShock(horizon, shock).clone();
-
-                for (int h = 0; h < horizon.length; h++) {
-
-                    varianceDecompositionIdx.set(shock, h, varDec.get(v, h));
-                }
-
-            } else {
-                double var = description[v].stdev * description[v].stdev;
-                for (int h = 0; h < horizon.length; h++) {
-
-                    varianceDecompositionIdx.set(shock, h, model.getMeasurements().get(v).var * var);
-                }
 
+        for (int h = 0; h < horizon.length; h++) {
+            int k = period(horizon[h]);
+            for (int shock = 0; shock < r; shock++) {
+                varianceDecompositionIdx.set(shock, h, fevd[v][shock][k]);
             }
+        }
 
+        double var = description[v].stdev * description[v].stdev;
+        for (int h = 0; h < horizon.length; h++) {
+            varianceDecompositionIdx.set(r, h, model.getMeasurements().get(v).var * var);
         }
 
         return varianceDecompositionIdx;
@@ -545,80 +523,15 @@ public class DfmResults implements IProcResults {
      */
     public Matrix getVarianceDecompositionShock(int[] horizon, int shock) {
 
-        IMSsf ssf = getSsf();
-        int r = model.getFactorsCount();
         int N = model.getMeasurementsCount();
-
-        int c_ = model.getBlockLength();
-        Matrix Q = model.getTransition().covar.clone();
-        Matrix C = Q.clone();
-
+        double[][][] fevd = responses(horizon)[1];
         varianceDecompositionShock = new Matrix(N, horizon.length);
 
-        double[] angles = new double[r * (r - 1) / 2]; // initialized at zero, si the rotation
-
-        SymmetricMatrix.lcholesky(C);
-        Rotation rot = new Rotation(angles);
-        Matrix R = rot.getRotation();
-        Matrix B = C.times(R);
-        Matrix TQT;
-        Matrix Bss = new Matrix(r * c_, r * c_); // compatible with SS
-        for (int i = 0; i < r; i++) {
-            for (int j = 0; j < r; j++) {
-                Bss.set(i * c_, j * c_, B.get(i, j));
-            }
-        }
-
-        Matrix Q_ = new Matrix(Bss.subMatrix(0, r * c_, shock * c_, shock * c_ + 1));
-           //        System.out.println("whats going on");                  
-        //        System.out.println(Q_);
-        //        System.out.print("  for shock");    
-        //        System.out.println(shock);
-
-        //Matrix[] ZVZt = null;
-        if (description == null) {
-            throw new Error("missing description of the data transformations, mean and standard deviation  (object of the class DfmSeriesDescriptor[] has not been defined)");
-        }
-
         for (int h = 0; h < horizon.length; h++) {
-
-            if (horizon[h] == 0) {
-                System.err.println("The smallest forecast horizon is one period ahead, not zero");
-            }
-
-            Matrix Sigmax;
-
-            if (horizon[h] == 1) {
-
-                //  TQT = new Matrix(ssf.getStateDim(),ssf.getStateDim());    
-                Sigmax = new Matrix(r * c_, r * c_);
-                TQT = Q_.times(Q_.transpose());
-                Sigmax.add(TQT);
-                //     for (int i=0;i<r;i++){
-                //         TQT.set(i*c_, i*c_, Q.subMatrix().get(i,i));
-                //      }
-
-            } else {
-                //  TQT = new Matrix(ssf.getStateDim(),ssf.getStateDim());                 
-
-                // bugg found 09/05/2014    Sigmax = new Matrix(r * c_, r * c_);
-                TQT = Q_.times(Q_.transpose());
-                Sigmax = new Matrix(TQT.all());
-                for (int i = 0; i < horizon[h]; i++) {           // ????    
-                    ssf.TVT(0, TQT.all());
-                    Sigmax.add(TQT);
-
-                }
-
-            }
-            Matrix zvz = new Matrix(ssf.getVarsCount(), ssf.getVarsCount());
-            ssf.ZVZ(0, Sigmax.all(), zvz.all());
-
+            int k = period(horizon[h]);
             for (int v = 0; v < N; v++) {
-
-                varianceDecompositionShock.set(v, h, zvz.get(v, v) * description[v].stdev * description[v].stdev);
+                varianceDecompositionShock.set(v, h, fevd[v][shock][k]);
             }
-
         }
 
         return varianceDecompositionShock;
@@ -638,12 +551,13 @@ public class DfmResults implements IProcResults {
     public Matrix getIrfIdx(int[] horizon, int v) {
 
         int r = model.getFactorsCount();
+        double[][][] irf = responses(horizon)[0];
         irfIdx = new Matrix(r, horizon.length);
-        Matrix irf;
-        for (int shock = 0; shock < r; shock++) {
-            irf = getIrfShock(horizon, shock).clone();
-            for (int h = 0; h < horizon.length; h++) {
-                irfIdx.set(shock, h, irf.get(v, h));
+
+        for (int h = 0; h < horizon.length; h++) {
+            int k = period(horizon[h]);
+            for (int shock = 0; shock < r; shock++) {
+                irfIdx.set(shock, h, irf[v][shock][k]);
             }
         }
         return irfIdx;
@@ -661,87 +575,99 @@ public class DfmResults implements IProcResults {
      */
     public Matrix getIrfShock(int[] horizon, int shock) {
 
-        IMSsf ssf = getSsf();
-        int r = model.getFactorsCount();
         int N = model.getMeasurementsCount();
-
-        int c_ = model.getBlockLength();
-        Matrix Q = model.getTransition().covar.clone();
-        Matrix C = Q.clone();
-
+        double[][][] irf = responses(horizon)[0];
         irfShock = new Matrix(N, horizon.length);
 
-        double[] angles = new double[r * (r - 1) / 2]; // initialized at zero, si the rotation
-
-        SymmetricMatrix.lcholesky(C);
-        Rotation rot = new Rotation(angles);
-        Matrix R = rot.getRotation();
-        Matrix B = C.times(R);
-        DataBlock ts;
-
-        // Matrix TQT;
-        Matrix Bss = new Matrix(r * c_, r * c_); // compatible with SS
-
-        for (int i = 0; i < r; i++) {
-            for (int j = 0; j < r; j++) {
-                Bss.set(i * c_, j * c_, B.get(i, j));
+        for (int h = 0; h < horizon.length; h++) {
+            int k = period(horizon[h]);
+            for (int v = 0; v < N; v++) {
+                irfShock.set(v, h, irf[v][shock][k]);
             }
         }
 
-        Matrix Q_ = new Matrix(Bss.subMatrix(0, r * c_, shock * c_, shock * c_ + 1));
+        return irfShock;
 
-        if (description == null) {
-            throw new Error("missing description of the data transformations, mean and standard deviation  (object of the class DfmSeriesDescriptor[] has not been defined)");
-        }
+    }
 
-        for (int h = 0; h < horizon.length; h++) {
+    /**
+     * Number of applications of the transition equation corresponding to a
+     * given forecast horizon. The impact of the shocks (horizon 1) is not
+     * propagated.
+     */
+    private static int period(int horizon) {
+        return horizon > 1 ? horizon : 0;
+    }
+
+    /**
+     * Gets the responses of the variables to the (orthogonalized) shocks, for
+     * all the periods needed by the given horizons. The responses are
+     * computed once, by propagating all the shocks jointly through the
+     * transition equation, and they are cached. They are recomputed only when
+     * longer horizons are requested.
+     *
+     * @param horizon The forecast horizons
+     * @return The impulse responses (first item) and the cumulated squared
+     * responses (second item, forecast errors variances), both organized as
+     * [variable][shock][period], with period = 0...max(period(horizon)).
+     * They incorporate the stdev of the variables.
+     */
+    private double[][][][] responses(int[] horizon) {
 
+        int nh = 0;
+        for (int h = 0; h < horizon.length; h++) {
             if (horizon[h] == 0) {
                 System.err.println("The smallest forecast horizon is one period ahead, not zero");
             }
+            nh = Math.max(nh, period(horizon[h]));
+        }
+        if (responses != null && responsesHorizon >= nh) {
+            return responses;
+        }
 
-//   -->         Matrix Sigmax; 
-            if (horizon[h] == 1) {
-
-                //  TQT = new Matrix(ssf.getStateDim(),ssf.getStateDim());    
-                //    Sigmax= new Matrix(r*c_, r*c_);
-                //--->  TQT = Q_.times(Q_.transpose()); // not correct
-                ts = Q_.column(0);
-
-                //     Sigmax.add(TQT);
-                //     for (int i=0;i<r;i++){
-                //         TQT.set(i*c_, i*c_, Q.subMatrix().get(i,i));
-                //      }
-            } else {
-                //  TQT = new Matrix(ssf.getStateDim(),ssf.getStateDim());                 
-                //    Sigmax= new Matrix(r*c_, r*c_);
-                //--->  TQT = Q_.times(Q_.transpose()); // not correct
-
-                // [h=2]  i=0-->Q ; i=1-->TQT'; 
-                // [h=3]  i=0-->Q ; i=1-->TQT'; i=2-->T(TQT')T';
-                ts = Q_.column(0);
-                for (int i = 0; i < horizon[h]; i++) { //      horizon[0] is always bigger than  2 (hor = 0 is nonsense and hor=1 is in the if statement ) 
-                    //--->       ssf.TVT(0, TQT.subMatrix());// not correct
+        if (description == null) {
+            throw new Error("missing description of the data transformations, mean and standard deviation  (object of the class DfmSeriesDescriptor[] has not been defined)");
+        }
 
-                    ssf.TX(0, ts);
+        IMSsf ssf = getSsf();
+        int r = model.getFactorsCount();
+        int N = model.getMeasurementsCount();
+        int c_ = model.getBlockLength();
 
-                    //           Sigmax.add(TQT);
-                }
+        Matrix C = model.getTransition().covar.clone();
+        double[] angles = new double[r * (r - 1) / 2]; // initialized at zero, si the rotation
+        SymmetricMatrix.lcholesky(C);
+        Rotation rot = new Rotation(angles);
+        Matrix R = rot.getRotation();
+        Matrix B = C.times(R);
 
+        // the shocks in the state space (one column by shock)
+        Matrix X = new Matrix(r * c_, r);
+        for (int i = 0; i < r; i++) {
+            for (int j = 0; j < r; j++) {
+                X.set(i * c_, j, B.get(i, j));
             }
+        }
 
-    //        Matrix    zvz = new Matrix(ssf.getVarsCount(), ssf.getVarsCount());
-            //--> ssf.ZVZ(0, Sigmax.subMatrix(), zvz.subMatrix());
-            for (int v = 0; v < N; v++) {
-
-                //--->          irfShock.set(v, h, zvz.get(v, v) * description[v].stdev);
-                irfShock.set(v, h, ssf.ZX(0, v, ts) * description[v].stdev);
+        double[][][] irf = new double[N][r][nh + 1];
+        double[][][] fevd = new double[N][r][nh + 1];
+        for (int k = 0; k <= nh; k++) {
+            if (k > 0) {
+                ssf.TM(0, X.subMatrix());
+            }
+            for (int shock = 0; shock < r; shock++) {
+                DataBlock x = X.column(shock);
+                for (int v = 0; v < N; v++) {
+                    double z = ssf.ZX(0, v, x) * description[v].stdev;
+                    irf[v][shock][k] = z;
+                    fevd[v][shock][k] = k == 0 ? z * z : fevd[v][shock][k - 1] + z * z;
+                }
             }
-
         }
 
-        return irfShock;
-
+        responses = new double[][][][]{irf, fevd};
+        responsesHorizon = nh;
+        return responses;
     }
 
     public TsData[][] getShocksDecomposition() {
@@ -980,8 +906,17 @@ public class DfmResults implements IProcResults {
     }
 
     public void calcSmoothedSignalUncertainty() {
+        calcSmoothedSignals();
+    }
+
+    /**
+     * Computes the smoothed signals and their uncertainty (variances) for all
+     * the observables, in a single pass over the periods. The variances are
+     * the projections ZPZ' computed by the smoother (see calcSmoothedStates).
+     * Long samples are processed in parallel, by chunks of periods.
+     */
+    private void calcSmoothedSignals() {
 
-        IMSsf ssf = getSsf();
         if (smoothing == null) {
             calcSmoothedStates();
         }
@@ -992,42 +927,44 @@ public class DfmResults implements IProcResults {
             throw new Error("smoothed states are null");
         }
 
-        int m_used = m_a.getCurrentSize();
-        int r = model.getFactorsCount();
-        int c_ = model.getBlockLength();
-        int nlags = model.getTransition().nlags;
-
-        //Matrix Z = new Matrix(r * c_, m_used);
-        //for (int i = 0; i < r * c_; i++) {
-        //    Z.row(i).copy(m_a.item(i));
-        // }
-        int N = ssf.getVarsCount();
-
         if (description == null) {
             throw new Error("missing description of the data transformations, mean and standard deviation  (object of the class DfmSeriesDescriptor[] has not been defined)");
         }
 
-        double[][] signalUncertainty = new double[N][m_used];
-
-        for (int t = 0; t < m_used; t++) {
-//            DataBlock temp = Z.column(t).deepClone();
-            Matrix temp = new Matrix(smoothing.P(t));
-
-            for (int v = 0; v < N; v++) {
-                //-- replaced 
-                //Matrix zvz = new Matrix(r * c_, r * c_);
-                Matrix zvz = new Matrix(N, N);
-
-                ssf.ZVZ(0, temp.all(), zvz.all());
+        IMSsf ssf = getSsf();
+        int N = ssf.getVarsCount();
+        int m_used = m_a.getCurrentSize();
 
-                signalUncertainty[v][t] = zvz.get(v, v) * description[v].stdev * description[v].stdev;
-                // System.out.println(signalUncertainty[v][t]);
+        double[][] signal = new double[N][m_used];
+        double[][] signalUncertainty = new double[N][m_used];
+        DataBlock[] zvz = new DataBlock[N];
+        double[] stdev = new double[N];
+        for (int v = 0; v < N; v++) {
+            zvz[v] = smoothing.projectionVariance(v);
+            stdev[v] = description[v].stdev;
+        }
+
+        int nchunks = (m_used + SIGNAL_CHUNK - 1) / SIGNAL_CHUNK;
+        IntStream chunks = IntStream.range(0, nchunks);
+        if (nchunks > 1 && N * m_used >= SIGNAL_PARALLEL_THRESHOLD) {
+            chunks = chunks.parallel();
+        }
+        chunks.forEach(k -> {
+            int end = Math.min(m_used, (k + 1) * SIGNAL_CHUNK);
+            for (int t = k * SIGNAL_CHUNK; t < end; t++) {
+                DataBlock a = m_a.block(t);
+                for (int v = 0; v < N; v++) {
+                    signal[v][t] = ssf.ZX(0, v, a) * stdev[v];
+                    signalUncertainty[v][t] = zvz[v].get(t) * stdev[v] * stdev[v];
+                }
             }
-        }
+        });
 
         TsDomain currentDomain = input.getCurrentDomain();
+        smoothedSignal = new TsData[N];
         smoothedSignalUncertainty = new TsData[N];
         for (int v = 0; v < N; v++) {
+            smoothedSignal[v] = new TsData(currentDomain.getStart(), signal[v], false);
             smoothedSignalUncertainty[v] = new TsData(currentDomain.getStart(), signalUncertainty[v], false);
         }
     }
@@ -19,21 +19,29 @@ package ec.tss.dfm;
 import ec.tss.Ts;
 import ec.tss.TsFactory;
 import ec.tstoolkit.algorithm.CompositeResults.Node;
+import ec.tstoolkit.algorithm.MultiTsData;
 import ec.tstoolkit.dfm.DfmSpec;
+import ec.tstoolkit.dfm.DynamicFactorModel;
 import ec.tstoolkit.dfm.MeasurementSpec;
 import ec.tstoolkit.timeseries.Day;
 import ec.tstoolkit.timeseries.information.TsInformationSet;
+import ec.tstoolkit.timeseries.information.TsVintageIndex;
 import ec.tstoolkit.timeseries.simplets.TsData;
 import ec.tstoolkit.timeseries.simplets.TsPeriod;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
 
 /**
  *
@@ -43,7 +51,7 @@ import java.util.Map;
 public class DfmSimulation {
 
     private final Day horizon_;
-    private Map<Day, SimulationResultsDocument> rslts_ = new HashMap<>(); // Results of the simulation process
+    private Map<Day, SimulationResultsDocument> rslts_ = new TreeMap<>(); // Results of the simulation process, sorted by publication day
     private final List<DfmSimulationResults> arimaResults;    // built results for arima
     private final List<DfmSimulationResults> dfmResults;  // built results for dfm
     private final List<DfmSeriesDescriptor> descriptions;
@@ -52,6 +60,10 @@ public class DfmSimulation {
     private final PropertyChangeSupport changeSupport;
     public final static String CALENDAR_RESULTS = "CALENDAR_RESULTS";
 
+    private ExecutorService executor_;
+    private BiConsumer<Day, SimulationResultsDocument> consumer_;
+    private SimulationStore store_;
+
     public DfmSimulation(Day horizon) {
         horizon_ = horizon;
         arimaResults = new ArrayList<>();
@@ -82,6 +94,66 @@ public class DfmSimulation {
         return watched;
     }
 
+    public ExecutorService getExecutor() {
+        return executor_;
+    }
+
+    /**
+     * Sets the executor used to process the vintages in parallel. When no
+     * executor is provided (default), the vintages are processed sequentially
+     * in the calling thread. The executor also processes the series of the
+     * vintages (see DfmProcessingFactory.Environment). It is not shut down by
+     * the simulation.
+     * In any case, the CALENDAR_RESULTS events are fired in the calling thread,
+     * in the order of the calendar.
+     *
+     * @param executor The executor. May be null
+     */
+    public void setExecutor(ExecutorService executor) {
+        executor_ = executor;
+    }
+
+    public BiConsumer<Day, SimulationResultsDocument> getResultsConsumer() {
+        return consumer_;
+    }
+
+    /**
+     * Sets a consumer of the results. When a consumer is provided, the results
+     * of each vintage are passed to the consumer as soon as they are available
+     * and they are not kept in the simulation (getResults() remains empty).
+     * The consumer is never called concurrently, but it can be called from
+     * different threads (see setExecutor) and the vintages are not necessarily
+     * ordered.
+     *
+     * @param consumer The consumer. May be null
+     */
+    public void setResultsConsumer(BiConsumer<Day, SimulationResultsDocument> consumer) {
+        consumer_ = consumer;
+    }
+
+    public SimulationStore getStore() {
+        return store_;
+    }
+
+    /**
+     * Attaches the store that contains the results of the simulation (see
+     * SimulationStore.Writer, which can be used as results consumer). When a
+     * store is available, the results should be read from the store instead
+     * of getResults(). The previous store (if any) is closed.
+     *
+     * @param store The store. May be null
+     */
+    public void setStore(SimulationStore store) {
+        if (store_ != null && store_ != store) {
+            try {
+                store_.close();
+            } catch (IOException ex) {
+                // the results of the previous store are not used anymore
+            }
+        }
+        store_ = store;
+    }
+
     /**
      * Processes the simulation of the the given document
      *
@@ -91,65 +163,195 @@ public class DfmSimulation {
      * @return True if the process has finished
      */
     public boolean process(DfmDocument refdoc, Day[] ed, List<Day> estimationDays) {
-        rslts_ = new HashMap<>();
+        rslts_ = new TreeMap<>();
         DfmSpec spec = refdoc.getSpecification();
         Ts[] input = refdoc.getInput();
 
-        TsInformationSet info = new TsInformationSet(refdoc.getData());
+        // the vintages are generated through an index of the reference data
+        TsVintageIndex info = new TsInformationSet(refdoc.getData())
+                .createVintageIndex(spec.getModelSpec().getPublicationDelays());
         descriptions.addAll(Arrays.asList(refdoc.getDfmResults().getDescriptions()));
         for (MeasurementSpec ms : refdoc.getSpecification().getModelSpec().getMeasurements()) {
             watched.add(ms.isWatched());
         }
 
-        DfmDocument doc;
+        boolean[] estimated = new boolean[ed.length];
         for (int i = 0; i < ed.length; ++i) {
-            changeSupport.firePropertyChange(CALENDAR_RESULTS, null, ed[i]);
-            doc = new DfmDocument();
-            // current information
-            TsInformationSet cinfo = info.generateInformation(spec.getModelSpec().getPublicationDelays(), ed[i]);
-            Ts[] curinput = new Ts[input.length];
-            for (int j = 0; j < input.length; ++j) {
-                curinput[j] = TsFactory.instance.createTs(input[j].getRawName(), null, cinfo.series(j));
-            }
-            doc.setInput(curinput);
-            // update the specification
-            DfmSpec curspec;
-            if (mustBeEstimated(ed[i], estimationDays)) {
-                curspec = spec.cloneDefinition();
-            } else {
-                curspec = spec.clone();
-            }
-            // update the time horizon
-            TsPeriod last = cinfo.getCurrentDomain().getLast();
-            TsPeriod end = last.clone();
-            end.set(horizon_);
-            curspec.getModelSpec().setForecastHorizon(end.minus(last));
-            doc.setSpecification(curspec);
-            doc.getResults();
-            spec = doc.getSpecification();
-
-            if (doc.getResults() != null) {
-                Node n = doc.getResults().getNode(DfmProcessingFactory.FINALC);
-                if (n != null && n.results != null) {
-                    SimulationResultsDocument rslts = new SimulationResultsDocument(n.results);
-                    rslts.setSmoothedSeriesStdev(doc.getDfmResults() == null ? null : doc.getDfmResults().getSmoothedSeriesStdev());
-                    rslts_.put(ed[i], rslts);
-                } else {
-                    rslts_.put(ed[i], null);
-                }
+            estimated[i] = mustBeEstimated(ed[i], estimationDays);
+        }
 
-                if (doc.getDfmResults() != null) {
-                    doc.getDfmResults().clear();
+        // the seasonal adjustments of the vintages are kept in the environment
+        // of the simulation, which also provides the executor of the series
+        DfmProcessingFactory.Environment env = new DfmProcessingFactory.Environment(executor_);
+        if (executor_ == null) {
+            Segment segment = null;
+            for (int i = 0; i < ed.length; ++i) {
+                changeSupport.firePropertyChange(CALENDAR_RESULTS, null, ed[i]);
+                final Day day = ed[i];
+                if (estimated[i] || segment == null || segment.model == null) {
+                    final DfmSpec curspec = estimated[i] ? spec.cloneDefinition() : spec.clone();
+                    spec = env.call(() -> processVintage(day, curspec, input, info));
+                    segment = new Segment(spec);
+                } else {
+                    final Segment cursegment = segment;
+                    env.run(() -> processVintage(day, cursegment, info));
                 }
-                doc.clear();
-            } else {
-                rslts_.put(ed[i], null);
             }
+        } else {
+            processParallel(env, spec, ed, estimated, input, info);
         }
 
         return true;
     }
 
+    /**
+     * Processes the vintages in parallel. The calendar is split in segments
+     * starting at each re-estimation day (and at the first day). The first
+     * vintage of a segment provides the model used by all the other vintages
+     * of the segment, which are then processed independently (see
+     * processVintage(Day, Segment, TsVintageIndex)).
+     *
+     * The events (CALENDAR_RESULTS) are fired in the calling thread, in the
+     * order of the calendar, when the vintages are completed (and not when
+     * they are started, as in the sequential processing).
+     */
+    private void processParallel(DfmProcessingFactory.Environment env, DfmSpec spec, Day[] ed, boolean[] estimated, Ts[] input, TsVintageIndex info) {
+        CompletableFuture<?>[] jobs = new CompletableFuture<?>[ed.length];
+        int i = 0;
+        while (i < ed.length) {
+            final Day head = ed[i];
+            final DfmSpec headspec = estimated[i] ? spec.cloneDefinition() : spec.clone();
+            CompletableFuture<Segment> hjob = CompletableFuture.supplyAsync(() -> new Segment(env.call(() -> processVintage(head, headspec, input, info))), executor_);
+            jobs[i] = hjob;
+            while (++i < ed.length && !estimated[i]) {
+                final Day cur = ed[i];
+                jobs[i] = hjob.thenAcceptAsync(s -> env.run(() -> {
+                    if (s.model == null) {
+                        processVintage(cur, s.spec.clone(), input, info);
+                    } else {
+                        processVintage(cur, s, info);
+                    }
+                }), executor_);
+            }
+        }
+        try {
+            for (int j = 0; j < ed.length; ++j) {
+                jobs[j].join();
+                changeSupport.firePropertyChange(CALENDAR_RESULTS, null, ed[j]);
+            }
+        } catch (CompletionException ex) {
+            // waits for the other vintages
+            CompletableFuture.allOf(jobs).exceptionally(err -> null).join();
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Processes one vintage of the simulation
+     *
+     * @param day The publication day
+     * @param curspec The specification used for the vintage (modified)
+     * @param input The reference input
+     * @param info The index of the vintages of the reference information set
+     * @return The specification of the processed document
+     */
+    private DfmSpec processVintage(Day day, DfmSpec curspec, Ts[] input, TsVintageIndex info) {
+        DfmDocument doc = new DfmDocument();
+        // current information
+        TsInformationSet cinfo = info.generateInformation(day);
+        Ts[] curinput = new Ts[input.length];
+        for (int j = 0; j < input.length; ++j) {
+            curinput[j] = TsFactory.instance.createTs(input[j].getRawName(), null, cinfo.series(j));
+        }
+        doc.setInput(curinput);
+        // update the time horizon
+        TsPeriod last = cinfo.getCurrentDomain().getLast();
+        TsPeriod end = last.clone();
+        end.set(horizon_);
+        curspec.getModelSpec().setForecastHorizon(end.minus(last));
+        doc.setSpecification(curspec);
+        doc.getResults();
+        DfmSpec spec = doc.getSpecification();
+
+        SimulationResultsDocument rslts = null;
+        if (doc.getResults() != null) {
+            Node n = doc.getResults().getNode(DfmProcessingFactory.FINALC);
+            if (n != null && n.results != null) {
+                rslts = new SimulationResultsDocument(n.results);
+                rslts.setSmoothedSeriesStdev(doc.getDfmResults() == null ? null : doc.getDfmResults().getSmoothedSeriesStdev());
+            }
+
+            if (doc.getDfmResults() != null) {
+                doc.getDfmResults().clear();
+            }
+            doc.clear();
+        }
+        store(day, rslts);
+        return spec;
+    }
+
+    /**
+     * Processes one vintage of the simulation with a fixed model. The vintage
+     * is directly transformed and smoothed, without creating a document or
+     * copying the specification
+     *
+     * @param day The publication day
+     * @param segment The specification and the model of the current segment
+     * (not modified)
+     * @param info The index of the vintages of the reference information set
+     */
+    private void processVintage(Day day, Segment segment, TsVintageIndex info) {
+        DfmSpec spec = segment.spec;
+        // current information
+        TsInformationSet cinfo = info.generateInformation(day);
+        TsData[] curinput = new TsData[cinfo.getSeriesCount()];
+        for (int j = 0; j < curinput.length; ++j) {
+            curinput[j] = cinfo.series(j);
+        }
+        // time horizon
+        TsPeriod last = cinfo.getCurrentDomain().getLast();
+        TsPeriod end = last.clone();
+        end.set(horizon_);
+
+        SimulationResultsDocument rslts = null;
+        DfmResults dfm = DfmProcessingFactory.prepare(spec, segment.model, curinput, end.minus(last), null);
+        if (dfm != null) {
+            TsData[] finalc = DfmProcessingFactory.finalSeries(curinput, dfm, spec.getSaSpec());
+            rslts = new SimulationResultsDocument(new MultiTsData("var", finalc));
+            rslts.setSmoothedSeriesStdev(dfm.getSmoothedSeriesStdev());
+            dfm.clear();
+        }
+        store(day, rslts);
+    }
+
+    /**
+     * Specification and model shared by the vintages that follow a
+     * (re-)estimation. The model is only available when the specification
+     * doesn't require any estimation; otherwise, the vintages must be
+     * processed through a complete document.
+     */
+    private static class Segment {
+
+        private final DfmSpec spec;
+        private final DynamicFactorModel model;
+
+        private Segment(DfmSpec spec) {
+            this.spec = spec;
+            this.model = spec.getModelSpec().isSpecified() ? spec.getModelSpec().build() : null;
+        }
+    }
+
+    private synchronized void store(Day day, SimulationResultsDocument rslts) {
+        if (consumer_ != null) {
+            consumer_.accept(day, rslts);
+        } else {
+            rslts_.put(day, rslts);
+        }
+    }
+
     private boolean mustBeEstimated(Day day, List<Day> estimationDays) {
         if (estimationDays == null || estimationDays.isEmpty()) {
             return false;
@@ -170,6 +372,22 @@ public class DfmSimulation {
     }
 
     public boolean process(DfmDocument refdoc, List<Day> estimationDays) {
+        if (estimationDays != null) {
+            Collections.sort(estimationDays);
+        }
+        Day[] cal = generateCalendar(refdoc);
+        return process(refdoc, cal, estimationDays);
+    }
+
+    /**
+     * Generates the publication calendar of the simulation of a document. The
+     * calendar is based on the series used for generation and it covers the
+     * number of years defined in the simulation specification
+     *
+     * @param refdoc The reference document
+     * @return The publication days
+     */
+    public static Day[] generateCalendar(DfmDocument refdoc) {
         TsInformationSet info = new TsInformationSet(refdoc.getData());
 
         Day last = info.getCurrentDomain().getEnd().firstday();
@@ -187,10 +405,6 @@ public class DfmSimulation {
             }
         }
 
-        if (estimationDays != null) {
-            Collections.sort(estimationDays);
-        }
-
         if (data.isEmpty()) {
             throw new IllegalArgumentException("You must select at least one "
                     + "reference series to generate the publication calendar !");
@@ -198,8 +412,7 @@ public class DfmSimulation {
 
         TsInformationSet infoCal = new TsInformationSet(data.toArray(new TsData[data.size()]));
 
-        Day[] cal = infoCal.generatePublicationCalendar(delays, start);
-        return process(refdoc, cal, estimationDays);
+        return infoCal.generatePublicationCalendar(delays, start);
     }
 
     public synchronized void addPropertyChangeListener(PropertyChangeListener listener) {
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tss.dfm;
+
+import ec.tstoolkit.data.DescriptiveStatistics;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsDomain;
+import java.util.Arrays;
+
+/**
+ * Accuracy measures of forecasts, compared with the forecasts of a
+ * benchmark. All the measures (for the forecasts and for the benchmark) and
+ * the Diebold-Mariano tests are computed in a single pass over the data.
+ *
+ * The data are aligned arrays (true values, forecasts, benchmark forecasts),
+ * which may contain missing values (NaN). The measures of the forecasts
+ * (resp. of the benchmark) only use the periods where the true value and
+ * the forecast (resp. the benchmark forecast) are available. The relative
+ * measures, the percentage better and the tests use the periods where both
+ * forecasts are available.
+ *
+ * The scaled errors are scaled by the mean absolute change of the true
+ * values (computed on the same periods as the corresponding measures).
+ *
+ * @author Jean Palate
+ */
+public class ForecastEvaluation {
+
+    public static enum Measure {
+
+        /**
+         * Root mean squared error
+         */
+        RMSE,
+        /**
+         * Mean absolute error
+         */
+        MAE,
+        /**
+         * Median absolute error
+         */
+        MdAE,
+        /**
+         * Root mean squared percentage error
+         */
+        RMSPE,
+        /**
+         * Symmetric mean absolute percentage error
+         */
+        sMAPE,
+        /**
+         * Symmetric median absolute percentage error
+         */
+        sMdAPE,
+        /**
+         * Root mean squared scaled error
+         */
+        RMSSE,
+        /**
+         * Mean absolute scaled error
+         */
+        MASE,
+        /**
+         * Median absolute scaled error
+         */
+        MdASE
+    }
+
+    // measures of the forecasts and of the benchmark, on their own periods
+    // (m, mB) and on the common periods (mC, mBC)
+    private final double[] m = new double[Measure.values().length],
+            mB = new double[Measure.values().length],
+            mC = new double[Measure.values().length],
+            mBC = new double[Measure.values().length];
+    private int n, nB, nd;
+    private double pb, dm, dmAbs, dmE;
+
+    /**
+     * Evaluates forecasts given as time series. The series are aligned on
+     * the domain of the true values, restricted to the periods covered by
+     * the forecasts or by the benchmark forecasts
+     *
+     * @param f The forecasts. May be null
+     * @param fB The benchmark forecasts. May be null
+     * @param y The true values
+     * @return
+     */
+    public static ForecastEvaluation of(TsData f, TsData fB, TsData y) {
+        TsDomain fdom = null;
+        if (f != null) {
+            fdom = f.getDomain();
+        }
+        if (fB != null) {
+            fdom = fdom == null ? fB.getDomain() : fdom.union(fB.getDomain());
+        }
+        TsDomain dom = fdom == null ? y.getDomain() : y.getDomain().intersection(fdom);
+        return new ForecastEvaluation(values(y, dom), values(f, dom), values(fB, dom));
+    }
+
+    private static double[] values(TsData s, TsDomain dom) {
+        if (s == null) {
+            double[] nan = new double[dom.getLength()];
+            Arrays.fill(nan, Double.NaN);
+            return nan;
+        }
+        return s.fittoDomain(dom).getValues().internalStorage();
+    }
+
+    /**
+     * Evaluates a cube of forecasts. For each series and for each horizon,
+     * the forecasts (built on the different vintages) are compared with the
+     * true values of the series
+     *
+     * @param y The true values [series][period]
+     * @param f The forecasts [series][horizon][period]
+     * @param fB The benchmark forecasts [series][horizon][period]
+     * @return The evaluations [series][horizon]
+     */
+    public static ForecastEvaluation[][] evaluate(double[][] y, double[][][] f, double[][][] fB) {
+        ForecastEvaluation[][] rslts = new ForecastEvaluation[y.length][];
+        for (int s = 0; s < y.length; ++s) {
+            rslts[s] = new ForecastEvaluation[f[s].length];
+            for (int h = 0; h < f[s].length; ++h) {
+                rslts[s][h] = new ForecastEvaluation(y[s], f[s][h], fB[s][h]);
+            }
+        }
+        return rslts;
+    }
+
+    /**
+     *
+     * @param y The true values
+     * @param f The forecasts
+     * @param fB The benchmark forecasts
+     */
+    public ForecastEvaluation(double[] y, double[] f, double[] fB) {
+        int len = y.length;
+        if (f.length != len || fB.length != len) {
+            throw new IllegalArgumentException("Incompatible data");
+        }
+        Accumulator acc = new Accumulator(len), accB = new Accumulator(len),
+                accC = new Accumulator(len), accBC = new Accumulator(len);
+        int nbetter = 0;
+        // loss differentials (squared, absolute, encompassing): sums, sums of
+        // squares and sums of the cross-products of consecutive values
+        double[] sd = new double[3], sd2 = new double[3], sdd = new double[3], sprev = new double[3], scur = new double[3];
+        double[] prev = new double[3], cur = new double[3];
+        int npairs = 0;
+        boolean hasprev = false;
+        for (int i = 0; i < len; ++i) {
+            double yi = y[i], e = yi - f[i], eB = yi - fB[i];
+            boolean ok = Double.isFinite(e), okB = Double.isFinite(eB);
+            double dy = i > 0 ? Math.abs(yi - y[i - 1]) : Double.NaN;
+            if (ok) {
+                acc.add(yi, f[i], dy);
+            }
+            if (okB) {
+                accB.add(yi, fB[i], dy);
+            }
+            if (ok && okB) {
+                accC.add(yi, f[i], dy);
+                accBC.add(yi, fB[i], dy);
+                if (Math.abs(e) > Math.abs(eB)) {
+                    ++nbetter;
+                }
+                cur[0] = e * e - eB * eB;
+                cur[1] = Math.abs(e) - Math.abs(eB);
+                cur[2] = e * (e - eB);
+                for (int k = 0; k < 3; ++k) {
+                    sd[k] += cur[k];
+                    sd2[k] += cur[k] * cur[k];
+                    if (hasprev) {
+                        sdd[k] += cur[k] * prev[k];
+                        sprev[k] += prev[k];
+                        scur[k] += cur[k];
+                    }
+                }
+                if (hasprev) {
+                    ++npairs;
+                }
+                double[] tmp = prev;
+                prev = cur;
+                cur = tmp;
+                hasprev = true;
+                ++nd;
+            } else {
+                hasprev = false;
+            }
+        }
+        n = acc.n;
+        nB = accB.n;
+        acc.fill(m);
+        accB.fill(mB);
+        accC.fill(mC);
+        accBC.fill(mBC);
+        pb = nd == 0 ? Double.NaN : 100.0 * nbetter / nd;
+        dm = dm(sd[0], sd2[0], sdd[0], sprev[0], scur[0], npairs);
+        dmAbs = dm(sd[1], sd2[1], sdd[1], sprev[1], scur[1], npairs);
+        dmE = dm(sd[2], sd2[2], sdd[2], sprev[2], scur[2], npairs);
+    }
+
+    /**
+     * Sums of the different measures of a set of forecasts
+     */
+    private static class Accumulator {
+
+        private double se2, sae, spe2, sape, sdy;
+        private int n, ndy;
+        // absolute errors and absolute percentage errors, for the medians
+        private final double[] ae, ape;
+
+        private Accumulator(int len) {
+            ae = new double[len];
+            ape = new double[len];
+        }
+
+        /**
+         * @param y The true value
+         * @param f The forecast
+         * @param dy The absolute change of the true value (NaN if missing)
+         */
+        private void add(double y, double f, double dy) {
+            double e = y - f, a = Math.abs(e), pe = e / y;
+            se2 += e * e;
+            sae += a;
+            spe2 += pe * pe;
+            ae[n] = a;
+            ape[n] = Math.abs(a / (y + f));
+            sape += ape[n++];
+            if (Double.isFinite(dy)) {
+                sdy += dy;
+                ++ndy;
+            }
+        }
+
+        private void fill(double[] m) {
+            if (n == 0) {
+                Arrays.fill(m, Double.NaN);
+                return;
+            }
+            double scale = sdy / ndy;
+            m[Measure.RMSE.ordinal()] = Math.sqrt(se2 / n);
+            m[Measure.MAE.ordinal()] = sae / n;
+            m[Measure.MdAE.ordinal()] = median(ae, n);
+            m[Measure.RMSPE.ordinal()] = 100 * Math.sqrt(spe2 / n);
+            m[Measure.sMAPE.ordinal()] = 200 * sape / n;
+            m[Measure.sMdAPE.ordinal()] = 200 * median(ape, n);
+            m[Measure.RMSSE.ordinal()] = m[Measure.RMSE.ordinal()] / scale;
+            m[Measure.MASE.ordinal()] = m[Measure.MAE.ordinal()] / scale;
+            m[Measure.MdASE.ordinal()] = m[Measure.MdAE.ordinal()] / scale;
+        }
+
+        private static double median(double[] x, int n) {
+            return new DescriptiveStatistics(Arrays.copyOf(x, n)).getMedian();
+        }
+    }
+
+    /**
+     * Diebold-Mariano statistic: dbar / sqrt(lrv/n), where lrv = g(0) +
+     * 2*g(1) is the long-run variance of the loss differentials (g(k) is the
+     * autocovariance of order k, computed on the consecutive available
+     * observations). The truncation at lag 1 corresponds to forecasts one
+     * step ahead of the evaluation sample (h = 2); only the cross-products of
+     * lag 1 are accumulated.
+     */
+    private double dm(double s, double s2, double sdd, double sprev, double scur, int npairs) {
+        if (nd < 2) {
+            return Double.NaN;
+        }
+        double dbar = s / nd;
+        double g0 = s2 / nd - dbar * dbar;
+        double g1 = (sdd - dbar * (sprev + scur) + npairs * dbar * dbar) / nd;
+        double lrv = g0 + 2 * g1;
+        if (lrv <= 0) {
+            lrv = g0;
+        }
+        if (lrv <= 0) {
+            return Double.NaN;
+        }
+        return dbar / Math.sqrt(lrv / nd);
+    }
+
+    /**
+     *
+     * @return The number of periods used for the forecasts
+     */
+    public int getObsCount() {
+        return n;
+    }
+
+    /**
+     *
+     * @return The number of periods used for the benchmark
+     */
+    public int getBenchmarkObsCount() {
+        return nB;
+    }
+
+    /**
+     *
+     * @return The number of periods where both forecasts are available (used
+     * for the relative measures and for the tests)
+     */
+    public int getCommonObsCount() {
+        return nd;
+    }
+
+    /**
+     * Accuracy measure of the forecasts
+     *
+     * @param measure
+     * @return
+     */
+    public double get(Measure measure) {
+        return m[measure.ordinal()];
+    }
+
+    /**
+     * Accuracy measure of the benchmark
+     *
+     * @param measure
+     * @return
+     */
+    public double getBenchmark(Measure measure) {
+        return mB[measure.ordinal()];
+    }
+
+    /**
+     * Ratio between the accuracy measures of the forecasts and of the
+     * benchmark, computed on the periods where both are available
+     *
+     * @param measure
+     * @return
+     */
+    public double getRelative(Measure measure) {
+        return mC[measure.ordinal()] / mBC[measure.ordinal()];
+    }
+
+    /**
+     * Percentage of the periods where the benchmark is better than the
+     * forecasts (in absolute value)
+     *
+     * @return
+     */
+    public double getPB() {
+        return pb;
+    }
+
+    /**
+     * Diebold-Mariano test based on the squared errors (negative values mean
+     * that the forecasts are better than the benchmark)
+     *
+     * @return
+     */
+    public double getDM() {
+        return dm;
+    }
+
+    /**
+     * Diebold-Mariano test based on the absolute errors
+     *
+     * @return
+     */
+    public double getDMabs() {
+        return dmAbs;
+    }
+
+    /**
+     * Encompassing test: Diebold-Mariano statistic of e*(e-eB)
+     *
+     * @return
+     */
+    public double getDM_e() {
+        return dmE;
+    }
+}
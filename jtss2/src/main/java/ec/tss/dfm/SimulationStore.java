@@ -0,0 +1,420 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tss.dfm;
+
+import ec.tstoolkit.timeseries.Day;
+import ec.tstoolkit.timeseries.information.TsInformationSet;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsDomain;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.function.BiConsumer;
+
+/**
+ * Column-oriented storage of the results of a real-time simulation (see
+ * DfmSimulation). Each vintage is stored as a fixed-size record containing,
+ * for each series, the smoothed series (raw scale) and the stdev of the
+ * smoothed series (model scale), on fixed domains. So, the results don't
+ * need to be kept in memory: the records are appended to the file as soon
+ * as they are available (see Writer) and they are read lazily from a
+ * memory-mapped file.
+ *
+ * File layout (big-endian):
+ * - header: magic, version, number of series (n), then for each of the 2n
+ * blocks (values of the series 1...n, stdevs of the series 1...n):
+ * frequency, year, position and length of its domain
+ * - records: publication day (time in ms), followed by the data of the 2n
+ * blocks (NaN for missing values).
+ *
+ * The records are not necessarily sorted by publication day.
+ *
+ * @author Jean Palate
+ */
+public class SimulationStore implements Closeable {
+
+    private static final int MAGIC = 0x44464d53, VERSION = 1;
+    // maximum size of a mapped region
+    private static final long MAX_REGION = Integer.MAX_VALUE;
+
+    /**
+     * Writes the results of the vintages in a store. The writer can be used
+     * as consumer of the results of a simulation (see
+     * DfmSimulation.setResultsConsumer).
+     */
+    public static class Writer implements Closeable, BiConsumer<Day, SimulationResultsDocument> {
+
+        private final DataOutputStream out;
+        private final TsDomain[] values, stdevs;
+
+        private Writer(File file, TsDomain[] values, TsDomain[] stdevs) throws IOException {
+            this.values = values;
+            this.stdevs = stdevs;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(values.length);
+            for (TsDomain dom : values) {
+                writeDomain(dom);
+            }
+            for (TsDomain dom : stdevs) {
+                writeDomain(dom);
+            }
+        }
+
+        private void writeDomain(TsDomain dom) throws IOException {
+            TsPeriod start = dom.getStart();
+            out.writeInt(start.getFrequency().intValue());
+            out.writeInt(start.getYear());
+            out.writeInt(start.getPosition());
+            out.writeInt(dom.getLength());
+        }
+
+        /**
+         * Adds a vintage
+         *
+         * @param day The publication day
+         * @param v The smoothed series (raw scale). Missing series may be
+         * null
+         * @param e The stdev of the smoothed series. May be null
+         * @throws IOException
+         */
+        public synchronized void add(Day day, TsData[] v, TsData[] e) throws IOException {
+            out.writeLong(day.toCalendar().getTimeInMillis());
+            writeBlocks(values, v);
+            writeBlocks(stdevs, e);
+        }
+
+        private void writeBlocks(TsDomain[] doms, TsData[] data) throws IOException {
+            for (int i = 0; i < doms.length; ++i) {
+                TsDomain dom = doms[i];
+                TsData s = data == null ? null : data[i];
+                if (s != null) {
+                    s = s.fittoDomain(dom);
+                }
+                for (int j = 0; j < dom.getLength(); ++j) {
+                    out.writeDouble(s == null ? Double.NaN : s.get(j));
+                }
+            }
+        }
+
+        /**
+         * Adds the results of a vintage
+         *
+         * @param day The publication day
+         * @param rslts The results of the vintage. May be null
+         */
+        @Override
+        public void accept(Day day, SimulationResultsDocument rslts) {
+            TsData[] v = new TsData[values.length];
+            TsData[] e = null;
+            if (rslts != null) {
+                if (rslts.getSimulationResults() != null) {
+                    for (int i = 0; i < v.length; ++i) {
+                        v[i] = rslts.getSimulationResults().getData("var" + (i + 1), TsData.class);
+                    }
+                }
+                e = rslts.getSmoothedSeriesStdev();
+            }
+            try {
+                add(day, v, e);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Creates a new store
+     *
+     * @param file The file of the store (overwritten)
+     * @param values The domains of the smoothed series
+     * @param stdevs The domains of the stdevs of the smoothed series
+     * @return The writer of the store
+     * @throws IOException
+     */
+    public static Writer create(File file, TsDomain[] values, TsDomain[] stdevs) throws IOException {
+        if (values.length != stdevs.length) {
+            throw new IllegalArgumentException("Invalid domains");
+        }
+        return new Writer(file, values, stdevs);
+    }
+
+    /**
+     * Creates a new store for the simulation of a given information set. The
+     * domains of the series start at the beginning of the information set
+     * and they end at the horizon of the simulation.
+     *
+     * @param file The file of the store (overwritten)
+     * @param info The reference information set
+     * @param horizon The horizon of the simulation
+     * @return The writer of the store
+     * @throws IOException
+     */
+    public static Writer create(File file, TsInformationSet info, Day horizon) throws IOException {
+        int n = info.getSeriesCount();
+        TsDomain cur = info.getCurrentDomain();
+        TsDomain[] values = new TsDomain[n], stdevs = new TsDomain[n];
+        TsDomain sdom = domain(cur.getStart(), cur.getStart().firstday(), horizon);
+        for (int i = 0; i < n; ++i) {
+            values[i] = domain(info.series(i).getStart(), cur.getStart().firstday(), horizon);
+            stdevs[i] = sdom;
+        }
+        return create(file, values, stdevs);
+    }
+
+    private static TsDomain domain(TsPeriod p, Day start, Day end) {
+        TsPeriod pstart = p.clone(), pend = p.clone();
+        pstart.set(start);
+        pend.set(end);
+        return new TsDomain(pstart, pend.minus(pstart) + 1);
+    }
+
+    /**
+     * Opens an existing store
+     *
+     * @param file The file of the store
+     * @return
+     * @throws IOException
+     */
+    public static SimulationStore open(File file) throws IOException {
+        return new SimulationStore(file);
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final TsDomain[] values, stdevs;
+    private final int[] offsets;
+    private final long start, rsize;
+    private final int nrecs;
+    private final MappedByteBuffer[] regions;
+    private final int recsPerRegion;
+    // days of the records and records sorted by day
+    private final Day[] days;
+    private final int[] sorted;
+
+    private SimulationStore(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 12));
+            if (header.limit() < 12 || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Invalid simulation store: " + file);
+            }
+            int n = header.getInt();
+            header = channel.map(FileChannel.MapMode.READ_ONLY, 12, 32L * n);
+            values = new TsDomain[n];
+            stdevs = new TsDomain[n];
+            for (int i = 0; i < n; ++i) {
+                values[i] = readDomain(header);
+            }
+            for (int i = 0; i < n; ++i) {
+                stdevs[i] = readDomain(header);
+            }
+            offsets = new int[2 * n + 1];
+            offsets[0] = 8;
+            for (int i = 0; i < n; ++i) {
+                offsets[i + 1] = offsets[i] + 8 * values[i].getLength();
+            }
+            for (int i = 0; i < n; ++i) {
+                offsets[n + i + 1] = offsets[n + i] + 8 * stdevs[i].getLength();
+            }
+            start = 12 + 32L * n;
+            rsize = offsets[2 * n];
+            nrecs = (int) ((channel.size() - start) / rsize);
+            recsPerRegion = (int) Math.max(1, MAX_REGION / rsize);
+            regions = new MappedByteBuffer[(nrecs + recsPerRegion - 1) / recsPerRegion];
+            for (int i = 0; i < regions.length; ++i) {
+                int nr = Math.min(recsPerRegion, nrecs - i * recsPerRegion);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start + i * recsPerRegion * rsize, nr * rsize);
+            }
+            days = new Day[nrecs];
+            Integer[] idx = new Integer[nrecs];
+            for (int i = 0; i < nrecs; ++i) {
+                GregorianCalendar c = new GregorianCalendar();
+                c.setTimeInMillis(region(i).getLong(position(i)));
+                days[i] = new Day(c.getTime());
+                idx[i] = i;
+            }
+            Arrays.sort(idx, (a, b) -> days[a].compareTo(days[b]));
+            sorted = new int[nrecs];
+            for (int i = 0; i < nrecs; ++i) {
+                sorted[i] = idx[i];
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static TsDomain readDomain(MappedByteBuffer buffer) {
+        TsFrequency freq = TsFrequency.valueOf(buffer.getInt());
+        int year = buffer.getInt(), pos = buffer.getInt(), len = buffer.getInt();
+        return new TsDomain(new TsPeriod(freq, year, pos), len);
+    }
+
+    private MappedByteBuffer region(int rec) {
+        MappedByteBuffer region = regions[rec / recsPerRegion];
+        if (region == null) {
+            throw new IllegalStateException("The store is closed");
+        }
+        return region;
+    }
+
+    private int position(int rec) {
+        return (int) ((rec % recsPerRegion) * rsize);
+    }
+
+    /**
+     *
+     * @return The file of the store
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     *
+     * @return The number of series
+     */
+    public int getSeriesCount() {
+        return values.length;
+    }
+
+    /**
+     *
+     * @return The number of vintages
+     */
+    public int getVintagesCount() {
+        return nrecs;
+    }
+
+    /**
+     *
+     * @return The publication days of the vintages, in chronological order
+     */
+    public Day[] getDays() {
+        Day[] d = new Day[nrecs];
+        for (int i = 0; i < nrecs; ++i) {
+            d[i] = days[sorted[i]];
+        }
+        return d;
+    }
+
+    /**
+     * Searches the vintage corresponding to a given publication day
+     *
+     * @param day
+     * @return The position of the vintage (in chronological order) or -1 if
+     * the day is not found
+     */
+    public int search(Day day) {
+        int lo = 0, hi = nrecs - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = days[sorted[mid]].compareTo(day);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Smoothed series (raw scale) of a given vintage
+     *
+     * @param vintage The position of the vintage (in chronological order)
+     * @param series The position of the series
+     * @return
+     */
+    public TsData getValues(int vintage, int series) {
+        return read(vintage, series, values[series]);
+    }
+
+    /**
+     * Stdev of the smoothed series of a given vintage
+     *
+     * @param vintage The position of the vintage (in chronological order)
+     * @param series The position of the series
+     * @return
+     */
+    public TsData getStdevs(int vintage, int series) {
+        return read(vintage, values.length + series, stdevs[series]);
+    }
+
+    /**
+     * Smoothed value of a series for a given vintage and a given period
+     *
+     * @param vintage The position of the vintage (in chronological order)
+     * @param series The position of the series
+     * @param period The period, in the frequency of the series
+     * @return The value. NaN if it is not available
+     */
+    public double getValue(int vintage, int series, TsPeriod period) {
+        int pos = period.minus(values[series].getStart());
+        if (pos < 0 || pos >= values[series].getLength()) {
+            return Double.NaN;
+        }
+        int rec = sorted[vintage];
+        return region(rec).getDouble(position(rec) + offsets[series] + 8 * pos);
+    }
+
+    private TsData read(int vintage, int block, TsDomain dom) {
+        int rec = sorted[vintage];
+        MappedByteBuffer buffer = region(rec);
+        int pos = position(rec) + offsets[block];
+        double[] data = new double[dom.getLength()];
+        for (int i = 0; i < data.length; ++i, pos += 8) {
+            data[i] = buffer.getDouble(pos);
+        }
+        return new TsData(dom.getStart(), data, false);
+    }
+
+    /**
+     * Closes the store. The mapped regions of the file are released by the
+     * garbage collector (they can't be unmapped explicitly), so that the file
+     * may not be deleted just after the closing on some platforms (Windows).
+     * Temporary stores should use File.deleteOnExit.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(regions, null);
+        channel.close();
+    }
+}
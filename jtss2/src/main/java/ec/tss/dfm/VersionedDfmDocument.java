@@ -33,6 +33,11 @@ import java.util.Date;
 public class VersionedDfmDocument extends VersionedDocument<DfmSpec, Ts[], CompositeResults, DfmDocument>
         implements Cloneable {
 
+    // incremental computation of the news (see DfmNews.setIncremental)
+    private boolean incrementalNews;
+    // checkpoint of the last computation of the news (see DfmNews)
+    private DfmNews.Checkpoint newsCheckpoint;
+
     public VersionedDfmDocument() {
         super(new DfmDocument());
     }
@@ -109,10 +114,11 @@ public class VersionedDfmDocument extends VersionedDocument<DfmSpec, Ts[], Compo
         TsInformationSet curinfo = cur.getInput();
         TsInformationSet previnfo = prev.getInput();
         TsInformationSet revinfo = previnfo.revisedData(curinfo);
-        DfmNews news=new DfmNews(cur.getModel());
+        DfmNews news=news(cur);
         
         if (! news.process(previnfo, revinfo))
             return null;
+        newsCheckpoint=news.getCheckpoint();
         return news;
     }
 
@@ -129,10 +135,11 @@ public class VersionedDfmDocument extends VersionedDocument<DfmSpec, Ts[], Compo
         TsInformationSet curinfo = cur.getInput();
         TsInformationSet previnfo = prev.getInput();
         TsInformationSet revinfo = previnfo.revisedData(curinfo);
-        DfmNews news=new DfmNews(cur.getModel());
+        DfmNews news=news(cur);
         
         if (! news.process(revinfo, curinfo))
             return null;
+        newsCheckpoint=news.getCheckpoint();
         return news;
     }
     
@@ -147,13 +154,42 @@ public class VersionedDfmDocument extends VersionedDocument<DfmSpec, Ts[], Compo
         DfmResults cur=this.getCurrent().getDfmResults(),
                 prev=refdoc.getDfmResults();
         TsInformationSet curinfo=cur.getInput(), previnfo=prev.getInput();
-        DfmNews news=new DfmNews(cur.getModel());
+        DfmNews news=news(cur);
         
         if (! news.process(previnfo, curinfo))
             return null;
+        newsCheckpoint=news.getCheckpoint();
         return news;
     }
     
+    public boolean isIncrementalNews() {
+        return incrementalNews;
+    }
+
+    /**
+     * Computes the news in incremental mode (false by default). In that
+     * mode, the checkpoint of the previous computation is reused when it is
+     * compatible with the current model and data, but the smoothed states
+     * before the checkpoint are not available (see DfmNews.setIncremental)
+     *
+     * @param incrementalNews
+     */
+    public void setIncrementalNews(boolean incrementalNews) {
+        this.incrementalNews = incrementalNews;
+        if (!incrementalNews) {
+            newsCheckpoint = null;
+        }
+    }
+
+    private DfmNews news(DfmResults cur){
+        DfmNews news=new DfmNews(cur.getModel());
+        if (incrementalNews) {
+            news.setIncremental(true);
+            news.setCheckpoint(newsCheckpoint);
+        }
+        return news;
+    }
+
     public void unlockModel() {
         DfmDocument current = getCurrent();
         if (current != null) {
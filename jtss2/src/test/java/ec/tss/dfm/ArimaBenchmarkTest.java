@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tss.dfm;
+
+import ec.tstoolkit.modelling.arima.tramo.TramoSpecification;
+import ec.tstoolkit.timeseries.Day;
+import ec.tstoolkit.timeseries.information.TsInformationSet;
+import ec.tstoolkit.timeseries.information.TsVintageIndex;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class ArimaBenchmarkTest {
+
+    public ArimaBenchmarkTest() {
+    }
+
+    @Test
+    public void testParallel() {
+        TsInformationSet info = new TsInformationSet(new TsData[]{data.Data.M1, data.Data.M2});
+        List<Integer> delays = Arrays.asList(15, 45);
+        Day[] all = info.generatePublicationCalendar(new int[]{15, 45});
+        Day[] cal = Arrays.copyOfRange(all, all.length - 24, all.length);
+        Day horizon = info.getCurrentDomain().getLast().plus(12).lastday();
+
+        ArimaBenchmark benchmark = new ArimaBenchmark(TramoSpecification.TRfull);
+        benchmark.setEstimationDays(new Day[]{cal[12]});
+        TsData[][] f = benchmark.process(info, new int[]{0, 1}, delays, cal, horizon);
+        // two identifications for each series
+        assertEquals(4, benchmark.getIdentificationsCount());
+        assertEquals(2 * cal.length, benchmark.getIdentificationsCount() + benchmark.getEstimationsCount() + benchmark.getReusedCount());
+        assertTrue(benchmark.getReusedCount() > 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            benchmark.setExecutor(executor);
+            TsData[][] pf = benchmark.process(info, new int[]{0, 1}, delays, cal, horizon);
+            assertEquals(4, benchmark.getIdentificationsCount());
+            for (int s = 0; s < 2; ++s) {
+                for (int i = 0; i < cal.length; ++i) {
+                    assertTrue(f[s][i] != null);
+                    assertTrue(f[s][i].distance(pf[s][i]) < 1e-9);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSeriesBySeries() {
+        TsInformationSet info = new TsInformationSet(new TsData[]{data.Data.M1, data.Data.M2});
+        List<Integer> delays = Arrays.asList(15, 45);
+        Day[] all = info.generatePublicationCalendar(new int[]{15, 45});
+        Day[] cal = Arrays.copyOfRange(all, all.length - 12, all.length);
+        Day horizon = info.getCurrentDomain().getLast().plus(12).lastday();
+
+        ArimaBenchmark benchmark = new ArimaBenchmark(TramoSpecification.TRfull);
+        TsData[][] f = benchmark.process(info, new int[]{0, 1}, delays, cal, horizon);
+        // one index for all the series
+        TsVintageIndex index = info.createVintageIndex(delays);
+        for (int s = 0; s < 2; ++s) {
+            TsData[] sf = benchmark.process(index, new int[]{s}, cal, horizon)[0];
+            for (int i = 0; i < cal.length; ++i) {
+                assertTrue(f[s][i].distance(sf[i]) < 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testFailedIdentification() {
+        // the first vintages are too short for the identification of the model
+        TsData s = data.Data.M1.drop(data.Data.M1.getLength() - 60, 0);
+        TsInformationSet info = new TsInformationSet(new TsData[]{s});
+        List<Integer> delays = Arrays.asList(15);
+        Day[] cal = info.generatePublicationCalendar(new int[]{15});
+        Day horizon = info.getCurrentDomain().getLast().plus(12).lastday();
+
+        ArimaBenchmark benchmark = new ArimaBenchmark(TramoSpecification.TRfull);
+        TsData[] f = benchmark.process(info, new int[]{0}, delays, cal, horizon)[0];
+        int nidentified = benchmark.getIdentificationsCount(), nestimated = benchmark.getEstimationsCount(),
+                nreused = benchmark.getReusedCount();
+        assertTrue(f[0] == null && f[cal.length - 1] != null);
+        // the model is identified again until the identification succeeds
+        assertTrue(nidentified > 1);
+        assertTrue(nestimated > 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            benchmark.setExecutor(executor);
+            TsData[] pf = benchmark.process(info, new int[]{0}, delays, cal, horizon)[0];
+            assertEquals(nidentified, benchmark.getIdentificationsCount());
+            assertEquals(nestimated, benchmark.getEstimationsCount());
+            assertEquals(nreused, benchmark.getReusedCount());
+            for (int i = 0; i < cal.length; ++i) {
+                if (f[i] == null) {
+                    assertTrue(pf[i] == null);
+                } else {
+                    assertTrue(f[i].distance(pf[i]) < 1e-9);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tss.dfm;
+
+import ec.tss.Ts;
+import ec.tss.TsFactory;
+import ec.tstoolkit.dfm.DfmSimulationSpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class DfmBatchSimulationTest {
+
+    public DfmBatchSimulationTest() {
+    }
+
+    @Test
+    public void testProcess() throws IOException {
+        VersionedDfmDocument vdoc = new VersionedDfmDocument();
+        DfmDocument doc = vdoc.getCurrent();
+        Ts[] input = new Ts[DfmProcessingFactoryTest.vars.size()];
+        for (int i = 0; i < input.length; ++i) {
+            input[i] = TsFactory.instance.createTs("var" + (i + 1), null, DfmProcessingFactoryTest.vars.get(i));
+        }
+        doc.setInput(input);
+        doc.setSpecification(DfmProcessingFactoryTest.spec.clone());
+        DfmSimulationSpec dspec = doc.getSpecification().getSimulationSpec();
+
+        DfmSimulationSpec spec = new DfmSimulationSpec();
+        spec.setNumberOfYears(1);
+        File folder = Files.createTempDirectory("dfmbatch").toFile();
+        try {
+            DfmBatchSimulation batch = new DfmBatchSimulation();
+            batch.setThreadsCount(2);
+            batch.setArimaSpecification(null);
+            int n = batch.process(vdoc, spec, folder);
+            assertTrue(n > 0);
+            // the document is not modified
+            assertTrue(doc == vdoc.getCurrent());
+            assertTrue(dspec == doc.getSpecification().getSimulationSpec());
+            assertEquals(2, dspec.getNumberOfYears());
+
+            assertFalse(new File(folder, DfmBatchSimulation.ARIMA_FILE).exists());
+            List<String> lines = Files.readAllLines(new File(folder, DfmBatchSimulation.DFM_FILE).toPath(), StandardCharsets.UTF_8);
+            assertEquals("day\tseries\tperiod\tvalue", lines.get(0));
+            assertTrue(lines.size() > 1);
+            Set<String> days = new HashSet<>();
+            for (String line : lines.subList(1, lines.size())) {
+                String[] items = line.split("\t");
+                assertEquals(4, items.length);
+                int s = Integer.parseInt(items[1]);
+                assertTrue(s >= 1 && s <= input.length);
+                assertTrue(Double.isFinite(Double.parseDouble(items[3])));
+                days.add(items[0]);
+            }
+            // one block of lines by (successful) vintage
+            assertTrue(!days.isEmpty() && days.size() <= n);
+        } finally {
+            for (File file : folder.listFiles()) {
+                file.delete();
+            }
+            folder.delete();
+        }
+    }
+}
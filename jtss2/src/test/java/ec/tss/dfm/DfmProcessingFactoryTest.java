@@ -27,6 +27,7 @@ import ec.tstoolkit.algorithm.IProcessing;
 import ec.tstoolkit.algorithm.IProcessingHook;
 import ec.tstoolkit.algorithm.IProcessingNode;
 import ec.tstoolkit.algorithm.ProcessingContext;
+import ec.tstoolkit.data.DescriptiveStatistics;
 import ec.tstoolkit.dfm.DfmEstimationSpec;
 import ec.tstoolkit.dfm.DfmModelSpec;
 import ec.tstoolkit.dfm.DfmSpec;
@@ -44,6 +45,9 @@ import ec.tstoolkit.timeseries.simplets.TsFrequency;
 import ec.tstoolkit.var.VarSpec;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -138,6 +142,89 @@ public class DfmProcessingFactoryTest {
         DfmProcessingFactory.instance.unregister(hook);
     }
 
+    @Test
+    public void testPrepare() {
+        TsData[] input = vars.toArray(new TsData[vars.size()]);
+        TsData[] trs = new TsData[input.length];
+        DfmResults rslts = DfmProcessingFactory.prepare(spec, spec.getModelSpec().build(), input, 12, trs);
+        assertTrue(rslts != null);
+        assertEquals(input.length, rslts.getInput().getSeriesCount());
+        for (int i = 0; i < input.length; ++i) {
+            DfmSeriesDescriptor desc = rslts.getDescription(i);
+            TsData s = rslts.getInput().series(i);
+            assertTrue(trs[i] != null);
+            assertEquals(new DescriptiveStatistics(trs[i]).getAverage(), desc.mean, 1e-9);
+            assertEquals(0, new DescriptiveStatistics(s).getAverage(), 1e-9);
+        }
+        // invalid input
+        assertTrue(DfmProcessingFactory.prepare(spec, spec.getModelSpec().build(), new TsData[]{input[0]}, 0, null) == null);
+    }
+
+    @Test
+    public void testPrepareProcessingOptions() {
+        TsData[] input = vars.toArray(new TsData[vars.size()]);
+        DfmSpec nspec = spec.clone();
+        NumericalProcessingSpec proc = nspec.getEstimationSpec().getNumericalProcessingSpec();
+        proc.setSteadyStateTolerance(1e-9);
+        proc.setUnivariate(true);
+        proc.setCheckpointInterval(12);
+        DfmResults rslts = DfmProcessingFactory.prepare(nspec, nspec.getModelSpec().build(), input, 12, null);
+        assertEquals(1e-9, rslts.getProcessor().getSteadyStateTolerance(), 0);
+        assertTrue(rslts.getProcessor().isUnivariate());
+        assertEquals(12, rslts.getProcessor().getCheckpointInterval());
+    }
+
+    @Test
+    public void testSaCache() {
+        DfmProcessingFactory.clearSaCache();
+        TsData s = data.Data.P.clone();
+        CompositeResults rslts = DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA4, s);
+        assertTrue(rslts != null);
+        // same series (other instance), same specification
+        assertTrue(rslts == DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA4.clone(), data.Data.P.clone()));
+        // the cache is not affected by the modification of the series
+        s.set(0, s.get(0) + 1);
+        assertTrue(rslts != DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA4, s));
+        assertTrue(rslts == DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA4, data.Data.P));
+        // other specification
+        assertTrue(rslts != DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA5, data.Data.P));
+        DfmProcessingFactory.clearSaCache();
+    }
+
+    @Test
+    public void testEnvironment() {
+        DfmProcessingFactory.clearSaCache();
+        CompositeResults rslts = DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA4, data.Data.P);
+        // the environment has its own cache
+        DfmProcessingFactory.Environment env = new DfmProcessingFactory.Environment(null);
+        CompositeResults erslts = env.call(() -> DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA4, data.Data.P));
+        assertTrue(erslts != null && erslts != rslts);
+        assertTrue(erslts == env.call(() -> DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA4, data.Data.P)));
+        assertTrue(rslts == DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA4, data.Data.P));
+
+        // the series are processed by the executor of the environment
+        TsData[] input = vars.toArray(new TsData[vars.size()]);
+        DfmResults drslts = DfmProcessingFactory.prepare(spec, spec.getModelSpec().build(), input, 12, null);
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            DfmProcessingFactory.Environment xenv = new DfmProcessingFactory.Environment(executor);
+            // the only worker of the executor is busy: the calling thread must take the tasks
+            DfmResults xrslts = executor.submit(() -> xenv.call(() -> DfmProcessingFactory.prepare(spec, spec.getModelSpec().build(), input, 12, null))).get();
+            for (int i = 0; i < input.length; ++i) {
+                TsData s = drslts.getInput().series(i), xs = xrslts.getInput().series(i);
+                assertEquals(s.getDomain(), xs.getDomain());
+                assertArrayEquals(s.getValues().internalStorage(), xs.getValues().internalStorage(), 1e-9);
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            fail(ex.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+        // the global cache is not affected by the environments
+        assertTrue(rslts == DfmProcessingFactory.seasonalAdjustment(TramoSeatsSpecification.RSA4, data.Data.P));
+        DfmProcessingFactory.clearSaCache();
+    }
+
     @Test
     public void testDiff() {
         TsData s = data.Data.P;
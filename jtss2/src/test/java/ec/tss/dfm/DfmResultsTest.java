@@ -10,12 +10,16 @@ import ec.tstoolkit.data.DataBlock;
 import ec.tstoolkit.data.DescriptiveStatistics;
 import ec.tstoolkit.dfm.DfmEM;
 import ec.tstoolkit.dfm.DfmEM2;
+import ec.tstoolkit.dfm.DfmProcessor;
 import ec.tstoolkit.timeseries.information.TsInformationSet;
 import ec.tstoolkit.dfm.DynamicFactorModel;
 import ec.tstoolkit.dfm.IDfmEstimator;
 import ec.tstoolkit.dfm.PcInitializer;
 import ec.tstoolkit.eco.Likelihood;
 import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import ec.tstoolkit.mssf2.IMSsf;
+import ec.tstoolkit.mssf2.MSmoothingResults;
 import ec.tstoolkit.ssf2.ResidualsCumulator;
 import ec.tstoolkit.timeseries.simplets.TsData;
 import ec.tstoolkit.timeseries.simplets.TsDataTable;
@@ -23,6 +27,7 @@ import ec.tstoolkit.timeseries.simplets.TsFrequency;
 import ec.tstoolkit.timeseries.simplets.TsPeriod;
 import ec.tstoolkit.var.VarSpec;
 import org.junit.Test;
+import static org.junit.Assert.*;
 
 /**
  *
@@ -179,6 +184,175 @@ public class DfmResultsTest {
         loadData();
     }
 
+    @Test
+    public void testSmoothedSignals() {
+        DfmResults rslts = new DfmResults(dmodel, dfmdata);
+        int N = dmodel.getMeasurementsCount();
+        DfmSeriesDescriptor[] desc = new DfmSeriesDescriptor[N];
+        for (int v = 0; v < N; ++v) {
+            desc[v] = new DfmSeriesDescriptor(v);
+            desc[v].mean = v;
+            desc[v].stdev = 1 + .1 * v;
+        }
+        rslts.setDescriptions(desc);
+        TsData[] signal = rslts.getSignal(), uncertainty = rslts.getSignalUncertainty();
+
+        // former computation: full covariance matrices of the smoothed
+        // states and ZVZ' on a copy of P(t). The results are equal up to rounding
+        DfmProcessor processor = new DfmProcessor();
+        processor.setCalcVariance(true);
+        processor.process(dmodel, dfmdata, new MSmoothingResults());
+        MSmoothingResults srslts = processor.getSmoothingResults();
+        IMSsf ssf = dmodel.ssfRepresentation();
+        Matrix zvz = new Matrix(N, N);
+        for (int t = 0; t < signal[0].getLength(); ++t) {
+            ssf.ZVZ(0, new Matrix(srslts.P(t)).all(), zvz.all());
+            for (int v = 0; v < N; ++v) {
+                double s = ssf.ZX(0, v, srslts.A(t)) * desc[v].stdev;
+                double u = zvz.get(v, v) * desc[v].stdev * desc[v].stdev;
+                assertEquals(s, signal[v].get(t), 1e-9 * (1 + Math.abs(s)));
+                assertEquals(u, uncertainty[v].get(t), 1e-9 * (1 + Math.abs(u)));
+            }
+        }
+    }
+
+    @Test
+    public void testResponsesDescriptions() {
+        DfmResults rslts = new DfmResults(dmodel, dfmdata);
+        int N = dmodel.getMeasurementsCount();
+        DfmSeriesDescriptor[] desc = new DfmSeriesDescriptor[N];
+        for (int v = 0; v < N; ++v) {
+            desc[v] = new DfmSeriesDescriptor(v);
+            desc[v].stdev = 1;
+        }
+        rslts.setDescriptions(desc);
+        int[] hor = new int[]{1, 2, 12};
+        Matrix irf = rslts.getIrfIdx(hor, 0).clone();
+        Matrix fevd = rslts.getVarianceDecompositionIdx(hor, 0).clone();
+        DfmSeriesDescriptor[] ndesc = new DfmSeriesDescriptor[N];
+        for (int v = 0; v < N; ++v) {
+            ndesc[v] = new DfmSeriesDescriptor(v);
+            ndesc[v].stdev = 2;
+        }
+        rslts.setDescriptions(ndesc);
+        // the responses are scaled by the new stdev, the (not normalized)
+        // variances by its square
+        irf.mul(2);
+        fevd.mul(4);
+        assertTrue(irf.minus(rslts.getIrfIdx(hor, 0)).nrm2() < 1e-9);
+        assertTrue(fevd.minus(rslts.getVarianceDecompositionIdx(hor, 0)).nrm2() < 1e-9);
+    }
+
+    @Test
+    public void testResponses() {
+        DfmResults rslts = new DfmResults(dmodel, dfmdata);
+        int N = dmodel.getMeasurementsCount();
+        DfmSeriesDescriptor[] desc = new DfmSeriesDescriptor[N];
+        for (int v = 0; v < N; ++v) {
+            desc[v] = new DfmSeriesDescriptor(v);
+            desc[v].stdev = 1 + .1 * v;
+        }
+        rslts.setDescriptions(desc);
+        // the longest horizon first, so that the shorter ones use the cached responses
+        int[][] hors = new int[][]{{1, 2, 6, 12}, {3}, {12, 1}};
+        for (int[] hor : hors) {
+            for (int shock = 0; shock < dmodel.getFactorsCount(); ++shock) {
+                Matrix irf = rslts.getIrfShock(hor, shock);
+                Matrix fevd = rslts.getVarianceDecompositionShock(hor, shock);
+                for (int h = 0; h < hor.length; ++h) {
+                    double[][] former = formerResponses(rslts, hor[h], shock);
+                    for (int v = 0; v < N; ++v) {
+                        assertEquals(former[0][v], irf.get(v, h), 1e-9);
+                        assertEquals(former[1][v], fevd.get(v, h), 1e-9 * Math.max(1, former[1][v]));
+                    }
+                }
+            }
+        }
+        // the matrices by variable contain the same responses
+        int[] hor = hors[0];
+        Matrix irf = rslts.getIrfIdx(hor, 1), fevd = rslts.getVarianceDecompositionIdx(hor, 1);
+        for (int shock = 0; shock < dmodel.getFactorsCount(); ++shock) {
+            for (int h = 0; h < hor.length; ++h) {
+                double[][] former = formerResponses(rslts, hor[h], shock);
+                assertEquals(former[0][1], irf.get(shock, h), 1e-9);
+                assertEquals(former[1][1], fevd.get(shock, h), 1e-9 * Math.max(1, former[1][1]));
+            }
+        }
+    }
+
+    /**
+     * Responses of the variables to one shock, for one horizon, as they were
+     * computed by getIrfShock and getVarianceDecompositionShock before the
+     * responses of all the shocks were cached (the transition is applied to a
+     * copy of the shock, for each horizon)
+     *
+     * @return The impulse responses (first item) and the forecast errors
+     * variances (second item) of the variables
+     */
+    private static double[][] formerResponses(DfmResults rslts, int horizon, int shock) {
+        DynamicFactorModel model = rslts.getModel();
+        IMSsf ssf = rslts.getSsf();
+        int r = model.getFactorsCount();
+        int N = model.getMeasurementsCount();
+        int c_ = model.getBlockLength();
+        Matrix C = model.getTransition().covar.clone();
+        SymmetricMatrix.lcholesky(C);
+        Matrix B = C.times(new Rotation(new double[r * (r - 1) / 2]).getRotation());
+        Matrix Q_ = new Matrix(r * c_, 1);
+        for (int i = 0; i < r; i++) {
+            Q_.set(i * c_, 0, B.get(i, shock));
+        }
+
+        DataBlock ts = Q_.column(0).deepClone();
+        Matrix TQT = Q_.times(Q_.transpose());
+        Matrix Sigmax = TQT.clone();
+        if (horizon > 1) {
+            for (int i = 0; i < horizon; i++) {
+                ssf.TX(0, ts);
+                ssf.TVT(0, TQT.subMatrix());
+                Sigmax.add(TQT);
+            }
+        }
+        Matrix zvz = new Matrix(N, N);
+        ssf.ZVZ(0, Sigmax.subMatrix(), zvz.subMatrix());
+
+        double[][] rsp = new double[2][N];
+        for (int v = 0; v < N; v++) {
+            double stdev = rslts.getDescription(v).stdev;
+            rsp[0][v] = ssf.ZX(0, v, ts) * stdev;
+            rsp[1][v] = zvz.get(v, v) * stdev * stdev;
+        }
+        return rsp;
+    }
+
+    @Test
+    public void testUnivariateProcessing() {
+        DfmResults rslts = new DfmResults(dmodel, dfmdata);
+        DfmResults urslts = new DfmResults(dmodel, dfmdata);
+        urslts.getProcessor().setUnivariate(true);
+        for (int i = 0; i < dmodel.getFactorsCount(); ++i) {
+            assertTrue(distance(rslts.getFactor(i), urslts.getFactor(i)) < 1e-6);
+            assertTrue(distance(rslts.getFactorStdev(i), urslts.getFactorStdev(i)) < 1e-6);
+            assertTrue(distance(rslts.getFactor_Filtered(i), urslts.getFactor_Filtered(i)) < 1e-6);
+        }
+    }
+
+    @Test
+    public void testCheckpointProcessing() {
+        DfmResults rslts = new DfmResults(dmodel, dfmdata);
+        DfmResults crslts = new DfmResults(dmodel, dfmdata);
+        crslts.getProcessor().setCheckpointInterval(12);
+        for (int i = 0; i < dmodel.getFactorsCount(); ++i) {
+            assertTrue(distance(rslts.getFactor(i), crslts.getFactor(i)) < 1e-9);
+            assertTrue(distance(rslts.getFactorStdev(i), crslts.getFactorStdev(i)) < 1e-9);
+            assertTrue(distance(rslts.getFactor_Filtered(i), crslts.getFactor_Filtered(i)) < 1e-9);
+        }
+    }
+
+    private static double distance(TsData s, TsData t) {
+        return new DataBlock(s.getValues().internalStorage()).distance(new DataBlock(t.getValues().internalStorage()));
+    }
+
     @Test
     public void testSomeMethod() {
         
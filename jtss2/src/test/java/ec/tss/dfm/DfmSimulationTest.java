@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tss.dfm;
+
+import ec.tss.Ts;
+import ec.tss.TsFactory;
+import ec.tstoolkit.algorithm.CompositeResults.Node;
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.dfm.DfmSpec;
+import ec.tstoolkit.timeseries.Day;
+import ec.tstoolkit.timeseries.information.TsInformationSet;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class DfmSimulationTest {
+
+    public DfmSimulationTest() {
+    }
+
+    @Test
+    public void testParallel() {
+        DfmDocument doc = document();
+        Day[] cal = DfmSimulation.generateCalendar(doc);
+        Day horizon = horizon(doc);
+
+        List<Day> sdays = new ArrayList<>();
+        DfmSimulation simulation = new DfmSimulation(horizon);
+        simulation.addPropertyChangeListener(evt -> {
+            if (evt.getPropertyName().equals(DfmSimulation.CALENDAR_RESULTS)) {
+                sdays.add((Day) evt.getNewValue());
+            }
+        });
+        simulation.process(doc, cal, new ArrayList<>());
+
+        List<Day> pdays = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        DfmSimulation psimulation = new DfmSimulation(horizon);
+        psimulation.addPropertyChangeListener(evt -> {
+            if (evt.getPropertyName().equals(DfmSimulation.CALENDAR_RESULTS)) {
+                pdays.add((Day) evt.getNewValue());
+                threads.add(Thread.currentThread());
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            psimulation.setExecutor(executor);
+            psimulation.process(doc, cal, new ArrayList<>());
+        } finally {
+            executor.shutdown();
+        }
+
+        // the events are fired in the order of the calendar, in the calling thread
+        assertEquals(Arrays.asList(cal), sdays);
+        assertEquals(Arrays.asList(cal), pdays);
+        assertEquals(Collections.nCopies(cal.length, Thread.currentThread()), threads);
+        compare(simulation.getResults(), psimulation.getResults(), doc.getInput().length, 1e-9);
+    }
+
+    @Test
+    public void testSegments() {
+        DfmDocument doc = document();
+        Day[] cal = DfmSimulation.generateCalendar(doc);
+        Day horizon = horizon(doc);
+        DfmSimulation simulation = new DfmSimulation(horizon);
+        simulation.process(doc, cal, new ArrayList<>());
+
+        // the vintages that follow the first one are processed with its model,
+        // without document (see DfmSimulation.processVintage(Day, Segment, TsVintageIndex)).
+        // They are compared with complete documents
+        DfmSpec spec = doc.getSpecification();
+        TsInformationSet info = new TsInformationSet(doc.getData());
+        Map<Day, SimulationResultsDocument> srslts = new TreeMap<>(), drslts = new TreeMap<>();
+        for (int i = 1; i < Math.min(6, cal.length); ++i) {
+            TsInformationSet cinfo = info.generateInformation(spec.getModelSpec().getPublicationDelays(), cal[i]);
+            Ts[] input = new Ts[cinfo.getSeriesCount()];
+            for (int j = 0; j < input.length; ++j) {
+                input[j] = TsFactory.instance.createTs("var" + (j + 1), null, cinfo.series(j));
+            }
+            TsPeriod last = cinfo.getCurrentDomain().getLast();
+            TsPeriod end = last.clone();
+            end.set(horizon);
+            DfmSpec curspec = spec.clone();
+            curspec.getModelSpec().setForecastHorizon(end.minus(last));
+            DfmDocument vdoc = new DfmDocument();
+            vdoc.setInput(input);
+            vdoc.setSpecification(curspec);
+            Node n = vdoc.getResults().getNode(DfmProcessingFactory.FINALC);
+            assertTrue(n != null && n.results != null);
+            drslts.put(cal[i], new SimulationResultsDocument(n.results));
+            srslts.put(cal[i], simulation.getResults().get(cal[i]));
+        }
+        compare(drslts, srslts, doc.getInput().length, 1e-6);
+    }
+
+    static DfmDocument document() {
+        DfmDocument doc = new DfmDocument();
+        Ts[] input = new Ts[DfmProcessingFactoryTest.vars.size()];
+        for (int i = 0; i < input.length; ++i) {
+            input[i] = TsFactory.instance.createTs("var" + (i + 1), null, DfmProcessingFactoryTest.vars.get(i));
+        }
+        doc.setInput(input);
+        DfmSpec spec = DfmProcessingFactoryTest.spec.clone();
+        spec.getSimulationSpec().setNumberOfYears(1);
+        doc.setSpecification(spec);
+        // the model of the reference document is estimated once; the vintages use it
+        assertNotNull(doc.getResults());
+        assertTrue(doc.getSpecification().getModelSpec().isSpecified());
+        return doc;
+    }
+
+    static Day horizon(DfmDocument doc) {
+        TsPeriod last = new TsInformationSet(doc.getData()).getCurrentDomain().getLast();
+        last.move(last.getFrequency().intValue());
+        return last.lastday();
+    }
+
+    static void compare(Map<Day, SimulationResultsDocument> l, Map<Day, SimulationResultsDocument> r, int nvars, double eps) {
+        assertEquals(l.keySet(), r.keySet());
+        for (Day day : l.keySet()) {
+            SimulationResultsDocument lrslts = l.get(day), rrslts = r.get(day);
+            assertEquals(lrslts == null, rrslts == null);
+            if (lrslts != null) {
+                for (int j = 0; j < nvars; ++j) {
+                    TsData ls = lrslts.getSimulationResults().getData("var" + (j + 1), TsData.class);
+                    TsData rs = rrslts.getSimulationResults().getData("var" + (j + 1), TsData.class);
+                    assertEquals(ls.getDomain(), rs.getDomain());
+                    assertTrue(distance(ls, rs) < eps);
+                }
+            }
+        }
+    }
+
+    private static double distance(TsData s, TsData t) {
+        return new DataBlock(s.getValues().internalStorage()).distance(new DataBlock(t.getValues().internalStorage()));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tss.dfm;
+
+import ec.tss.dfm.ForecastEvaluation.Measure;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class ForecastEvaluationTest {
+
+    public ForecastEvaluationTest() {
+    }
+
+    @Test
+    public void testFixedSeries() {
+        double[] y = new double[]{10, 12, 11, 14, 15},
+                f = new double[]{11, 12, 13, 13, Double.NaN},
+                fB = new double[]{Double.NaN, 10, 12, 15, 13};
+        ForecastEvaluation eval = new ForecastEvaluation(y, f, fB);
+        checkFixedSeries(eval);
+    }
+
+    @Test
+    public void testFixedSeriesOf() {
+        // the forecasts and the benchmark don't cover the same periods
+        TsPeriod start = new TsPeriod(TsFrequency.Monthly, 2010, 0);
+        TsData y = new TsData(start, new double[]{10, 12, 11, 14, 15}, false),
+                f = new TsData(start, new double[]{11, 12, 13, 13}, false),
+                fB = new TsData(start.plus(1), new double[]{10, 12, 15, 13}, false);
+        checkFixedSeries(ForecastEvaluation.of(f, fB, y));
+        checkFixedSeries(new ForecastEvaluationResults(f, fB, y).getEvaluation());
+    }
+
+    /**
+     * Errors of the forecasts: -1, 0, -2, 1 (periods 0 to 3); errors of the
+     * benchmark: 2, -1, -1, 2 (periods 1 to 4)
+     */
+    private static void checkFixedSeries(ForecastEvaluation eval) {
+        assertEquals(4, eval.getObsCount());
+        assertEquals(4, eval.getBenchmarkObsCount());
+        assertEquals(3, eval.getCommonObsCount());
+
+        // forecasts: mean absolute change = (2+1+3)/3 = 2
+        assertEquals(Math.sqrt(1.5), eval.get(Measure.RMSE), 1e-12);
+        assertEquals(1, eval.get(Measure.MAE), 1e-12);
+        assertEquals(1, eval.get(Measure.MdAE), 1e-12);
+        assertEquals(100 * Math.sqrt((1.0 / 100 + 4.0 / 121 + 1.0 / 196) / 4), eval.get(Measure.RMSPE), 1e-12);
+        assertEquals(50 * (1.0 / 21 + 2.0 / 24 + 1.0 / 27), eval.get(Measure.sMAPE), 1e-12);
+        assertEquals(100 * (1.0 / 21 + 1.0 / 27), eval.get(Measure.sMdAPE), 1e-12);
+        assertEquals(Math.sqrt(1.5) / 2, eval.get(Measure.RMSSE), 1e-12);
+        assertEquals(0.5, eval.get(Measure.MASE), 1e-12);
+        assertEquals(0.5, eval.get(Measure.MdASE), 1e-12);
+
+        // benchmark: mean absolute change = (2+1+3+1)/4 = 1.75
+        assertEquals(Math.sqrt(2.5), eval.getBenchmark(Measure.RMSE), 1e-12);
+        assertEquals(1.5, eval.getBenchmark(Measure.MAE), 1e-12);
+        assertEquals(1.5, eval.getBenchmark(Measure.MdAE), 1e-12);
+        assertEquals(1.5 / 1.75, eval.getBenchmark(Measure.MASE), 1e-12);
+
+        // common periods (1 to 3): errors 0, -2, 1 and 2, -1, -1
+        assertEquals(Math.sqrt(5.0 / 6), eval.getRelative(Measure.RMSE), 1e-12);
+        assertEquals(0.75, eval.getRelative(Measure.MAE), 1e-12);
+        assertEquals(0.75, eval.getRelative(Measure.MASE), 1e-12);
+        assertEquals(100.0 / 3, eval.getPB(), 1e-12);
+        // loss differentials: -4, 3, 0 (squared), -2, 1, 0 (absolute), 0, 2, 2 (encompassing)
+        assertEquals(-3 / Math.sqrt(22), eval.getDM(), 1e-12);
+        assertEquals(-3 / Math.sqrt(10), eval.getDMabs(), 1e-12);
+        assertEquals(3, eval.getDM_e(), 1e-12);
+    }
+
+    @Test
+    public void testMeasures() {
+        int n = 60;
+        Random rnd = new Random(0);
+        double[] y = new double[n], f = new double[n], fB = new double[n];
+        for (int i = 0; i < n; ++i) {
+            y[i] = 100 + i + rnd.nextGaussian();
+            f[i] = y[i] + rnd.nextGaussian();
+            fB[i] = y[i] + 2 * rnd.nextGaussian();
+        }
+        f[3] = Double.NaN;
+        fB[10] = Double.NaN;
+        y[20] = Double.NaN;
+
+        ForecastEvaluation eval = new ForecastEvaluation(y, f, fB);
+        assertEquals(n - 2, eval.getObsCount());
+        assertEquals(n - 2, eval.getBenchmarkObsCount());
+        assertEquals(n - 3, eval.getCommonObsCount());
+        // the benchmark is less accurate
+        assertTrue(eval.getRelative(Measure.RMSE) < 1);
+        assertTrue(eval.getDM() < 0);
+        assertTrue(eval.getDMabs() < 0);
+        assertTrue(Double.isFinite(eval.getDM_e()));
+    }
+
+    @Test
+    public void testCube() {
+        int n = 40;
+        Random rnd = new Random(1);
+        double[][] y = new double[2][n];
+        double[][][] f = new double[2][3][n], fB = new double[2][3][n];
+        for (int s = 0; s < 2; ++s) {
+            for (int i = 0; i < n; ++i) {
+                y[s][i] = rnd.nextGaussian();
+                for (int h = 0; h < 3; ++h) {
+                    f[s][h][i] = y[s][i] + (h + 1) * rnd.nextGaussian();
+                    fB[s][h][i] = y[s][i] + rnd.nextGaussian();
+                }
+            }
+        }
+        ForecastEvaluation[][] evals = ForecastEvaluation.evaluate(y, f, fB);
+        assertEquals(2, evals.length);
+        for (int s = 0; s < 2; ++s) {
+            assertEquals(3, evals[s].length);
+            for (int h = 0; h < 3; ++h) {
+                ForecastEvaluation eval = new ForecastEvaluation(y[s], f[s][h], fB[s][h]);
+                for (Measure measure : Measure.values()) {
+                    assertEquals(eval.get(measure), evals[s][h].get(measure), 0);
+                    assertEquals(eval.getBenchmark(measure), evals[s][h].getBenchmark(measure), 0);
+                }
+                assertEquals(eval.getDM(), evals[s][h].getDM(), 0);
+            }
+        }
+    }
+}
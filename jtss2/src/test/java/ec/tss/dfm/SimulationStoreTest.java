@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tss.dfm;
+
+import ec.tstoolkit.timeseries.Day;
+import ec.tstoolkit.timeseries.TsAggregationType;
+import ec.tstoolkit.timeseries.information.TsInformationSet;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class SimulationStoreTest {
+
+    public SimulationStoreTest() {
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        TsData m = data.Data.M1;
+        TsData q = data.Data.M2.changeFrequency(TsFrequency.Quarterly, TsAggregationType.Sum, true);
+        TsInformationSet info = new TsInformationSet(new TsData[]{m, q});
+        Day horizon = m.getLastPeriod().plus(12).lastday();
+        Day[] cal = info.generatePublicationCalendar(new int[]{15, 45});
+        int n = 20;
+        File file = File.createTempFile("simulation", ".bin");
+        try {
+            try (SimulationStore.Writer writer = SimulationStore.create(file, info, horizon)) {
+                // vintages in reverse order
+                for (int i = cal.length - 1; i >= cal.length - n; --i) {
+                    TsInformationSet vinfo = info.generateInformation(null, cal[i]);
+                    writer.add(cal[i], new TsData[]{vinfo.series(0), vinfo.series(1)},
+                            i % 2 == 0 ? null : new TsData[]{vinfo.series(0), vinfo.series(0)});
+                }
+            }
+            try (SimulationStore store = SimulationStore.open(file)) {
+                assertEquals(2, store.getSeriesCount());
+                assertEquals(n, store.getVintagesCount());
+                Day[] days = store.getDays();
+                for (int j = 0; j < n; ++j) {
+                    int i = cal.length - n + j;
+                    assertEquals(cal[i], days[j]);
+                    assertEquals(j, store.search(cal[i]));
+                    TsInformationSet vinfo = info.generateInformation(null, cal[i]);
+                    TsData s0 = vinfo.series(0), s1 = vinfo.series(1);
+                    assertTrue(s0.distance(store.getValues(j, 0).fittoDomain(s0.getDomain())) < 1e-12);
+                    assertTrue(s1.distance(store.getValues(j, 1).fittoDomain(s1.getDomain())) < 1e-12);
+                    TsPeriod last = s1.getLastPeriod();
+                    assertEquals(s1.get(last), store.getValue(j, 1, last), 1e-12);
+                    TsData e = store.getStdevs(j, 1);
+                    if (i % 2 == 0) {
+                        assertTrue(Double.isNaN(e.get(e.getLength() - 1)));
+                    } else {
+                        assertTrue(s0.distance(e.fittoDomain(s0.getDomain())) < 1e-12);
+                    }
+                }
+                assertEquals(-1, store.search(cal[0]));
+            }
+            // the regions are released by close
+            SimulationStore store = SimulationStore.open(file);
+            store.close();
+            try {
+                store.getValues(0, 0);
+                fail();
+            } catch (IllegalStateException ex) {
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -31,6 +31,7 @@ import ec.tstoolkit.mssf2.MultivariateSsfData;
 import ec.tstoolkit.ssf2.ResidualsCumulator;
 import ec.tstoolkit.var.VarSpec;
 import java.util.EnumMap;
+import java.util.EnumSet;
 
 /**
  *
@@ -45,7 +46,12 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
     private Matrix M;
     private final EnumMap<DynamicFactorModel.MeasurementType, DataBlock[]> G = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
     private final EnumMap<DynamicFactorModel.MeasurementType, Table<DataBlock>> G2 = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
-    private DataBlock Efij[];
+    // types for which G/G2 are up to date
+    private final EnumSet<DynamicFactorModel.MeasurementType> Gcur = EnumSet.noneOf(DynamicFactorModel.MeasurementType.class);
+    // The buffers (G, G2) are allocated once for a given model/data size
+    // and reused in the successive iterations. The E-step only computes
+    // the moments of the smoothed states needed by the M-step
+    private DfmSmoothedMoments moments;
     private int maxiter_ = 50000, iter_;
     private boolean all_ = true, correctStart_ = true;
     private int modelSize;
@@ -53,6 +59,18 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
     private double ll_;
     private int numiter_ = 50;
     private double eps_ = 1e-6;
+    // SQUAREM acceleration. p0 contains the parameters at the beginning of
+    // the current cycle; fallback is the (non extrapolated) model of the
+    // second EM step, with its likelihood, that is restored when the
+    // extrapolation doesn't increase the likelihood
+    private boolean accelerated_;
+    private DataBlock p0;
+    private DynamicFactorModel fallback;
+    private double fallbackll_;
+    private double saving;
+    private int naccepted_, nrejected_;
+    private double nsaved_;
+    private long time_;
 
     public DfmEM2(IDfmInitializer initializer) {
         this.initializer = initializer;
@@ -103,77 +121,145 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         numiter_ = i;
     }
 
+    public boolean isAccelerated() {
+        return accelerated_;
+    }
+
+    /**
+     * Uses the SQUAREM extrapolation (Varadhan-Roland, 2008) after each pair of
+     * EM iterations. The extrapolated model is only accepted if it increases
+     * the likelihood. Otherwise, the usual EM iterations are used.
+     *
+     * @param acc
+     */
+    public void setAccelerated(boolean acc) {
+        accelerated_ = acc;
+    }
+
+    /**
+     * Number of EM iterations (E-step + M-step) of the last estimation
+     *
+     * @return
+     */
+    public int getIterationsCount() {
+        return iter_;
+    }
+
+    /**
+     * Number of extrapolations accepted during the last estimation
+     *
+     * @return
+     */
+    public int getAcceptedExtrapolationsCount() {
+        return naccepted_;
+    }
+
+    /**
+     * Number of extrapolations rejected during the last estimation
+     *
+     * @return
+     */
+    public int getRejectedExtrapolationsCount() {
+        return nrejected_;
+    }
+
+    /**
+     * Estimation of the number of EM iterations saved by the accelerated
+     * steps. An extrapolation with a step length alpha moves the parameters by
+     * about -2*alpha times the first EM step, where two EM iterations move them
+     * by about 2 times that step. So, each accepted extrapolation saves about
+     * 2*(-alpha-1) iterations.
+     *
+     * @return
+     */
+    public int getSavedIterationsCount() {
+        return (int) Math.round(nsaved_);
+    }
+
+    /**
+     * Estimation of the time (in milliseconds) saved by the accelerated steps,
+     * computed on the average duration of the EM iterations
+     *
+     * @return
+     */
+    public long getSavedTime() {
+        if (iter_ == 0) {
+            return 0;
+        }
+        return Math.round(nsaved_ * time_ / iter_);
+    }
+
     private DataBlock ef(int i) {
         return processor.getSmoothingResults().getSmoothedStates().item(i);
     }
 
-    private DataBlock vf(int i, int j) {
-        return new DataBlock(processor.getSmoothingResults().componentCovar(i, j));
+    /**
+     * sum(E(s(i,t)s(j,t)), t)
+     */
+    private double sef(int i, int j) {
+        return moments.sum(i, j);
     }
 
-    private DataBlock ef(int i, int j) {
-        if (i > j) {
-            return ef(j, i);
-        }
-        int idx = i + modelSize * j;
-        DataBlock cur = Efij[idx];
-        if (cur == null) {
-            cur = vf(i, j);
-            cur.addAXY(1, ef(i), ef(j));
-            Efij[idx] = cur;
+    /**
+     * E(s(i,0)s(j,0))
+     */
+    private double ef0(int i, int j) {
+        return moments.initial(i, j);
+    }
+
+    private void allocate(int msize, int dsize) {
+        if (msize != modelSize || dsize != dataSize) {
+            modelSize = msize;
+            dataSize = dsize;
+            G.clear();
+            G2.clear();
         }
-        return cur;
     }
 
     private void calcG() {
-        G.clear();
-        G2.clear();
-        for (int i = 0; i < Efij.length; ++i) {
-            Efij[i] = null;
-        }
+        Gcur.clear();
+        int nf = dfm.getFactorsCount();
+        int nb = dfm.getBlockLength();
         for (DynamicFactorModel.MeasurementDescriptor desc : dfm.getMeasurements()) {
             DynamicFactorModel.MeasurementType type = DynamicFactorModel.
                     getMeasurementType(desc.type);
-            if (!G.containsKey(type)) {
+            if (!Gcur.contains(type)) {
+                Gcur.add(type);
                 int len = desc.type.getLength();
-                DataBlock z = new DataBlock(len);
-                desc.type.fill(z);
-                int nf = dfm.getFactorsCount();
-                DataBlock[] g = new DataBlock[nf];
-                Table<DataBlock> g2 = new Table<>(nf, nf);
-                int nb = dfm.getBlockLength();
+                DataBlock z = moments.getZ(type);
+                Table<DataBlock> zvz = moments.getZVZ(type);
+                DataBlock[] g = G.get(type);
+                Table<DataBlock> g2 = G2.get(type);
+                if (g == null || g.length != nf) {
+                    g = new DataBlock[nf];
+                    g2 = new Table<>(nf, nf);
+                    for (int i = 0; i < nf; ++i) {
+                        g[i] = new DataBlock(dataSize);
+                        for (int k = 0; k <= i; ++k) {
+                            DataBlock column2 = new DataBlock(dataSize);
+                            g2.set(i, k, column2);
+                            if (i != k) {
+                                g2.set(k, i, column2);
+                            }
+                        }
+                    }
+                    G.put(type, g);
+                    G2.put(type, g2);
+                }
                 for (int i = 0, j = 0; i < nf; ++i, j += nb) {
-                    DataBlock column = new DataBlock(dataSize);
+                    DataBlock column = g[i];
+                    column.set(0);
                     for (int k = 0; k < len; ++k) {
                         column.addAY(z.get(k), ef(j + k));
                     }
-                    g[i] = column;
                 }
-                for (int i = 0, j = 0; i < nf; ++i, j += nb) {
-                    for (int k = 0, l = 0; k <= i; ++k, l += nb) {
-                        DataBlock column2 = new DataBlock(dataSize);
-                        for (int pr = 0; pr < len; ++pr) {
-                            double zr = z.get(pr);
-                            if (zr != 0) {
-                                for (int pc = 0; pc < len; ++pc) {
-                                    double zc = z.get(pc);
-                                    if (zc != 0) {
-                                        column2.addAY(zr * zc, vf(j + pr, l + pc));
-                                    }
-                                }
-                            }
-                        }
+                for (int i = 0; i < nf; ++i) {
+                    for (int k = 0; k <= i; ++k) {
+                        DataBlock column2 = g2.get(i, k);
+                        column2.copy(zvz.get(i, k));
                         column2.addAXY(1, g[i], g[k]);
-                        g2.set(i, k, column2);
-                        if (i != k) {
-                            g2.set(k, i, column2);
-                        }
-
                     }
                 }
-
-                G.put(type, g);
-                G2.put(type, g2);
             }
         }
     }
@@ -187,23 +273,41 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         } else {
             this.dfm = rdfm;
         }
-        modelSize = dfm.getBlockLength() * dfm.getFactorsCount();
-        dataSize = data.getCurrentDomain().getLength();
-        Efij = new DataBlock[modelSize * modelSize];
+        allocate(dfm.getBlockLength() * dfm.getFactorsCount(), data.getCurrentDomain().getLength());
+        moments = new DfmSmoothedMoments(dfm);
         M = data.generateMatrix(null);
         if (initializer != null) {
             initializer.initialize(dfm, data);
         }
         iter_ = 0;
         ll_ = 0;
+        p0 = null;
+        fallback = null;
+        naccepted_ = 0;
+        nrejected_ = 0;
+        nsaved_ = 0;
+        long t0 = System.currentTimeMillis();
+        time_ = 0;
         filter(true);
         while (iter_++ < maxiter_) {
             if (!EStep()) {
                 break;
             }
+            DataBlock p = accelerated_ ? parameters(dfm) : null;
             if (!MStep()) {
                 break;
             }
+            time_ = System.currentTimeMillis() - t0;
+            if (p != null) {
+                extrapolate(p);
+            } else {
+                p0 = null;
+            }
+        }
+        if (fallback != null) {
+            // the last extrapolation has not been checked
+            dfm = fallback;
+            fallback = null;
         }
 
         // finishing
@@ -232,17 +336,37 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
     }
 
     private boolean EStep() {
-        if (!processor.process(dfm, data)) {
+        boolean ok = processor.process(dfm, data, moments);
+        Likelihood ll = new Likelihood();
+        if (ok) {
+            evaluate(processor.getFilteringResults(), ll);
+        }
+        if (fallback != null) {
+            // monotonicity safeguard: the extrapolated model must increase
+            // the likelihood of the model of the second EM step
+            DynamicFactorModel prev = fallback;
+            fallback = null;
+            if (!ok || !(ll.getLogLikelihood() >= fallbackll_)) {
+                ++nrejected_;
+                dfm = prev;
+                return EStep();
+            }
+            ++naccepted_;
+            nsaved_ += saving;
+        }
+        if (!ok) {
             return false;
         }
-        Likelihood ll = new Likelihood();
-        evaluate(processor.getFilteringResults(), ll);
         if (iter_ > 1 && Math.abs(ll_ - ll.getLogLikelihood()) < eps_) {
             return false;
         }
         ll_ = ll.getLogLikelihood();
         IProcessingHook.HookInformation<DfmEM2, DynamicFactorModel> hinfo
                 = new IProcessingHook.HookInformation<>(this, dfm);
+        if (accelerated_) {
+            hinfo.message = String.format("squarem: %d iterations, %d extrapolations (%d rejected), %d iterations saved (%d ms)",
+                    iter_, naccepted_, nrejected_, getSavedIterationsCount(), getSavedTime());
+        }
         this.processHooks(hinfo, all_);
         if (hinfo.cancel) {
             return false;
@@ -251,6 +375,145 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         return true;
     }
 
+    /**
+     * SQUAREM extrapolation (scheme S3 of Varadhan-Roland). The extrapolation
+     * is computed every second EM iteration:
+     * r = p1 - p0, v = (p2 - p1) - r, alpha = -||r||/||v||
+     * p = p0 - 2*alpha*r + alpha^2*v
+     * alpha is bounded by -1, which corresponds to p2. The extrapolated model
+     * is checked in the next E-step, against the likelihood of p2 (computed
+     * by a simple filtering).
+     *
+     * @param p The parameters of the model before the last M-step
+     */
+    private void extrapolate(DataBlock p) {
+        if (p0 == null) {
+            p0 = p;
+            return;
+        }
+        DataBlock r = p.deepClone();
+        r.sub(p0);
+        DataBlock v = parameters(dfm);
+        DataBlock np = p0;
+        p0 = null;
+        if (v == null) {
+            return;
+        }
+        v.sub(p);
+        v.sub(r);
+        double rr = r.ssq(), vv = v.ssq();
+        if (vv == 0 || rr == 0) {
+            return;
+        }
+        double alpha = -Math.sqrt(rr / vv);
+        if (alpha >= -1) {
+            return;
+        }
+        np.addAY(-2 * alpha, r);
+        np.addAY(alpha * alpha, v);
+        DynamicFactorModel m = dfm.clone();
+        if (parameters(m, np) && m.isValid()) {
+            double ll2 = loglikelihood(dfm);
+            if (Double.isNaN(ll2)) {
+                return;
+            }
+            fallback = dfm;
+            fallbackll_ = ll2;
+            dfm = m;
+            saving = -2 * (alpha + 1);
+        }
+    }
+
+    /**
+     * Log-likelihood of a model, computed by a simple filtering
+     *
+     * @param m The model
+     * @return The log-likelihood or NaN if the filtering failed
+     */
+    private double loglikelihood(DynamicFactorModel m) {
+        try {
+            MFilter filter = new MFilter();
+            MPredictionErrorDecomposition results = new MPredictionErrorDecomposition(true);
+            filter.process(m.ssfRepresentation(), new MultivariateSsfData(M.subMatrix().transpose(), null), results);
+            Likelihood ll = new Likelihood();
+            evaluate(results, ll);
+            return ll.getLogLikelihood();
+        } catch (RuntimeException err) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Parameters of the model used in the extrapolation: the loadings, the
+     * standard deviations of the measurements, the VAR parameters and the
+     * cholesky factor of the covariance of the innovations. Contrary to
+     * DfmMapping, no parameter is fixed for identification.
+     *
+     * @return The parameters or null if the covariance is not positive
+     */
+    private static DataBlock parameters(DynamicFactorModel m) {
+        int nf = m.getFactorsCount();
+        Matrix vp = m.getTransition().varParams;
+        int n = vp.internalStorage().length + nf * (nf + 1) / 2;
+        for (DynamicFactorModel.MeasurementDescriptor desc : m.getMeasurements()) {
+            n += desc.getUsedFactorsCount() + 1;
+        }
+        DataBlock p = new DataBlock(n);
+        int i0 = 0;
+        for (DynamicFactorModel.MeasurementDescriptor desc : m.getMeasurements()) {
+            for (int k = 0; k < nf; ++k) {
+                if (!Double.isNaN(desc.coeff[k])) {
+                    p.set(i0++, desc.coeff[k]);
+                }
+            }
+            p.set(i0++, Math.sqrt(desc.var));
+        }
+        p.range(i0, i0 + vp.internalStorage().length).copyFrom(vp.internalStorage(), 0);
+        i0 += vp.internalStorage().length;
+        Matrix l = m.getTransition().covar.clone();
+        try {
+            SymmetricMatrix.lcholesky(l);
+        } catch (MatrixException err) {
+            return null;
+        }
+        for (int i = 0; i < nf; ++i) {
+            p.extract(i0, i + 1).copy(l.row(i).range(0, i + 1));
+            i0 += i + 1;
+        }
+        return p;
+    }
+
+    private static boolean parameters(DynamicFactorModel m, DataBlock p) {
+        int nf = m.getFactorsCount();
+        int i0 = 0;
+        for (DynamicFactorModel.MeasurementDescriptor desc : m.getMeasurements()) {
+            for (int k = 0; k < nf; ++k) {
+                if (!Double.isNaN(desc.coeff[k])) {
+                    desc.coeff[k] = p.get(i0++);
+                }
+            }
+            double e = p.get(i0++);
+            desc.var = e * e;
+        }
+        Matrix vp = m.getTransition().varParams;
+        p.range(i0, i0 + vp.internalStorage().length).copyTo(vp.internalStorage(), 0);
+        i0 += vp.internalStorage().length;
+        Matrix l = new Matrix(nf, nf);
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                l.set(i, j, p.get(i0++));
+            }
+        }
+        Matrix q = m.getTransition().covar;
+        SymmetricMatrix.XXt(l.subMatrix(), q.subMatrix());
+        for (int i = 0; i < nf; ++i) {
+            if (q.get(i, i) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static void evaluate(final ResidualsCumulator rslts,
             final Likelihood ll) {
         int n = rslts.getObsCount();
@@ -364,7 +627,7 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         for (int i = 0; i < nf; ++i) {
             for (int j = 0; j < nl; ++j) {
                 for (int k = 0; k < nf; ++k) {
-                    double x = ef(i * blen, k * blen + j + 1).sum();
+                    double x = sef(i * blen, k * blen + j + 1);
                     f.set(i, j * nf + k, x);
                 }
             }
@@ -373,7 +636,7 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
             for (int k = 0; k < nf; ++k, ++r) {
                 for (int j = 1, c = 0; j <= nl; ++j) {
                     for (int l = 0; l < nf; ++l, ++c) {
-                        double x = ef(k * blen + i, l * blen + j).sum();
+                        double x = sef(k * blen + i, l * blen + j);
                         f2.set(r, c, x);
                     }
                 }
@@ -399,7 +662,7 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         Matrix Q = dfm.getTransition().covar;
         for (int i = 0; i < nf; ++i) {
             for (int j = 0; j <= i; ++j) {
-                Q.set(i, j, ef(i * blen, j * blen).sum());
+                Q.set(i, j, sef(i * blen, j * blen));
             }
         }
         SymmetricMatrix.fromLower(Q);
@@ -450,7 +713,7 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
                 for (int k = 0; k < nc; ++k) {
                     for (int j = 0; j < nf; ++j) {
                         for (int l = 0; l < nc; ++l) {
-                            double v = ef(i * n + k + del, j * n + l + del).get(0);
+                            double v = ef0(i * n + k + del, j * n + l + del);
                             K0.set(i * nc + k, j * nc + l, v);
                         }
                     }
@@ -479,10 +742,10 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
             Matrix K = new Matrix(n, n);
             for (int k = 0; k < n; ++k) {
                 for (int l = 0; l < n; ++l) {
-                    double s = ef(i + k * len, j + l * len).sum();
+                    double s = sef(i + k * len, j + l * len);
 //                    // add first ef...
                     for (int u = 1; u < len - dfm.getTransition().nlags; ++u) {
-                        s += ef(i + u + k * len, j + u + l * len).get(0);
+                        s += ef0(i + u + k * len, j + u + l * len);
                     }
                     K.set(k, l, s);
                 }
@@ -24,15 +24,20 @@ import ec.tstoolkit.data.IReadDataBlock;
 import ec.tstoolkit.eco.Likelihood;
 import ec.tstoolkit.maths.matrices.Matrix;
 import ec.tstoolkit.maths.realfunctions.IFunctionMinimizer;
+import ec.tstoolkit.maths.realfunctions.IParametricMapping;
 import ec.tstoolkit.maths.realfunctions.ISsqFunctionMinimizer;
 import ec.tstoolkit.maths.realfunctions.ProxyMinimizer;
 import ec.tstoolkit.maths.realfunctions.levmar.LevenbergMarquardtMethod;
+import ec.tstoolkit.mssf2.IMSsf;
+import ec.tstoolkit.mssf2.IMSsfAlgorithm;
 import ec.tstoolkit.mssf2.IMSsfData;
 import ec.tstoolkit.mssf2.MSsfAlgorithm;
 import ec.tstoolkit.mssf2.MSsfFunction;
 import ec.tstoolkit.mssf2.MSsfFunctionInstance;
 import ec.tstoolkit.mssf2.MultivariateSsfData;
 import ec.tstoolkit.timeseries.simplets.TsDomain;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  *
@@ -46,9 +51,12 @@ public class DfmEstimator implements IDfmEstimator {
     private boolean converged_;
     private boolean vunits_;
     private final IFunctionMinimizer min_;
-    private int nstart_ = 15, nnext_ = 5;
+    private int nstart_ = 15, nnext_ = 5, nthreads_ = 1;
+    private ExecutorService executor_;
     private TsDomain idom_;
     private boolean useBlockIterations_ = true, mixed_ = true;
+    private double sstol_;
+    private boolean univariate_, analytic_ = true;
     private Likelihood ll_;
     private DataBlock factors_;
 
@@ -88,6 +96,64 @@ public class DfmEstimator implements IDfmEstimator {
         return min_.getConvergenceCriterion();
     }
 
+    public double getSteadyStateTolerance() {
+        return sstol_;
+    }
+
+    /**
+     * Sets the tolerance used by the Kalman filter to detect its steady state
+     * during the evaluation of the likelihood. 0 disables the detection.
+     *
+     * @param tol
+     */
+    public void setSteadyStateTolerance(double tol) {
+        sstol_ = tol;
+    }
+
+    public boolean isUnivariate() {
+        return univariate_;
+    }
+
+    /**
+     * Uses the univariate treatment of the observations in the evaluation of
+     * the likelihood (see UMFilter). Requires independent measurement errors.
+     *
+     * @param univariate
+     */
+    public void setUnivariate(boolean univariate) {
+        univariate_ = univariate;
+    }
+
+    public boolean isAnalyticDerivatives() {
+        return analytic_;
+    }
+
+    /**
+     * Uses the analytical gradient of the likelihood (see DfmScore) when it
+     * is available. Only used by minimizers based on the log-likelihood
+     * (not by Levenberg-Marquardt)
+     *
+     * @param analytic
+     */
+    public void setAnalyticDerivatives(boolean analytic) {
+        analytic_ = analytic;
+    }
+
+    public int getThreadsCount() {
+        return nthreads_;
+    }
+
+    /**
+     * Sets the number of threads used to compute the numerical derivatives of
+     * the likelihood or the jacobian of the sum of squares (see
+     * ParallelNumericalDerivatives). 1 (default) for sequential computation
+     *
+     * @param n
+     */
+    public void setThreadsCount(int n) {
+        nthreads_ = n;
+    }
+
     public int getMaxIntermediateIter() {
         return nnext_;
     }
@@ -155,11 +221,24 @@ public class DfmEstimator implements IDfmEstimator {
             return new DfmMapping(model, mf, vf);
     }
 
+    private MSsfFunction function(IMSsfData data, IParametricMapping<IMSsf> mapping, IMSsfAlgorithm algorithm) {
+        MSsfFunction fn;
+        if (analytic_ && mapping instanceof DfmMapping) {
+            fn = new DfmFunction(data, (DfmMapping) mapping, algorithm);
+        } else {
+            fn = new MSsfFunction(data, mapping, algorithm);
+        }
+        fn.setExecutor(executor_);
+        return fn;
+    }
+
     @Override
     public boolean estimate(final DynamicFactorModel dfm, TsInformationSet input) {
         converged_ = false;
         Matrix m = input.generateMatrix(idom_);
         MSsfAlgorithm algorithm = new MSsfAlgorithm();
+        algorithm.setSteadyStateTolerance(sstol_);
+        algorithm.setUnivariate(univariate_);
         IMSsfData mdata = new MultivariateSsfData(m.subMatrix().transpose(), null);
         MSsfFunction fn;
         IDfmMapping mapping;
@@ -167,13 +246,16 @@ public class DfmEstimator implements IDfmEstimator {
         int niter = 0;
         DynamicFactorModel model = dfm.clone();
         normalize(model);
+        if (nthreads_ > 1) {
+            executor_ = Executors.newFixedThreadPool(nthreads_);
+        }
         try {
             if (nstart_ > 0) {
                 setMessage(SIMPLIFIED);
                 min_.setMaxIter(nstart_);
                 SimpleDfmMapping smapping = new SimpleDfmMapping(model);
                 smapping.validate(model);
-                fn = new MSsfFunction(mdata, smapping, algorithm);
+                fn = function(mdata, smapping, algorithm);
                 min_.minimize(fn, fn.evaluate(smapping.map(model)));
                 pt = (MSsfFunctionInstance) min_.getResult();
                 double var = pt.getLikelihood().getSigma();
@@ -188,7 +270,7 @@ public class DfmEstimator implements IDfmEstimator {
                 while (true) {
                     normalize(model);
                     mapping =mapping(model, true, false);
-                    fn = new MSsfFunction(mdata, mapping, algorithm);
+                    fn = function(mdata, mapping, algorithm);
                     setMessage(VSTEP);
                     min_.minimize(fn, fn.evaluate(mapping.map(model)));
                     niter += min_.getIterCount();
@@ -205,7 +287,7 @@ public class DfmEstimator implements IDfmEstimator {
                         em.initialize(model, input);
                     } else {
                         mapping = mapping(model, false, true);
-                        fn = new MSsfFunction(mdata, mapping, algorithm);
+                        fn = function(mdata, mapping, algorithm);
                         setMessage(MSTEP);
                         min_.minimize(fn, fn.evaluate(mapping.map(model)));
                         niter += min_.getIterCount();
@@ -218,7 +300,7 @@ public class DfmEstimator implements IDfmEstimator {
 
                     }
                     mapping = mapping(model, false, false);
-                    fn = new MSsfFunction(mdata, mapping, algorithm);
+                    fn = function(mdata, mapping, algorithm);
                     setMessage(ALL);
                     converged_ = min_.minimize(fn, fn.evaluate(mapping.map(model)))
                             && min_.getIterCount() < nnext_;
@@ -237,7 +319,7 @@ public class DfmEstimator implements IDfmEstimator {
             } else {
                 normalize(model);
                 mapping =mapping(model, false, false);
-                fn = new MSsfFunction(mdata, mapping, algorithm);
+                fn = function(mdata, mapping, algorithm);
                 min_.setMaxIter(maxiter_);
                 setMessage(ALL);
                 converged_ = min_.minimize(fn, fn.evaluate(mapping.map(model)));
@@ -251,6 +333,10 @@ public class DfmEstimator implements IDfmEstimator {
         } catch (Exception err) {
             return false;
         } finally {
+            if (executor_ != null) {
+                executor_.shutdown();
+                executor_ = null;
+            }
             normalize(model);
             dfm.copy(model);
             IDfmMapping fmapping = mapping(model, false, false);
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.dfm;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.eco.Likelihood;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.realfunctions.IFunctionDerivatives;
+import ec.tstoolkit.maths.realfunctions.IFunctionInstance;
+import ec.tstoolkit.mssf2.AbstractMSsfAlgorithm;
+import ec.tstoolkit.mssf2.IMSsf;
+import ec.tstoolkit.mssf2.IMSsfAlgorithm;
+import ec.tstoolkit.mssf2.IMSsfData;
+import ec.tstoolkit.mssf2.MSsfFunction;
+import ec.tstoolkit.mssf2.MSsfFunctionInstance;
+
+/**
+ * Likelihood function of a dynamic factor model, with an analytical gradient
+ * (see DfmScore). The hessian is computed numerically. The numerical
+ * derivatives are used when the score can't be computed or when the function
+ * is not based on the log-likelihood.
+ *
+ * @author Jean Palate
+ */
+public class DfmFunction extends MSsfFunction<IMSsf> {
+
+    private final DfmMapping dmapping;
+
+    /**
+     *
+     * @param data
+     * @param mapping
+     * @param algorithm
+     */
+    public DfmFunction(IMSsfData data, DfmMapping mapping, IMSsfAlgorithm algorithm) {
+        super(data, mapping, algorithm);
+        this.dmapping = mapping;
+    }
+
+    @Override
+    public IFunctionDerivatives getDerivatives(IFunctionInstance point) {
+        IFunctionDerivatives nd = super.getDerivatives(point);
+        if (algorithm instanceof AbstractMSsfAlgorithm && ((AbstractMSsfAlgorithm) algorithm).isUsingSsq()) {
+            return nd;
+        }
+        MSsfFunctionInstance<IMSsf> pt = (MSsfFunctionInstance<IMSsf>) point;
+        Likelihood ll = pt.getLikelihood();
+        if (ll == null) {
+            return nd;
+        }
+        DfmScore score = new DfmScore();
+        DynamicFactorModel model = ((DynamicFactorModel.Ssf) pt.ssf).getModel();
+        if (!score.compute(model, data, ll.getSigma())) {
+            return nd;
+        }
+        // the function is -log-likelihood
+        DataBlock g = dmapping.gradient(pt.getParameters(), score);
+        g.chs();
+        return new Derivatives(g, nd);
+    }
+
+    private static class Derivatives implements IFunctionDerivatives {
+
+        private final double[] grad;
+        private final IFunctionDerivatives nd;
+
+        private Derivatives(DataBlock g, IFunctionDerivatives nd) {
+            grad = new double[g.getLength()];
+            g.copyTo(grad, 0);
+            this.nd = nd;
+        }
+
+        @Override
+        public double[] getGradient() {
+            return grad;
+        }
+
+        @Override
+        public void getHessian(SubMatrix hessian) {
+            nd.getHessian(hessian);
+        }
+    }
+}
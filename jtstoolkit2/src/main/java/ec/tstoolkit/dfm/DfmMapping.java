@@ -84,7 +84,7 @@ public class DfmMapping implements IDfmMapping {
         return tv0 < 0 ? null : p.extract(tv0, nb * (nb + 1) / 2);
     }
 
-    private void mtvar(Matrix v, IReadDataBlock tv) {
+    private Matrix ltvar(IReadDataBlock tv) {
         int i0 = 0;
         Matrix tmp = new Matrix(nb, nb);
         for (int i = 0; i < nb; ++i) {
@@ -92,6 +92,11 @@ public class DfmMapping implements IDfmMapping {
             x.copy(tv.rextract(i0, i + 1));
             i0 += i + 1;
         }
+        return tmp;
+    }
+
+    private void mtvar(Matrix v, IReadDataBlock tv) {
+        Matrix tmp = ltvar(tv);
         SymmetricMatrix.XXt(tmp.subMatrix(), v.subMatrix());
 //        v.set(0);
 //        DataBlock d=v.diagonal();
@@ -282,6 +287,55 @@ public class DfmMapping implements IDfmMapping {
         return p;
     }
 
+    /**
+     * Computes the gradient of the log-likelihood with respect to the
+     * parameters
+     *
+     * @param p The parameters
+     * @param score The score of the model corresponding to the parameters
+     * @return
+     */
+    public DataBlock gradient(IReadDataBlock p, DfmScore score) {
+        DataBlock g = new DataBlock(np);
+        DataBlock l = loadings(g);
+        DataBlock mv = mvars(g);
+        int i0 = 0, j0 = 0;
+        if (l != null) {
+            Matrix gl = score.getLoadings();
+            double[] gh = score.getMeasurementVariances();
+            IReadDataBlock pmv = mvars(p);
+            int n = 0;
+            for (MeasurementDescriptor desc : template.getMeasurements()) {
+                for (int k = 0; k < nb; ++k) {
+                    if (!Double.isNaN(desc.coeff[k]) && (mmax == null || n != mmax[k])) {
+                        l.set(i0++, gl.get(n, k));
+                    }
+                }
+                if (n != ivmax) {
+                    // var = x*x
+                    mv.set(j0, 2 * pmv.get(j0) * gh[n]);
+                    ++j0;
+                }
+                ++n;
+            }
+        }
+        DataBlock tv = tvars(g), vp = vparams(g);
+        if (tv != null) {
+            vp.copyFrom(score.getVarParams().internalStorage(), 0);
+            // Q = LL' -> dL = 2 * dQ * L
+            Matrix L = ltvar(tvars(p));
+            Matrix dL = new Matrix(nb, nb);
+            dL.subMatrix().product(score.getCovar().subMatrix(), L.subMatrix());
+            i0 = 0;
+            for (int i = 0; i < nb; ++i) {
+                tv.extract(i0, i + 1).copy(dL.row(i).range(0, i + 1));
+                i0 += i + 1;
+            }
+            tv.mul(2);
+        }
+        return g;
+    }
+
     @Override
     public boolean checkBoundaries(IReadDataBlock inparams) {
         // check the stability of VAR
@@ -26,6 +26,7 @@ import ec.tstoolkit.mssf2.MFilter;
 import ec.tstoolkit.mssf2.MFilteringResults;
 import ec.tstoolkit.mssf2.MSmoother;
 import ec.tstoolkit.mssf2.MSmoothingResults;
+import ec.tstoolkit.mssf2.MState;
 import ec.tstoolkit.mssf2.MultivariateSsfData;
 import ec.tstoolkit.timeseries.information.TsInformationSet;
 import ec.tstoolkit.timeseries.information.TsInformationUpdates;
@@ -44,6 +45,91 @@ import java.util.List;
  */
 public class DfmNews {
 
+    /**
+     * Predicted state of an extended model (see setIncremental) at a given
+     * period. The checkpoint can be reused by the next computations of the
+     * news with the same model, as long as the data before that period are
+     * unchanged (same structure and same parameters of the model, same data
+     * before that period). A checkpoint is immutable.
+     */
+    public static class Checkpoint {
+
+        private final DynamicFactorModel model;
+        private final TsPeriod start;
+        private final int pos, blen;
+        private final DataBlock a;
+        private final Matrix P;
+        // the data used before the checkpoint (pos x nvars)
+        private final Matrix data;
+
+        private Checkpoint(DynamicFactorModel model, TsPeriod start, int pos, int blen, MState state, Matrix M) {
+            // the model can be modified after the computation of the news
+            this.model = model.clone();
+            this.start = start;
+            this.pos = pos;
+            this.blen = blen;
+            this.a = state.A.deepClone();
+            this.P = state.P.clone();
+            this.data = new Matrix(M.subMatrix(0, pos, 0, M.getColumnsCount()));
+        }
+
+        /**
+         *
+         * @return The period of the predicted state
+         */
+        public TsPeriod getPeriod() {
+            return start.plus(pos);
+        }
+
+        /**
+         *
+         * @return The block length of the extended model
+         */
+        public int getBlockLength() {
+            return blen;
+        }
+
+        private boolean isCompatible(DynamicFactorModel model, TsPeriod start, Matrix M, int pos, int blen) {
+            if (!this.model.isSame(model) || !start.equals(this.start) || this.pos > pos || this.blen < blen
+                    || M.getColumnsCount() != data.getColumnsCount()) {
+                return false;
+            }
+            for (int i = 0; i < this.pos; ++i) {
+                for (int j = 0; j < data.getColumnsCount(); ++j) {
+                    double x = data.get(i, j), y = M.get(i, j);
+                    if (x != y && !(Double.isNaN(x) && Double.isNaN(y))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The first "len" lags of each block of the state
+         */
+        private DataBlock a(int len) {
+            int nb = model.getFactorsCount();
+            DataBlock x = new DataBlock(nb * len);
+            for (int r = 0; r < nb; ++r) {
+                x.range(r * len, r * len + len).copy(a.range(r * blen, r * blen + len));
+            }
+            return x;
+        }
+
+        private Matrix P(int len) {
+            int nb = model.getFactorsCount();
+            Matrix x = new Matrix(nb * len, nb * len);
+            for (int r = 0; r < nb; ++r) {
+                for (int s = 0; s < nb; ++s) {
+                    x.subMatrix(r * len, r * len + len, s * len, s * len + len).copy(
+                            P.subMatrix(r * blen, r * blen + len, s * blen, s * blen + len));
+                }
+            }
+            return x;
+        }
+    }
+
     private MSmoothingResults srslts0_, srslts1_, srslts01_;
     private final DynamicFactorModel model_;
     private DynamicFactorModel modelex_;
@@ -53,7 +139,17 @@ public class DfmNews {
     private TsInformationUpdates updates_;
     private Matrix mcov_, lcov_;
     private Matrix mcovRev_, lcovRev_;
+    // projections of the covariance of the extended states on the loadings
+    // of the updates (mcov * L'), used for the covariance of the updates
+    // and for all the weights
+    private Matrix mproj_, mprojRev_;
+    // loadings of the model
+    private Matrix Z_;
     private TsPeriod first_, last_;
+    private boolean incremental_;
+    private Checkpoint checkpoint_;
+    // position of the checkpoint used in the current computation (-1 if none)
+    private int cpos_ = -1;
 
     private int ext_ = 2;
     /**
@@ -108,6 +204,46 @@ public class DfmNews {
         return rDomain_;
     }
 
+    public boolean isIncremental() {
+        return incremental_;
+    }
+
+    /**
+     * In incremental mode, the filters start from the predicted state at the
+     * first period affected by the news or by the revisions (checkpoint), and
+     * the smoothers stop at that period. The checkpoint is computed on an
+     * extended model, so that it can be used for all the filters. It is
+     * reused by the next computations (see getCheckpoint/setCheckpoint) when
+     * the model and the previous data are unchanged, so that the cost of the
+     * news only depends on the number of periods after the checkpoint.
+     *
+     * The smoothed states before the checkpoint are not available.
+     *
+     * @param incremental
+     */
+    public void setIncremental(boolean incremental) {
+        incremental_ = incremental;
+    }
+
+    /**
+     *
+     * @return The last checkpoint (incremental mode). May be null
+     */
+    public Checkpoint getCheckpoint() {
+        return checkpoint_;
+    }
+
+    /**
+     * Sets a checkpoint computed by a previous computation of the news. The
+     * checkpoint is only used if it is compatible with the current model and
+     * data
+     *
+     * @param checkpoint
+     */
+    public void setCheckpoint(Checkpoint checkpoint) {
+        checkpoint_ = checkpoint;
+    }
+
     /**
      * Computes the news between two consecutive information set
      *
@@ -138,9 +274,14 @@ public class DfmNews {
     private boolean calcNews() {
         // Calculates News
         computeNewsDomain();
+        if (!updates_.revisions().isEmpty()) {
+            computeRevisionsDomain();
+        }
+        srslts1_ = null;
 
         Matrix M = revisedset_.generateMatrix(fullDomain_);
         Matrix M_old = oldset_.generateMatrix(fullDomain_);
+        computeCheckpoint(M);
 
         if (!smoothOldData(M_old)) {
             return false;
@@ -159,7 +300,6 @@ public class DfmNews {
 
         // Calculates Revisions
         if (!updates_.revisions().isEmpty()) {
-            computeRevisionsDomain();
             updateRevisions();
 
             if (!smoothRevisionDataEx(M_old)) {
@@ -250,6 +390,89 @@ public class DfmNews {
         }
     }
 
+    /**
+     * Computes (or updates) the checkpoint at the first period affected by the
+     * news or by the revisions (incremental mode)
+     *
+     * @param M The revised data
+     */
+    private void computeCheckpoint(Matrix M) {
+        cpos_ = -1;
+        if (!incremental_) {
+            return;
+        }
+        TsPeriod p = nDomain_.getStart();
+        if (!updates_.revisions().isEmpty() && rDomain_.getStart().isBefore(p)) {
+            p = rDomain_.getStart();
+        }
+        int pos = p.minus(first_);
+        if (pos <= 0) {
+            return;
+        }
+        // block length of the largest extended model
+        int blen = model_.getBlockLength() + last_.minus(p) + 1;
+        MFilter filter = new MFilter();
+        if (checkpoint_ != null && checkpoint_.isCompatible(model_, first_, M, pos, blen)) {
+            if (checkpoint_.pos < pos) {
+                // moves the checkpoint forward
+                DynamicFactorModel xmodel = model_.clone();
+                xmodel.setBlockLength(checkpoint_.blen);
+                MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix(0, pos, 0, M.getColumnsCount()).transpose(), null);
+                filter.process(xmodel.ssfRepresentation(), ssfData, null, checkpoint_.pos, checkpoint_.a, checkpoint_.P);
+                checkpoint_ = new Checkpoint(model_, first_, pos, checkpoint_.blen, filter.getState(), M);
+            }
+        } else {
+            // some margin for the next computations
+            blen += first_.getFrequency().intValue();
+            DynamicFactorModel xmodel = model_.clone();
+            xmodel.setBlockLength(blen);
+            MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix(0, pos, 0, M.getColumnsCount()).transpose(), null);
+            filter.process(xmodel.ssfRepresentation(), ssfData, null);
+            checkpoint_ = new Checkpoint(model_, first_, pos, blen, filter.getState(), M);
+        }
+        cpos_ = pos;
+    }
+
+    /**
+     * Filters the data. In incremental mode, the filter starts from the
+     * checkpoint
+     *
+     * @param model The model
+     * @param ssf The state space form of the model
+     * @param ssfData The data
+     * @param start The first position of the saved variances
+     * @return
+     */
+    private MFilteringResults filter(DynamicFactorModel model, IMSsf ssf, MultivariateSsfData ssfData, int start) {
+        MFilteringResults frslts = new MFilteringResults();
+        frslts.saveAll(start);
+        MFilter filter = new MFilter();
+        if (cpos_ >= 0) {
+            int blen = model.getBlockLength();
+            filter.process(ssf, ssfData, frslts, cpos_, checkpoint_.a(blen), checkpoint_.P(blen));
+        } else {
+            filter.process(ssf, ssfData, frslts);
+        }
+        return frslts;
+    }
+
+    /**
+     * Stop position of the smoothers, which can't be before the checkpoint
+     */
+    private int stop(int pos) {
+        return cpos_ >= 0 ? Math.max(pos, cpos_) : pos;
+    }
+
+    private boolean smooth(Matrix M, int last, MSmoothingResults srslts) {
+        MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix().transpose(), null);
+        MSmoother smoother = new MSmoother();
+        last = stop(last);
+        srslts.setSavingStart(last);
+        smoother.setStopPosition(last);
+        smoother.setCalcVariance(false);
+        return smoother.process(ssf_, ssfData, filter(model_, ssf_, ssfData, last), srslts);
+    }
+
     /**
      * Computes the smoothed states corresponding to the old data set. The
      * variance of the smoothed states are not computed. The states are saved
@@ -258,36 +481,18 @@ public class DfmNews {
      * @param M
      */
     private boolean smoothOldData(Matrix M) {
-        MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix().transpose(), null);
-        MSmoother smoother = new MSmoother();
         srslts0_ = new MSmoothingResults();
-        int last = fullDomain_.search(iDomain0_.getStart());
-        srslts0_.setSavingStart(last);
-        smoother.setStopPosition(last);
-        smoother.setCalcVariance(false);
-        return smoother.process(ssf_, ssfData, srslts0_);
+        return smooth(M, fullDomain_.search(iDomain0_.getStart()), srslts0_);
     }
 
     private boolean smoothNewData(Matrix M) {
-        MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix().transpose(), null);
-        MSmoother smoother = new MSmoother();
         srslts1_ = new MSmoothingResults();
-        int last = fullDomain_.search(iDomain1_.getStart());
-        srslts1_.setSavingStart(last);
-        smoother.setStopPosition(last);
-        smoother.setCalcVariance(false);
-        return smoother.process(ssf_, ssfData, srslts1_);
+        return smooth(M, fullDomain_.search(iDomain1_.getStart()), srslts1_);
     }
-    
+
     private boolean smoothRevData(Matrix M) {
-        MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix().transpose(), null);
-        MSmoother smoother = new MSmoother();
         srslts01_ = new MSmoothingResults();
-        int last = fullDomain_.search(iDomain0_.getStart());
-        srslts01_.setSavingStart(last);
-        smoother.setStopPosition(last);
-        smoother.setCalcVariance(false);
-        return smoother.process(ssf_, ssfData, srslts01_);
+        return smooth(M, fullDomain_.search(iDomain0_.getStart()), srslts01_);
     }
 
     /**
@@ -321,11 +526,8 @@ public class DfmNews {
         modelex_.setBlockLength(model_.getBlockLength() + last_.minus(nDomain_.getStart()) + 1);
         int last = fullDomain_.getLength() - 1;
         IMSsf ssf = modelex_.ssfRepresentation();
-        MFilteringResults frslts = new MFilteringResults();
-        frslts.saveAll(last);
-        MFilter filter = new MFilter();
         MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix().transpose(), null);
-        filter.process(ssf, ssfData, frslts);
+        MFilteringResults frslts = filter(modelex_, ssf, ssfData, last);
         MSmoother smoother = new MSmoother();
         smoother.setStopPosition(last);
         smoother.setCalcVariance(true);
@@ -342,11 +544,8 @@ public class DfmNews {
         modelexRev_.setBlockLength(model_.getBlockLength() + last_.minus(rDomain_.getStart()) + 1);
         int last = fullDomain_.getLength() - 1;
         IMSsf ssf = modelexRev_.ssfRepresentation();
-        MFilteringResults frslts = new MFilteringResults();
-        frslts.saveAll(last);
-        MFilter filter = new MFilter();
         MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix().transpose(), null);
-        filter.process(ssf, ssfData, frslts);
+        MFilteringResults frslts = filter(modelexRev_, ssf, ssfData, last);
         MSmoother smoother = new MSmoother();
         smoother.setStopPosition(last);
         smoother.setCalcVariance(true);
@@ -386,93 +585,45 @@ public class DfmNews {
     }
 
     private void computeNewsCovariance() {
-        TsFrequency freq = last_.getFrequency();
         List<Update> updates = updates_.news();
-        int n = updates.size();
-        int c = model_.getBlockLength();
-        int xc = modelex_.getBlockLength();
-        int nb = model_.getFactorsCount();
-        lcov_ = new Matrix(n, n);
-        int d = ssf_.getStateDim();
-        Matrix V = new Matrix(d, d);
-        DataBlockIterator vcols = V.columns();
-        DataBlock vcol = vcols.getData();
-        DataBlock tmp = new DataBlock(d);
-        for (int i = 0; i < n; ++i) {
-            Update iupdate = updates.get(i);
-            int istart = last_.minus(iupdate.period.lastPeriod(freq));
-            for (int j = 0; j <= i; ++j) {
-                Update jupdate = updates.get(j);
-                // copy the right covariance
-                int jstart = last_.minus(jupdate.period.lastPeriod(freq));
-                V.set(0);
-                for (int r = 0; r < nb; ++r) {
-                    for (int s = 0; s < nb; ++s) {
-                        V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
-                                mcov_.subMatrix(r * xc + istart, r * xc + istart + c,
-                                        s * xc + jstart, s * xc + jstart + c));
-                    }
-                }
-
-                tmp.set(0);
-                vcols.begin();
-                do {
-                    tmp.set(vcols.getPosition(), ssf_.ZX(0, iupdate.series, vcol));
-                } while (vcols.next());
-                double q = ssf_.ZX(0, jupdate.series, tmp);
-                if (i == j) {
-                    q += model_.getMeasurements().get(iupdate.series).var;
-                }
-                lcov_.set(i, j, q);
-            }
-        }
-        SymmetricMatrix.fromLower(lcov_);
-        SymmetricMatrix.lcholesky(lcov_, MFilter.Zero);
+        Matrix L = xloadings(updates, modelex_.getBlockLength());
+        mproj_ = projections(mcov_, L);
+        lcov_ = covariance(L, mproj_, measurementVariances(updates));
     }
 
     private void computeRevisionsCovariance() {
-        TsFrequency freq = last_.getFrequency();
         List<Update> updates = updates_.revisions();
-        int n = updates.size();
-        int c = model_.getBlockLength();
-        int xc = modelexRev_.getBlockLength();
-        int nb = model_.getFactorsCount();
-        lcovRev_ = new Matrix(n, n);
-        int d = ssf_.getStateDim();
-        Matrix V = new Matrix(d, d);
-        DataBlockIterator vcols = V.columns();
-        DataBlock vcol = vcols.getData();
-        DataBlock tmp = new DataBlock(d);
-        for (int i = 0; i < n; ++i) {
-            Update iupdate = updates.get(i);
-            int istart = last_.minus(iupdate.period.lastPeriod(freq));
-            for (int j = 0; j <= i; ++j) {
-                Update jupdate = updates.get(j);
-                // copy the right covariance
-                int jstart = last_.minus(jupdate.period.lastPeriod(freq));
-                V.set(0);
-                for (int r = 0; r < nb; ++r) {
-                    for (int s = 0; s < nb; ++s) {
-                        V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
-                                mcovRev_.subMatrix(r * xc + istart, r * xc + istart + c,
-                                        s * xc + jstart, s * xc + jstart + c));
-                    }
-                }
+        Matrix L = xloadings(updates, modelexRev_.getBlockLength());
+        mprojRev_ = projections(mcovRev_, L);
+        lcovRev_ = covariance(L, mprojRev_, measurementVariances(updates));
+    }
 
-                tmp.set(0);
-                vcols.begin();
-                do {
-                    tmp.set(vcols.getPosition(), ssf_.ZX(0, iupdate.series, vcol));
-                } while (vcols.next());
-                double q = ssf_.ZX(0, jupdate.series, tmp);
-                if (i == j) {
-                    q += model_.getMeasurements().get(iupdate.series).var;
-                }
-                lcovRev_.set(i, j, q);
-            }
+    private DataBlock measurementVariances(List<Update> updates) {
+        DataBlock var = new DataBlock(updates.size());
+        for (int i = 0; i < updates.size(); ++i) {
+            var.set(i, model_.getMeasurements().get(updates.get(i).series).var);
         }
-        SymmetricMatrix.fromLower(lcovRev_);
-        SymmetricMatrix.lcholesky(lcovRev_, MFilter.Zero);
+        return var;
+    }
+
+    /**
+     * Computes the Cholesky factor of the covariance of the updates:
+     * L * mcov * L' + H = L * proj + H
+     *
+     * @param L The loadings of the updates (n x dex)
+     * @param proj The projections of the covariance on the loadings
+     * (mcov * L', dex x n)
+     * @param var The variances of the measurement errors of the updates
+     * @return The lower Cholesky factor of the covariance (n x n)
+     */
+    static Matrix covariance(Matrix L, Matrix proj, DataBlock var) {
+        int n = L.getRowsCount();
+        Matrix lcov = new Matrix(n, n);
+        lcov.subMatrix().product(L.subMatrix(), proj.subMatrix());
+        lcov.diagonal().add(var);
+        SymmetricMatrix.fromLower(lcov);
+        SymmetricMatrix.lcholesky(lcov, MFilter.Zero);
+        return lcov;
     }
 
     /**
@@ -516,89 +667,129 @@ public class DfmNews {
     }
 
     /**
+     * Loading of a given series at a given period in the extended state
+     * space (the blocks of the factors have the length xc)
      *
-     * @param series
-     * @param p
-     * @return
+     * @param series The series
+     * @param start Position of the period in the blocks (0 for the last
+     * period of the full domain)
+     * @param xc The length of the blocks of the extended model
+     * @param l The loading (output)
      */
-    public DataBlock weights(int series, TsPeriod p) {
-        List<Update> updates = updates_.news();
-
-        int n = updates.size();
-        DataBlock a = new DataBlock(n);
+    private void xloading(int series, int start, int xc, DataBlock l) {
+        if (Z_ == null) {
+            Z_ = new Matrix(ssf_.getVarsCount(), ssf_.getStateDim());
+            ssf_.Z(0, Z_.subMatrix());
+        }
         int c = model_.getBlockLength();
-        int xc = modelex_.getBlockLength();
         int nb = model_.getFactorsCount();
-        int d = ssf_.getStateDim();
-        Matrix V = new Matrix(d, d);
-        DataBlockIterator vcols = V.columns();
-        DataBlock vcol = vcols.getData();
-        DataBlock tmp = new DataBlock(d);
-        int istart = last_.minus(p);
-        TsFrequency freq = last_.getFrequency();
-        for (int j = 0; j < n; ++j) {
-            Update jupdate = updates.get(j);
-            int jstart = last_.minus(jupdate.period.lastPeriod(freq));
-            V.set(0);
-            for (int r = 0; r < nb; ++r) {
-                for (int s = 0; s < nb; ++s) {
-                    V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
-                            mcov_.subMatrix(r * xc + istart, r * xc + istart + c,
-                                    s * xc + jstart, s * xc + jstart + c));
-                }
-            }
-            tmp.set(0);
-            vcols.begin();
-            do {
-                tmp.set(vcols.getPosition(), ssf_.ZX(0, series, vcol));
-            } while (vcols.next());
-            double q = ssf_.ZX(0, jupdate.series, tmp);
-            a.set(j, q);
+        DataBlock z = Z_.row(series);
+        l.set(0);
+        for (int r = 0; r < nb; ++r) {
+            l.range(r * xc + start, r * xc + start + c).copy(z.range(r * c, r * c + c));
         }
-        // w = A * (LL')^-1 <-> w(LL')=A
-        // B = wL, BL' = A <-> LB'=A'
-        LowerTriangularMatrix.rsolve(lcov_, a, MFilter.Zero); // B
-        LowerTriangularMatrix.lsolve(lcov_, a, MFilter.Zero);
-        return a;
     }
 
-    public DataBlock weightsRevisions(int series, TsPeriod p) {
-        List<Update> updates = updates_.revisions();
-        int n = updates.size();
-        DataBlock a = new DataBlock(n);
-        int c = model_.getBlockLength();
-        int xc = modelexRev_.getBlockLength();
-        int nb = model_.getFactorsCount();
-        int d = ssf_.getStateDim();
-        Matrix V = new Matrix(d, d);
-        DataBlockIterator vcols = V.columns();
-        DataBlock vcol = vcols.getData();
-        DataBlock tmp = new DataBlock(d);
-        int istart = last_.minus(p);
+    /**
+     * Loadings of the updates in the extended state space
+     *
+     * @return A n x dex matrix
+     */
+    private Matrix xloadings(List<Update> updates, int xc) {
         TsFrequency freq = last_.getFrequency();
-        for (int j = 0; j < n; ++j) {
-            Update jupdate = updates.get(j);
-            int jstart = last_.minus(jupdate.period.lastPeriod(freq));
-            V.set(0);
-            for (int r = 0; r < nb; ++r) {
-                for (int s = 0; s < nb; ++s) {
-                    V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
-                            mcovRev_.subMatrix(r * xc + istart, r * xc + istart + c,
-                                    s * xc + jstart, s * xc + jstart + c));
-                }
-            }
-            tmp.set(0);
-            vcols.begin();
-            do {
-                tmp.set(vcols.getPosition(), ssf_.ZX(0, series, vcol));
-            } while (vcols.next());
-            double q = ssf_.ZX(0, jupdate.series, tmp);
-            a.set(j, q);
+        int nb = model_.getFactorsCount();
+        Matrix L = new Matrix(updates.size(), nb * xc);
+        if (updates.isEmpty()) {
+            return L;
         }
-        // w = A * (LL')^-1 <-> w(LL')=A
-        // B = wL, BL' = A <-> LB'=A'
-        LowerTriangularMatrix.rsolve(lcovRev_, a, MFilter.Zero); // B
-        LowerTriangularMatrix.lsolve(lcovRev_, a, MFilter.Zero);
-        return a;
+        DataBlockIterator rows = L.rows();
+        DataBlock row = rows.getData();
+        do {
+            Update update = updates.get(rows.getPosition());
+            xloading(update.series, last_.minus(update.period.lastPeriod(freq)), xc, row);
+        } while (rows.next());
+        return L;
+    }
+
+    /**
+     * Computes mcov * L', where L contains the loadings of the updates
+     *
+     * @return A dex x n matrix
+     */
+    static Matrix projections(Matrix mcov, Matrix L) {
+        Matrix P = new Matrix(mcov.getRowsCount(), L.getRowsCount());
+        P.subMatrix().product(mcov.subMatrix(), L.subMatrix().transpose());
+        return P;
+    }
+
+    /**
+     * Computes the weights of the updates for a set of targets
+     *
+     * @param series The series of the targets
+     * @param p The periods of the targets (same length as series)
+     * @param proj The projections of the covariance on the updates
+     * @param lcov Cholesky factor of the covariance of the updates
+     * @param xc The length of the blocks of the extended model
+     * @return A matrix with the weights of the different targets in rows
+     */
+    private Matrix weights(int[] series, TsPeriod[] p, Matrix proj, Matrix lcov, int xc) {
+        Matrix W = new Matrix(series.length, proj.getColumnsCount());
+        if (series.length == 0 || proj.getColumnsCount() == 0) {
+            return W;
+        }
+        DataBlock l = new DataBlock(proj.getRowsCount());
+        DataBlockIterator rows = W.rows();
+        DataBlock row = rows.getData();
+        do {
+            int t = rows.getPosition();
+            xloading(series[t], last_.minus(p[t]), xc, l);
+            row.product(l, proj.columns());
+            // w = A * (LL')^-1 <-> w(LL')=A
+            // B = wL, BL' = A <-> LB'=A'
+            LowerTriangularMatrix.rsolve(lcov, row, MFilter.Zero); // B
+            LowerTriangularMatrix.lsolve(lcov, row, MFilter.Zero);
+        } while (rows.next());
+        return W;
+    }
+
+    /**
+     * Computes the weights of the news for a set of targets. The covariance of
+     * the extended states is projected only once on the loadings of the news,
+     * so that the computation of the weights of each target is in O(n*dex +
+     * n*n) (n = number of news, dex = dimension of the extended state)
+     *
+     * @param series The series of the targets
+     * @param p The periods of the targets (in the frequency of the model)
+     * @return A matrix (targets x news) with the weights of the news in rows
+     */
+    public Matrix weights(int[] series, TsPeriod[] p) {
+        return weights(series, p, mproj_, lcov_, modelex_.getBlockLength());
+    }
+
+    /**
+     * Computes the weights of the revisions for a set of targets (see
+     * weights(int[], TsPeriod[]))
+     *
+     * @param series The series of the targets
+     * @param p The periods of the targets (in the frequency of the model)
+     * @return A matrix (targets x revisions) with the weights of the revisions
+     * in rows
+     */
+    public Matrix weightsRevisions(int[] series, TsPeriod[] p) {
+        return weights(series, p, mprojRev_, lcovRev_, modelexRev_.getBlockLength());
+    }
+
+    /**
+     *
+     * @param series
+     * @param p
+     * @return
+     */
+    public DataBlock weights(int series, TsPeriod p) {
+        return weights(new int[]{series}, new TsPeriod[]{p}).row(0);
+    }
+
+    public DataBlock weightsRevisions(int series, TsPeriod p) {
+        return weightsRevisions(new int[]{series}, new TsPeriod[]{p}).row(0);
     }
 }
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.dfm;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.mssf2.IMSsf;
+import ec.tstoolkit.mssf2.MFilter;
+import ec.tstoolkit.mssf2.MState;
+import ec.tstoolkit.mssf2.MultivariateSsfData;
+import ec.tstoolkit.timeseries.information.TsInformationSet;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming computation of nowcasts. The nowcaster keeps the state of the
+ * model conditional on all the information received so far and updates it
+ * each time a new observation is received, by means of a single measurement
+ * update (no re-filtering of the history).
+ *
+ * The state is the state of an extended model, which contains the factors of
+ * the last periods, so that observations of past periods (till maxDelay
+ * years) can still be integrated. The observations must be expressed in the
+ * scale of the model (transformed data) and each observation can only be
+ * integrated once.
+ *
+ * For each observation, the nowcaster computes its news (difference between
+ * the observation and its forecast) and the impacts of the news on the
+ * targets (series x period) that have been registered.
+ *
+ * @author Jean Palate
+ */
+public class DfmNowcaster {
+
+    /**
+     * Result of the integration of a new observation
+     */
+    public static class Event {
+
+        public final int series;
+        public final TsPeriod period;
+        public final double y, fy;
+        /**
+         * Impacts of the news on the different targets
+         */
+        public final double[] impacts;
+
+        private Event(int series, TsPeriod period, double y, double fy, double[] impacts) {
+            this.series = series;
+            this.period = period;
+            this.y = y;
+            this.fy = fy;
+            this.impacts = impacts;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public double getNews() {
+            return y - fy;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("var:").append(series).append('\t').append(period)
+                    .append('\t').append(y).append('\t').append(fy);
+            return builder.toString();
+        }
+    }
+
+    private static class Target {
+
+        private final int series;
+        private final TsPeriod period;
+
+        private Target(int series, TsPeriod period) {
+            this.series = series;
+            this.period = period;
+        }
+    }
+
+    private final DynamicFactorModel model_;
+    private DynamicFactorModel modelex_;
+    private IMSsf ssfex_;
+    private final Matrix Z_;
+    private final List<Target> targets_ = new ArrayList<>();
+    private int maxDelay_ = 2;
+    // the current state (a, P) corresponds to the position pos_ in the domain
+    // starting at start_
+    private TsPeriod start_;
+    private int pos_;
+    private DataBlock a_;
+    private Matrix P_;
+    // work vectors
+    private DataBlock z_, pz_, tmp_;
+
+    /**
+     *
+     * @param model The model. It should not be modified while the nowcaster is
+     * used
+     */
+    public DfmNowcaster(DynamicFactorModel model) {
+        model_ = model;
+        IMSsf ssf = model.ssfRepresentation();
+        Z_ = new Matrix(ssf.getVarsCount(), ssf.getStateDim());
+        ssf.Z(0, Z_.subMatrix());
+    }
+
+    public DynamicFactorModel getModel() {
+        return model_;
+    }
+
+    /**
+     *
+     * @return The maximum delay (in years) of the observations
+     */
+    public int getMaxDelay() {
+        return maxDelay_;
+    }
+
+    /**
+     * Sets the maximum delay (in years) between the period of an observation
+     * and the current period. Must be set before the initialization.
+     *
+     * @param n
+     */
+    public void setMaxDelay(int n) {
+        maxDelay_ = n;
+    }
+
+    /**
+     * Initializes the nowcaster with a given information set. The current
+     * period is the period following the end of the information set.
+     *
+     * @param info The initial information
+     * @return
+     */
+    public boolean initialize(TsInformationSet info) {
+        start_ = info.getCurrentDomain().getStart();
+        int nlags = model_.getBlockLength() + maxDelay_ * start_.getFrequency().intValue();
+        modelex_ = model_.clone();
+        modelex_.setBlockLength(nlags);
+        ssfex_ = modelex_.ssfRepresentation();
+        Matrix M = info.generateMatrix(null);
+        if (M.getColumnsCount() != model_.getMeasurementsCount()) {
+            throw new DfmException(DfmException.INCOMPATIBLE_DATA);
+        }
+        MFilter filter = new MFilter();
+        if (!filter.process(ssfex_, new MultivariateSsfData(M.subMatrix().transpose(), null), null)) {
+            return false;
+        }
+        MState state = filter.getState();
+        a_ = state.A.deepClone();
+        P_ = state.P.clone();
+        pos_ = M.getRowsCount();
+        int d = ssfex_.getStateDim();
+        z_ = new DataBlock(d);
+        pz_ = new DataBlock(d);
+        tmp_ = new DataBlock(d);
+        return true;
+    }
+
+    /**
+     *
+     * @return The current period
+     */
+    public TsPeriod getCurrentPeriod() {
+        return start_.plus(pos_);
+    }
+
+    /**
+     * Registers a target. The impacts of the news on the targets are computed
+     * for each new observation
+     *
+     * @param series
+     * @param period
+     */
+    public void addTarget(int series, TsPeriod period) {
+        targets_.add(new Target(series, period));
+    }
+
+    public void clearTargets() {
+        targets_.clear();
+    }
+
+    public int getTargetsCount() {
+        return targets_.size();
+    }
+
+    /**
+     * Current nowcasts (or forecasts, or backcasts) of the different targets
+     *
+     * @return
+     */
+    public double[] nowcasts() {
+        double[] n = new double[targets_.size()];
+        for (int i = 0; i < n.length; ++i) {
+            Target target = targets_.get(i);
+            n[i] = nowcast(target.series, target.period);
+        }
+        return n;
+    }
+
+    /**
+     * Current nowcast of a given series for a given period
+     *
+     * @param series
+     * @param period
+     * @return
+     */
+    public double nowcast(int series, TsPeriod period) {
+        int lag = lag(period);
+        if (lag >= 0) {
+            if (!loading(series, lag, z_)) {
+                return Double.NaN;
+            }
+            return z_.dot(a_);
+        } else {
+            tmp_.copy(a_);
+            for (int i = pos_; i < pos_ - lag; ++i) {
+                ssfex_.TX(i, tmp_);
+            }
+            loading(series, 0, z_);
+            return z_.dot(tmp_);
+        }
+    }
+
+    /**
+     * Integrates a new observation
+     *
+     * @param series The series of the observation
+     * @param period The period of the observation
+     * @param y The observation (in the scale of the model)
+     * @return The news and their impacts on the targets. Null if the
+     * observation is too old to be integrated
+     */
+    public Event update(int series, TsPeriod period, double y) {
+        int lag = lag(period);
+        if (lag < 0) {
+            advance(-lag);
+            lag = 0;
+        }
+        if (!loading(series, lag, z_)) {
+            return null;
+        }
+        // v = y - za, f = zPz'+h, a = a + Pz'/f v, P = P - Pz'zP/f
+        double fy = z_.dot(a_);
+        pz_.product(z_, P_.columns());
+        double f = z_.dot(pz_) + model_.getMeasurements().get(series).var;
+        if (f < MFilter.Zero) {
+            return new Event(series, period, y, fy, new double[targets_.size()]);
+        }
+        double v = y - fy;
+        // impacts on the targets: cov(target, y)/f * v
+        double[] impacts = new double[targets_.size()];
+        for (int i = 0; i < impacts.length; ++i) {
+            Target target = targets_.get(i);
+            int tlag = lag(target.period);
+            if (tlag >= 0) {
+                if (loading(target.series, tlag, z_)) {
+                    impacts[i] = z_.dot(pz_) * v / f;
+                }
+            } else {
+                tmp_.copy(pz_);
+                for (int j = pos_; j < pos_ - tlag; ++j) {
+                    ssfex_.TX(j, tmp_);
+                }
+                loading(target.series, 0, z_);
+                impacts[i] = z_.dot(tmp_) * v / f;
+            }
+        }
+        a_.addAY(v / f, pz_);
+        P_.addXaXt(-1 / f, pz_);
+        return new Event(series, period, y, fy, impacts);
+    }
+
+    /**
+     * Moves the current period forward (prediction step)
+     *
+     * @param n The number of periods
+     */
+    private void advance(int n) {
+        for (int i = 0; i < n; ++i, ++pos_) {
+            ssfex_.TX(pos_, a_);
+            ssfex_.TVT(pos_, P_.subMatrix());
+            ssfex_.addV(pos_, P_.subMatrix());
+        }
+    }
+
+    /**
+     * Number of periods between the current period and a given period
+     */
+    private int lag(TsPeriod period) {
+        TsFrequency freq = start_.getFrequency();
+        return pos_ - period.lastPeriod(freq).minus(start_);
+    }
+
+    /**
+     * Loading of a series in the extended state, for a given lag
+     *
+     * @return False if the lag is too large
+     */
+    private boolean loading(int series, int lag, DataBlock z) {
+        int c = model_.getBlockLength();
+        int xc = modelex_.getBlockLength();
+        if (lag + c > xc) {
+            return false;
+        }
+        int nb = model_.getFactorsCount();
+        DataBlock zs = Z_.row(series);
+        z.set(0);
+        for (int r = 0; r < nb; ++r) {
+            z.range(r * xc + lag, r * xc + lag + c).copy(zs.range(r * c, r * c + c));
+        }
+        return true;
+    }
+}
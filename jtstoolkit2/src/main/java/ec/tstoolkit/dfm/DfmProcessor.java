@@ -23,6 +23,7 @@ import ec.tstoolkit.mssf2.MFilteringResults;
 import ec.tstoolkit.mssf2.MSmoother;
 import ec.tstoolkit.mssf2.MSmoothingResults;
 import ec.tstoolkit.mssf2.MultivariateSsfData;
+import ec.tstoolkit.mssf2.UMSmoother;
 import ec.tstoolkit.timeseries.simplets.TsData;
 
 /**
@@ -33,7 +34,9 @@ public class DfmProcessor implements IDfmProcessor {
 
     private MSmoothingResults srslts_;
     private MFilteringResults frslts_;
-    private boolean bvar_;
+    private boolean bvar_, univariate_;
+    private int checkpoint_;
+    private double sstol_;
 
     private void clear() {
         srslts_ = null;
@@ -48,6 +51,52 @@ public class DfmProcessor implements IDfmProcessor {
         bvar_=bvar;
     }
 
+    public boolean isUnivariate(){
+        return univariate_;
+    }
+
+    /**
+     * Uses the univariate treatment of the observations (see UMFilter,
+     * UMSmoother). Requires independent measurement errors.
+     * @param univariate
+     */
+    public void setUnivariate(boolean univariate){
+        univariate_=univariate;
+    }
+
+    public double getSteadyStateTolerance() {
+        return sstol_;
+    }
+
+    /**
+     * Sets the tolerance used to detect the steady state of the filter and of
+     * the smoother (see MSmoother.setSteadyStateTolerance). Not used with the
+     * univariate treatment.
+     *
+     * @param tol The tolerance. 0 (default) disables the detection
+     */
+    public void setSteadyStateTolerance(double tol) {
+        sstol_ = tol;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpoint_;
+    }
+
+    /**
+     * Uses a checkpointed smoother, which only keeps the filtering
+     * information of k periods (see MSmoother.setCheckpointInterval). Should
+     * be used for long samples or large models. The filtering results (see
+     * getFilteringResults) don't contain K and P. Not used with the
+     * univariate treatment.
+     *
+     * @param k The interval between two checkpoints. 0 (default) disables the
+     * checkpointing
+     */
+    public void setCheckpointInterval(int k) {
+        checkpoint_ = k;
+    }
+
     /**
      * Retrieves the smoothing results
      *
@@ -58,6 +107,16 @@ public class DfmProcessor implements IDfmProcessor {
         return srslts_;
     }
 
+    /**
+     * Retrieves the filtering results. The predicted states and their
+     * covariances (A, P) don't depend on the treatment of the observations.
+     * With the univariate treatment, F, E and K follow the layout of UMFilter
+     * (standard deviations of the univariate prediction errors on the
+     * diagonal of F, standardized errors and gains without T); they can only
+     * be used by UMSmoother or for the computation of the likelihood.
+     *
+     * @return The filtering results. May be null.
+     */
     @Override
     public MFilteringResults getFilteringResults() {
         return frslts_;
@@ -65,18 +124,41 @@ public class DfmProcessor implements IDfmProcessor {
 
     @Override
     public boolean process(DynamicFactorModel model, TsInformationSet input) {
+        return process(model, input, new MSmoothingResults());
+    }
+
+    /**
+     * Processes the model with specific smoothing results (see for instance
+     * DfmSmoothedMoments)
+     *
+     * @param model
+     * @param input
+     * @param srslts The smoothing results that will be filled by the smoother
+     * @return
+     */
+    public boolean process(DynamicFactorModel model, TsInformationSet input, MSmoothingResults srslts) {
         try {
             clear();
             Matrix M = input.generateMatrix(null);
             if (M.getColumnsCount() != model.getMeasurementsCount()) {
                 throw new DfmException(DfmException.INCOMPATIBLE_DATA);
             }
-            MSmoother smoother = new MSmoother();
-            srslts_ = new MSmoothingResults();
-            smoother.setCalcVariance(bvar_);
+            srslts_ = srslts;
             IMSsf ssf = model.ssfRepresentation();
-            smoother.process(ssf, new MultivariateSsfData(M.subMatrix().transpose(), null), srslts_);
-            frslts_ = smoother.getFilteringResults();
+            MultivariateSsfData data = new MultivariateSsfData(M.subMatrix().transpose(), null);
+            if (univariate_) {
+                UMSmoother smoother = new UMSmoother();
+                smoother.setCalcVariance(bvar_);
+                smoother.process(ssf, data, srslts_);
+                frslts_ = smoother.getFilteringResults();
+            } else {
+                MSmoother smoother = new MSmoother();
+                smoother.setCalcVariance(bvar_);
+                smoother.setCheckpointInterval(checkpoint_);
+                smoother.setSteadyStateTolerance(sstol_);
+                smoother.process(ssf, data, srslts_);
+                frslts_ = smoother.getFilteringResults();
+            }
             return true;
         } catch (Exception err) {
             srslts_ = null;
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.dfm;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.maths.matrices.LowerTriangularMatrix;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import ec.tstoolkit.mssf2.IMSsf;
+import ec.tstoolkit.mssf2.IMSsfData;
+import ec.tstoolkit.mssf2.MSmoother;
+import ec.tstoolkit.mssf2.MSmoothingResults;
+import ec.tstoolkit.var.VarSpec;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Score of a dynamic factor model, computed by means of the smoothed states
+ * (Fisher identity): the score is the gradient of the expected log-likelihood
+ * of the states and of the observations, conditionally on the observations.
+ * It is computed for the loadings, the variances of the measurement errors,
+ * the parameters of the VAR model and the covariance of its innovations.
+ *
+ * The scaling factor of the model is concentrated out, as in the likelihood
+ * used in the estimation procedures: the score is the gradient of the
+ * concentrated log-likelihood.
+ *
+ * Models with a user-defined initial covariance are not handled.
+ *
+ * @author Jean Palate
+ */
+public class DfmScore {
+
+    private static final int MAXDOUBLING = 60;
+    private static final double EPS = 1e-15;
+
+    private Matrix gl_, ga_, gq_;
+    private double[] gh_;
+
+    /**
+     * Computes the score of the model
+     *
+     * @param model The model
+     * @param data The observations
+     * @param sig2 The scaling factor of the model (ssq/n in the
+     * concentrated likelihood)
+     * @return False if the score can't be computed
+     */
+    public boolean compute(DynamicFactorModel model, IMSsfData data, double sig2) {
+        gl_ = null;
+        ga_ = null;
+        gq_ = null;
+        gh_ = null;
+        VarSpec.Initialization init = model.getInitialization();
+        if (init == VarSpec.Initialization.UserDefined) {
+            return false;
+        }
+        try {
+            // the innovations of the VAR model must be computable from the states
+            DynamicFactorModel m = model.clone();
+            int nl = m.getTransition().nlags;
+            if (m.getBlockLength() == nl) {
+                m.setBlockLength(nl + 1);
+            }
+            m.rescaleVariances(sig2);
+            IMSsf ssf = m.ssfRepresentation();
+            MSmoother smoother = new MSmoother();
+            smoother.setCalcVariance(true);
+            MSmoothingResults srslts = new MSmoothingResults();
+            if (!smoother.process(ssf, data, srslts)) {
+                return false;
+            }
+            measurement(m, data, srslts);
+            transition(m, ssf, srslts, data.getCount(), init);
+            // derivatives of the variances of the unscaled model
+            for (int i = 0; i < gh_.length; ++i) {
+                gh_[i] *= sig2;
+            }
+            gq_.mul(sig2);
+            return true;
+        } catch (RuntimeException err) {
+            gl_ = null;
+            ga_ = null;
+            gq_ = null;
+            gh_ = null;
+            return false;
+        }
+    }
+
+    /**
+     * Derivatives with respect to the loadings (measurements x factors). The
+     * derivatives are defined for all the factors, including the unused ones
+     *
+     * @return
+     */
+    public Matrix getLoadings() {
+        return gl_;
+    }
+
+    /**
+     * Derivatives with respect to the variances of the measurement errors
+     *
+     * @return
+     */
+    public double[] getMeasurementVariances() {
+        return gh_;
+    }
+
+    /**
+     * Derivatives with respect to the VAR parameters. Same layout as the VAR
+     * parameters of the transition descriptor
+     *
+     * @return
+     */
+    public Matrix getVarParams() {
+        return ga_;
+    }
+
+    /**
+     * Derivatives with respect to the covariance of the innovations of the VAR
+     * model (all the elements are considered as independent)
+     *
+     * @return
+     */
+    public Matrix getCovar() {
+        return gq_;
+    }
+
+    /**
+     * E(log f(y|s)) = -.5 * sum(log h + (E(y-zs)^2)/h), with
+     * E(y-zs)^2 = (y-zs)^2 + zVz'
+     */
+    private void measurement(DynamicFactorModel m, IMSsfData data, MSmoothingResults srslts) {
+        int nf = m.getFactorsCount(), c = m.getBlockLength(), n = data.getCount();
+        List<DynamicFactorModel.MeasurementDescriptor> mdesc = m.getMeasurements();
+        int nv = mdesc.size();
+        gl_ = new Matrix(nv, nf);
+        gh_ = new double[nv];
+        // for each type of measurement: z, z*a(block j), z*V(block j, block k)*z'
+        Map<DynamicFactorModel.MeasurementType, DataBlock> Z = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
+        Map<DynamicFactorModel.MeasurementType, double[]> ZA = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
+        Map<DynamicFactorModel.MeasurementType, Matrix> ZVZ = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
+        for (DynamicFactorModel.MeasurementDescriptor desc : mdesc) {
+            DynamicFactorModel.MeasurementType type = DynamicFactorModel.getMeasurementType(desc.type);
+            if (!Z.containsKey(type)) {
+                DataBlock z = new DataBlock(desc.type.getLength());
+                desc.type.fill(z);
+                Z.put(type, z);
+                ZA.put(type, new double[nf]);
+                ZVZ.put(type, new Matrix(nf, nf));
+            }
+        }
+        for (int t = 0; t < n; ++t) {
+            DataBlock a = srslts.A(t);
+            SubMatrix V = srslts.P(t);
+            for (Map.Entry<DynamicFactorModel.MeasurementType, DataBlock> entry : Z.entrySet()) {
+                DataBlock z = entry.getValue();
+                int len = z.getLength();
+                double[] za = ZA.get(entry.getKey());
+                Matrix zvz = ZVZ.get(entry.getKey());
+                for (int j = 0; j < nf; ++j) {
+                    za[j] = z.dot(a.range(j * c, j * c + len));
+                    for (int k = 0; k <= j; ++k) {
+                        double x = 0;
+                        for (int r = 0; r < len; ++r) {
+                            double zr = z.get(r);
+                            if (zr != 0) {
+                                for (int s = 0; s < len; ++s) {
+                                    double zs = z.get(s);
+                                    if (zs != 0) {
+                                        x += zr * zs * V.get(j * c + r, k * c + s);
+                                    }
+                                }
+                            }
+                        }
+                        zvz.set(j, k, x);
+                        zvz.set(k, j, x);
+                    }
+                }
+            }
+            for (int i = 0; i < nv; ++i) {
+                if (data.isMissing(i, t)) {
+                    continue;
+                }
+                DynamicFactorModel.MeasurementDescriptor desc = mdesc.get(i);
+                DynamicFactorModel.MeasurementType type = DynamicFactorModel.getMeasurementType(desc.type);
+                double[] za = ZA.get(type);
+                Matrix zvz = ZVZ.get(type);
+                double h = desc.var;
+                double e = data.get(i, t);
+                for (int j = 0; j < nf; ++j) {
+                    double cj = desc.coeff[j];
+                    if (!Double.isNaN(cj)) {
+                        e -= cj * za[j];
+                    }
+                }
+                double ee = e * e;
+                for (int j = 0; j < nf; ++j) {
+                    if (Double.isNaN(desc.coeff[j])) {
+                        continue;
+                    }
+                    // zVz(block j)'
+                    double v = 0;
+                    for (int k = 0; k < nf; ++k) {
+                        double ck = desc.coeff[k];
+                        if (!Double.isNaN(ck)) {
+                            v += ck * zvz.get(k, j);
+                        }
+                    }
+                    gl_.add(i, j, (e * za[j] - v) / h);
+                    ee += desc.coeff[j] * v;
+                }
+                gh_[i] += .5 * (ee / h - 1) / h;
+            }
+        }
+    }
+
+    /**
+     * E(log f(s)) = -.5 * sum(log|Q| + E(u'Q^-1u)) + E(log f(s0)), where u are
+     * the innovations of the VAR model (f - A*x). The initial term is only
+     * considered for the unconditional initialization (s0 ~ N(0, S), S = TST'+V)
+     */
+    private void transition(DynamicFactorModel m, IMSsf ssf, MSmoothingResults srslts, int n, VarSpec.Initialization init) {
+        int nf = m.getFactorsCount(), c = m.getBlockLength(), nl = m.getTransition().nlags;
+        int dim = nf * c, nx = nf * nl;
+        Matrix A = m.getTransition().varParams, Q = m.getTransition().covar;
+        // S = sum(E(ss'))
+        int t0 = init == VarSpec.Initialization.Zero ? 0 : 1;
+        Matrix S = new Matrix(dim, dim);
+        for (int t = t0; t < n; ++t) {
+            S.subMatrix().add(srslts.P(t));
+            S.addXaXt(1, srslts.A(t));
+        }
+        Matrix Sff = new Matrix(nf, nf), Sfx = new Matrix(nf, nx), Sxx = new Matrix(nx, nx);
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j < nf; ++j) {
+                Sff.set(i, j, S.get(i * c, j * c));
+                for (int l = 0; l < nl; ++l) {
+                    Sfx.set(i, j * nl + l, S.get(i * c, j * c + l + 1));
+                    for (int k = 0; k < nl; ++k) {
+                        Sxx.set(i * nl + l, j * nl + k, S.get(i * c + l + 1, j * c + k + 1));
+                    }
+                }
+            }
+        }
+        Matrix iQ = inverse(Q);
+        // D = Sfx - A*Sxx, dA = Q^-1*D
+        Matrix D = new Matrix(nf, nx);
+        D.subMatrix().product(A.subMatrix(), Sxx.subMatrix());
+        D.chs();
+        D.subMatrix().add(Sfx.subMatrix());
+        ga_ = new Matrix(nf, nx);
+        ga_.subMatrix().product(iQ.subMatrix(), D.subMatrix());
+        // O = sum(E(uu')) = Sff - A*Sfx' - D*A'
+        Matrix O = Sff.clone();
+        Matrix tmp = new Matrix(nf, nf);
+        tmp.subMatrix().product(A.subMatrix(), Sfx.subMatrix().transpose());
+        O.sub(tmp);
+        tmp.subMatrix().product(D.subMatrix(), A.subMatrix().transpose());
+        O.sub(tmp);
+        // dQ = .5*(Q^-1*O*Q^-1 - N*Q^-1)
+        tmp.subMatrix().product(iQ.subMatrix(), O.subMatrix());
+        gq_ = new Matrix(nf, nf);
+        gq_.subMatrix().product(tmp.subMatrix(), iQ.subMatrix());
+        iQ.mul(n - t0);
+        gq_.sub(iQ);
+        gq_.mul(.5);
+
+        if (init == VarSpec.Initialization.Unconditional) {
+            initial(ssf, srslts, nf, nl, c);
+        }
+    }
+
+    /**
+     * d(E(log f(s0))) = .5 * tr(W dS), W = S^-1 (E(s0s0') - S) S^-1.
+     * With S = TST' + V, tr(W dS) = tr(X (dT S T' + T S dT' + dV)), where
+     * X = T'XT + W
+     */
+    private void initial(IMSsf ssf, MSmoothingResults srslts, int nf, int nl, int c) {
+        int dim = nf * c;
+        Matrix S = new Matrix(dim, dim);
+        ssf.Pf0(S.subMatrix());
+        Matrix iS = inverse(S);
+        Matrix S0 = new Matrix(dim, dim);
+        S0.subMatrix().copy(srslts.P(0));
+        S0.addXaXt(1, srslts.A(0));
+        Matrix tmp = new Matrix(dim, dim);
+        tmp.subMatrix().product(iS.subMatrix(), S0.subMatrix());
+        Matrix W = new Matrix(dim, dim);
+        W.subMatrix().product(tmp.subMatrix(), iS.subMatrix());
+        W.sub(iS);
+        Matrix T = new Matrix(dim, dim);
+        ssf.T(0, T.subMatrix());
+        Matrix X = adjointLyapunov(T, W);
+        // dT = X*T*S
+        tmp.subMatrix().product(T.subMatrix(), S.subMatrix());
+        Matrix dT = new Matrix(dim, dim);
+        dT.subMatrix().product(X.subMatrix(), tmp.subMatrix());
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j < nf; ++j) {
+                for (int l = 0; l < nl; ++l) {
+                    ga_.add(i, j * nl + l, dT.get(i * c, j * c + l));
+                }
+                gq_.add(i, j, .5 * X.get(i * c, j * c));
+            }
+        }
+    }
+
+    /**
+     * Solves X = T'XT + W by doubling: X = sum(T'^k W T^k)
+     */
+    private static Matrix adjointLyapunov(Matrix T, Matrix W) {
+        int dim = T.getRowsCount();
+        Matrix X = W.clone(), Tk = T.clone();
+        Matrix tmp = new Matrix(dim, dim), del = new Matrix(dim, dim);
+        for (int k = 0; k < MAXDOUBLING; ++k) {
+            tmp.subMatrix().product(X.subMatrix(), Tk.subMatrix());
+            del.subMatrix().product(Tk.subMatrix().transpose(), tmp.subMatrix());
+            X.subMatrix().add(del.subMatrix());
+            if (max(del) <= EPS * max(X)) {
+                break;
+            }
+            tmp.subMatrix().product(Tk.subMatrix(), Tk.subMatrix());
+            Tk.copy(tmp);
+        }
+        return X;
+    }
+
+    private static double max(Matrix m) {
+        double[] x = m.internalStorage();
+        double mx = 0;
+        for (int i = 0; i < x.length; ++i) {
+            double cur = Math.abs(x[i]);
+            if (cur > mx) {
+                mx = cur;
+            }
+        }
+        return mx;
+    }
+
+    /**
+     * Inverse of a symmetric positive definite matrix
+     */
+    private static Matrix inverse(Matrix s) {
+        Matrix l = s.clone();
+        SymmetricMatrix.lcholesky(l);
+        return SymmetricMatrix.XtX(LowerTriangularMatrix.inverse(l));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.dfm;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.data.Table;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.mssf2.MSmoothingResults;
+import java.util.EnumMap;
+
+/**
+ * Smoothing results of a dynamic factor model that only contain the
+ * information needed by the EM algorithm (see DfmEM2). The smoothed states
+ * are stored as usual, but the covariances of the smoothed states are not
+ * stored. Instead, the following statistics are accumulated during the
+ * backward pass of the smoother:
+ * - the sum of the covariances of the smoothed states, S = sum(V(t))
+ * - the covariance of the first smoothed state, V(0)
+ * - for each measurement type z and for each pair of factors (i, k),
+ * z'V(i,k)(t)z, where V(i,k)(t) is the covariance between the blocks of the
+ * factors i and k at time t.
+ *
+ * So, the storage is O(n*nf*nf) instead of O(n*d*d).
+ *
+ * @author Jean Palate
+ */
+public class DfmSmoothedMoments extends MSmoothingResults {
+
+    private final int nf, nb;
+    private final EnumMap<DynamicFactorModel.MeasurementType, DataBlock> Z = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
+    private final EnumMap<DynamicFactorModel.MeasurementType, Table<DataBlock>> ZVZ = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
+    private Matrix S, V0;
+    private boolean var;
+    private int n;
+
+    /**
+     *
+     * @param model The model. Only its structure (number of factors, block
+     * length and measurement types) is used, so that the object can be reused
+     * for the different models of an iterative procedure
+     */
+    public DfmSmoothedMoments(DynamicFactorModel model) {
+        nf = model.getFactorsCount();
+        nb = model.getBlockLength();
+        for (DynamicFactorModel.MeasurementDescriptor desc : model.getMeasurements()) {
+            DynamicFactorModel.MeasurementType type = DynamicFactorModel.
+                    getMeasurementType(desc.type);
+            if (!Z.containsKey(type)) {
+                DataBlock z = new DataBlock(desc.type.getLength());
+                desc.type.fill(z);
+                Z.put(type, z);
+            }
+        }
+    }
+
+    /**
+     * The covariances are never stored. The value only indicates that the
+     * moments must be computed.
+     *
+     * @param value
+     */
+    @Override
+    public void setSaveP(boolean value) {
+        var = value;
+        super.setSaveP(false);
+    }
+
+    @Override
+    public void prepare(int n, int d, int v) {
+        super.prepare(n, d, v);
+        this.n = n - getSavingStart();
+        if (!var) {
+            return;
+        }
+        if (S == null || S.getRowsCount() != d) {
+            S = new Matrix(d, d);
+            V0 = new Matrix(d, d);
+        } else {
+            S.set(0);
+            V0.set(0);
+        }
+        for (DynamicFactorModel.MeasurementType type : Z.keySet()) {
+            Table<DataBlock> zvz = ZVZ.get(type);
+            if (zvz == null || zvz.get(0, 0).getLength() != this.n) {
+                zvz = new Table<>(nf, nf);
+                for (int i = 0; i < nf; ++i) {
+                    for (int k = 0; k <= i; ++k) {
+                        DataBlock cur = new DataBlock(this.n);
+                        zvz.set(i, k, cur);
+                        if (i != k) {
+                            zvz.set(k, i, cur);
+                        }
+                    }
+                }
+                ZVZ.put(type, zvz);
+            }
+        }
+    }
+
+    @Override
+    public void save(final int pos, DataBlock a, Matrix p) {
+        super.save(pos, a, null);
+        int np = pos - getSavingStart();
+        if (np < 0 || !var || p == null) {
+            return;
+        }
+        S.subMatrix().add(p.subMatrix());
+        if (np == 0) {
+            V0.copy(p);
+        }
+        for (DynamicFactorModel.MeasurementType type : Z.keySet()) {
+            DataBlock z = Z.get(type);
+            Table<DataBlock> zvz = ZVZ.get(type);
+            int len = z.getLength();
+            for (int i = 0, j = 0; i < nf; ++i, j += nb) {
+                for (int k = 0, l = 0; k <= i; ++k, l += nb) {
+                    double x = 0;
+                    for (int pr = 0; pr < len; ++pr) {
+                        double zr = z.get(pr);
+                        if (zr != 0) {
+                            for (int pc = 0; pc < len; ++pc) {
+                                double zc = z.get(pc);
+                                if (zc != 0) {
+                                    x += zr * zc * p.get(j + pr, l + pc);
+                                }
+                            }
+                        }
+                    }
+                    zvz.get(i, k).set(np, x);
+                }
+            }
+        }
+    }
+
+    /**
+     * The vector z corresponding to a given measurement type
+     *
+     * @param type
+     * @return
+     */
+    public DataBlock getZ(DynamicFactorModel.MeasurementType type) {
+        return Z.get(type);
+    }
+
+    /**
+     * z'V(i,k)(t)z for a given measurement type
+     *
+     * @param type
+     * @return A symmetric table (nf x nf) of blocks of length n. The blocks
+     * (i,k) and (k,i) are identical.
+     */
+    public Table<DataBlock> getZVZ(DynamicFactorModel.MeasurementType type) {
+        return ZVZ.get(type);
+    }
+
+    /**
+     * Sum of the covariances of the smoothed states
+     *
+     * @return
+     */
+    public Matrix getSumVariance() {
+        return S;
+    }
+
+    /**
+     * Covariance of the first smoothed state (at the saving start)
+     *
+     * @return
+     */
+    public Matrix getInitialVariance() {
+        return V0;
+    }
+
+    /**
+     * sum(E(s(i,t)s(j,t)), t)
+     *
+     * @param i
+     * @param j
+     * @return
+     */
+    public double sum(int i, int j) {
+        return S.get(i, j) + getSmoothedStates().item(i).dot(getSmoothedStates().item(j));
+    }
+
+    /**
+     * E(s(i,0)s(j,0))
+     *
+     * @param i
+     * @param j
+     * @return
+     */
+    public double initial(int i, int j) {
+        return V0.get(i, j) + getSmoothedStates().item(i).get(0) * getSmoothedStates().item(j).get(0);
+    }
+}
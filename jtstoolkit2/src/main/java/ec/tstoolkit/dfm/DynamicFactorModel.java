@@ -757,6 +757,42 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
         return true;
     }
 
+    /**
+     * Checks that a given model has the same structure and the same
+     * parameters as this object
+     *
+     * @param m The compared model
+     * @return True if the models have the same structure (block length,
+     * factors, lags, types of the measurements and used factors,
+     * initialization) and the same parameters
+     */
+    public boolean isSame(DynamicFactorModel m) {
+        if (this == m) {
+            return true;
+        }
+        if (c_ != m.c_ || nf_ != m.nf_ || init_ != m.init_
+                || tdesc_.nlags != m.tdesc_.nlags
+                || mdesc_.size() != m.mdesc_.size()) {
+            return false;
+        }
+        if (!Arrays.equals(tdesc_.varParams.internalStorage(), m.tdesc_.varParams.internalStorage())
+                || !Arrays.equals(tdesc_.covar.internalStorage(), m.tdesc_.covar.internalStorage())) {
+            return false;
+        }
+        for (int i = 0; i < mdesc_.size(); ++i) {
+            MeasurementDescriptor s = m.mdesc_.get(i),
+                    t = mdesc_.get(i);
+            if (getMeasurementType(s.type) != getMeasurementType(t.type)
+                    || !Arrays.equals(s.coeff, t.coeff) || s.var != t.var) {
+                return false;
+            }
+        }
+        if (V0_ == null || m.V0_ == null) {
+            return V0_ == m.V0_;
+        }
+        return Arrays.equals(V0_.internalStorage(), m.V0_.internalStorage());
+    }
+
     /**
      * Compacts the factors of a given models
      *
@@ -994,6 +1030,7 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
             return DynamicFactorModel.this;
         }
         private final DataBlock ttmp, xtmp;
+        private final Matrix vtmp;
 
         private Ssf() {
             int nl = tdesc_.nlags;
@@ -1001,6 +1038,7 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
             this.initialize(mdim, vdim, nf_, true);
             ttmp = new DataBlock(nf_);
             xtmp = new DataBlock(mdim);
+            vtmp = new Matrix(mdim, nf_);
             // Measurement
             for (int i = 0; i < vdim; ++i) {
                 MeasurementDescriptor zdesc = mdesc_.get(i);
@@ -1071,22 +1109,72 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
             x.extract(0, -1, c_).copy(ttmp);
         }
 
-        // TODO: improvement should not be too difficult (process by block)
+        /**
+         * T V T' is computed by blocks. T contains nf rows with the VAR
+         * coefficients (A) and a shift operator (S) elsewhere, so that
+         * T V T' = | A V A'  A V S' |
+         *          | S V A'  S V S' |
+         * Only A V (nf x d) and A V A' (nf x nf) require real computations. The
+         * other blocks are copies of (shifted) sub-blocks of V. V is supposed
+         * to be symmetric.
+         *
+         * @param pos
+         * @param vm
+         */
         @Override
         public void TVT(final int pos, final SubMatrix vm) {
-            // usual solution
-            DataBlockIterator cols = vm.columns();
-            DataBlock col = cols.getData();
-            do {
-                TX(pos, col);
-            } while (cols.next());
-
-            DataBlockIterator rows = vm.rows();
-            DataBlock row = rows.getData();
-            do {
-                TX(pos, row);
-            } while (rows.next());
-            SymmetricMatrix.reinforceSymmetry(vm);
+            int nl = tdesc_.nlags;
+            // A V, stored by columns (column i contains the row i*c of T V)
+            for (int i = 0; i < nf_; ++i) {
+                DataBlock av = vtmp.column(i);
+                av.set(0);
+                DataBlock p = tdesc_.varParams.row(i);
+                for (int j = 0, k = 0; j < nf_; ++j) {
+                    for (int l = 0; l < nl; ++l, ++k) {
+                        double a = p.get(k);
+                        if (a != 0) {
+                            av.addAY(a, vm.column(j * c_ + l));
+                        }
+                    }
+                }
+            }
+            // S V S': shift of the sub-blocks (from the last column to the first one)
+            for (int j = 0; j < nf_; ++j) {
+                for (int b = c_ - 1, col = j * c_ + b; b > 0; --b, --col) {
+                    DataBlock dst = vm.column(col), src = vm.column(col - 1);
+                    for (int i = 0, r = 0; i < nf_; ++i, r += c_) {
+                        dst.range(r + 1, r + c_).copy(src.range(r, r + c_ - 1));
+                    }
+                }
+            }
+            // A V S' and S V A'
+            for (int i = 0, r = 0; i < nf_; ++i, r += c_) {
+                DataBlock av = vtmp.column(i);
+                DataBlock vcol = vm.column(r), vrow = vm.row(r);
+                for (int j = 0, c = 0; j < nf_; ++j, c += c_) {
+                    DataBlock cur = av.range(c, c + c_ - 1);
+                    vcol.range(c + 1, c + c_).copy(cur);
+                    vrow.range(c + 1, c + c_).copy(cur);
+                }
+            }
+            // A V A'
+            for (int i = 0, r = 0; i < nf_; ++i, r += c_) {
+                DataBlock av = vtmp.column(i);
+                for (int j = 0, c = 0; j <= i; ++j, c += c_) {
+                    DataBlock p = tdesc_.varParams.row(j).range(0, nl);
+                    DataBlock xb = av.range(0, nl);
+                    double q = 0;
+                    for (int k = 0; k < nf_; ++k) {
+                        if (k != 0) {
+                            p.move(nl);
+                            xb.move(c_);
+                        }
+                        q += p.dot(xb);
+                    }
+                    vm.set(r, c, q);
+                    vm.set(c, r, q);
+                }
+            }
         }
 
         @Override
@@ -15,15 +15,27 @@ import java.util.Map;
  */
 public class EmSpec implements IProcSpecification, Cloneable {
 
+    /**
+     * Acceleration of the EM algorithm. Squarem uses the squared extrapolation
+     * method of Varadhan and Roland on the parameters of the model
+     */
+    public static enum Acceleration {
+
+        None,
+        Squarem
+    }
+
     public static final int DEF_VERSION = 2, DEF_MAXITER = 100, DEF_MAXNUMITER = 50;
     public static final double DEF_PRECISION = 1e-9;
-    public static final String ENABLED = "enabled", VERSION = "version", MAXITER = "maxiter", MAXNUMITER = "maxnumiter", PRECISION = "precision";
+    public static final String ENABLED = "enabled", VERSION = "version", MAXITER = "maxiter", MAXNUMITER = "maxnumiter", PRECISION = "precision",
+            ACCELERATION = "acceleration";
 
     private boolean enabled_;
     private int version_ = DEF_VERSION;
     private int maxIter_ = DEF_MAXITER;
      private int maxNumIter_ = DEF_MAXNUMITER;
     private double eps_ = DEF_PRECISION;
+    private Acceleration acceleration_ = Acceleration.None;
 
     public void setEnabled(boolean use) {
         enabled_ = use;
@@ -65,6 +77,14 @@ public class EmSpec implements IProcSpecification, Cloneable {
         return eps_;
     }
 
+    public Acceleration getAcceleration() {
+        return acceleration_;
+    }
+
+    public void setAcceleration(Acceleration acceleration) {
+        acceleration_ = acceleration;
+    }
+
     @Override
     public EmSpec clone() {
         try {
@@ -90,6 +110,9 @@ public class EmSpec implements IProcSpecification, Cloneable {
         if (eps_ != DEF_PRECISION || verbose) {
             info.set(PRECISION, eps_);
         }
+        if (acceleration_ != Acceleration.None || verbose) {
+            info.set(ACCELERATION, acceleration_.name());
+        }
         return info;
     }
 
@@ -118,6 +141,10 @@ public class EmSpec implements IProcSpecification, Cloneable {
         if (e != null) {
             eps_ = e;
         }
+        String acc = info.get(ACCELERATION, String.class);
+        if (acc != null) {
+            acceleration_ = Acceleration.valueOf(acc);
+        }
         return true;
     }
 
@@ -138,7 +165,7 @@ public class EmSpec implements IProcSpecification, Cloneable {
     public boolean equals(EmSpec spec) {
         return enabled_ == spec.enabled_ && maxIter_ == spec.maxIter_
                 && maxNumIter_ == spec.maxNumIter_ && version_ == spec.version_
-                && spec.eps_ == eps_;
+                && spec.eps_ == eps_ && acceleration_ == spec.acceleration_;
     }
 
     public static void fillDictionary(String prefix, Map<String, Class> dic) {
@@ -147,5 +174,6 @@ public class EmSpec implements IProcSpecification, Cloneable {
         dic.put(InformationSet.item(prefix, MAXITER), Integer.class);
         dic.put(InformationSet.item(prefix, MAXNUMITER), Integer.class);
         dic.put(InformationSet.item(prefix, PRECISION), Double.class);
+        dic.put(InformationSet.item(prefix, ACCELERATION), String.class);
     }
 }
@@ -21,15 +21,17 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
     }
 
     public static final int DEF_VERSION = 2, DEF_MAXITER = 1000, DEF_MAXSITER = 15,
-            DEF_NITER = 5;
-    public static final Boolean DEF_BLOCK = true, DEF_MIXED=true, DEF_IVAR=false;
+            DEF_NITER = 5, DEF_THREADS = 1, DEF_CHECKPOINTS = 0;
+    public static final Boolean DEF_BLOCK = true, DEF_MIXED=true, DEF_IVAR=false, DEF_UNIVARIATE=false, DEF_ANALYTIC=true;
     public static final String ENABLED = "enabled", MAXITER = "maxiter", MAXSITER = "maxsiter", NITER = "niter", 
-            BLOCKITER = "blockiter", METHOD="method", EPS = "eps", MIXED="mixed", IVAR="ivar";
-    public static final double DEF_EPS = 1e-9;
+            BLOCKITER = "blockiter", METHOD="method", EPS = "eps", MIXED="mixed", IVAR="ivar", SSTOL = "sstol",
+            UNIVARIATE = "univariate", ANALYTIC = "analytic", THREADS = "threads", CHECKPOINTS = "checkpoints";
+    public static final double DEF_EPS = 1e-9, DEF_SSTOL = 0;
     private boolean enabled_;
-    private int maxiter_ = DEF_MAXITER, maxsiter_ = DEF_MAXSITER, niter_ = DEF_NITER;
-    private boolean block_ = DEF_BLOCK, mixed_=DEF_MIXED, ivar_=DEF_IVAR;
-    private double eps_ = DEF_EPS;
+    private int maxiter_ = DEF_MAXITER, maxsiter_ = DEF_MAXSITER, niter_ = DEF_NITER, threads_ = DEF_THREADS,
+            checkpoints_ = DEF_CHECKPOINTS;
+    private boolean block_ = DEF_BLOCK, mixed_=DEF_MIXED, ivar_=DEF_IVAR, univariate_=DEF_UNIVARIATE, analytic_=DEF_ANALYTIC;
+    private double eps_ = DEF_EPS, sstol_ = DEF_SSTOL;
     private Method method_ = Method.LevenbergMarquardt;
 
     public void setEnabled(boolean use) {
@@ -103,6 +105,78 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
     public void setPrecision(double eps){
         eps_=eps;
     }
+
+    /**
+     * Tolerance used by the Kalman filter and smoother to detect their steady
+     * state. 0 disables the detection.
+     *
+     * @return
+     */
+    public double getSteadyStateTolerance(){
+        return sstol_;
+    }
+
+    public void setSteadyStateTolerance(double tol){
+        sstol_=tol;
+    }
+
+    /**
+     * Univariate treatment of the observations in the Kalman filter/smoother
+     * (the measurement errors of the model are independent)
+     *
+     * @return
+     */
+    public boolean isUnivariate(){
+        return univariate_;
+    }
+
+    public void setUnivariate(boolean b){
+        univariate_=b;
+    }
+
+    /**
+     * Analytical gradient of the likelihood (quasi-Newton methods only)
+     *
+     * @return
+     */
+    public boolean isAnalyticDerivatives(){
+        return analytic_;
+    }
+
+    public void setAnalyticDerivatives(boolean b){
+        analytic_=b;
+    }
+
+    /**
+     * Number of threads used in the computation of the numerical derivatives
+     * of the likelihood: gradient and hessian (quasi-Newton methods) or
+     * jacobian of the sum of squares (Levenberg-Marquardt). The results don't
+     * depend on the number of threads. 1 for sequential processing
+     *
+     * @return
+     */
+    public int getThreadsCount(){
+        return threads_;
+    }
+
+    public void setThreadsCount(int n){
+        threads_=n;
+    }
+
+    /**
+     * Interval between the checkpoints of the smoother used for the results
+     * (see MSmoother.setCheckpointInterval). Reduces the memory used by the
+     * smoothing of long samples or large models. 0 disables the checkpoints
+     *
+     * @return
+     */
+    public int getCheckpointInterval(){
+        return checkpoints_;
+    }
+
+    public void setCheckpointInterval(int k){
+        checkpoints_=k;
+    }
     
     @Override
     public NumericalProcessingSpec clone() {
@@ -129,6 +203,15 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
         if (eps_ != DEF_EPS || verbose) {
             info.set(EPS, eps_);
         }
+        if (sstol_ != DEF_SSTOL || verbose) {
+            info.set(SSTOL, sstol_);
+        }
+        if (univariate_ != DEF_UNIVARIATE || verbose) {
+            info.set(UNIVARIATE, univariate_);
+        }
+        if (analytic_ != DEF_ANALYTIC || verbose) {
+            info.set(ANALYTIC, analytic_);
+        }
         if (maxiter_ != DEF_MAXITER || verbose) {
             info.set(MAXITER, maxiter_);
         }
@@ -138,6 +221,12 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
         if (niter_ != DEF_NITER || verbose) {
             info.set(NITER, niter_);
         }
+        if (threads_ != DEF_THREADS || verbose) {
+            info.set(THREADS, threads_);
+        }
+        if (checkpoints_ != DEF_CHECKPOINTS || verbose) {
+            info.set(CHECKPOINTS, checkpoints_);
+        }
         info.set(METHOD, method_.name());
         return info;
     }
@@ -175,10 +264,30 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
         if (ni != null) {
             niter_ = ni;
         }
+        ni = info.get(THREADS, Integer.class);
+        if (ni != null) {
+            threads_ = ni;
+        }
+        ni = info.get(CHECKPOINTS, Integer.class);
+        if (ni != null) {
+            checkpoints_ = ni;
+        }
         Double eps = info.get(EPS, Double.class);
         if (eps != null) {
             eps_ = eps;
         }
+        Double sstol = info.get(SSTOL, Double.class);
+        if (sstol != null) {
+            sstol_ = sstol;
+        }
+        Boolean univariate = info.get(UNIVARIATE, Boolean.class);
+        if (univariate != null) {
+            univariate_ = univariate;
+        }
+        Boolean analytic = info.get(ANALYTIC, Boolean.class);
+        if (analytic != null) {
+            analytic_ = analytic;
+        }
         String m=info.get(METHOD, String.class);
         if (m != null)
             method_=Method.valueOf(m);
@@ -192,8 +301,8 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
 
     public boolean equals(NumericalProcessingSpec obj) {
         return obj.enabled_ == enabled_ && obj.block_ == block_ && obj.mixed_ == mixed_
-                && obj.ivar_== ivar_ && obj.eps_ == eps_ && obj.method_ == method_
-                && obj.maxiter_ == maxiter_ && obj.maxsiter_ == obj.maxsiter_ && obj.niter_ == niter_;
+                && obj.ivar_== ivar_ && obj.eps_ == eps_ && obj.sstol_ == sstol_ && obj.univariate_ == univariate_ && obj.analytic_ == analytic_ && obj.method_ == method_
+                && obj.maxiter_ == maxiter_ && obj.maxsiter_ == obj.maxsiter_ && obj.niter_ == niter_ && obj.threads_ == threads_ && obj.checkpoints_ == checkpoints_;
     }
 
     @Override
@@ -212,10 +321,15 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
         dic.put(InformationSet.item(prefix, MAXITER), Integer.class);
         dic.put(InformationSet.item(prefix, MAXSITER), Integer.class);
         dic.put(InformationSet.item(prefix, NITER), Integer.class);
+        dic.put(InformationSet.item(prefix, THREADS), Integer.class);
+        dic.put(InformationSet.item(prefix, CHECKPOINTS), Integer.class);
         dic.put(InformationSet.item(prefix, BLOCKITER), Boolean.class);
         dic.put(InformationSet.item(prefix, MIXED), Boolean.class);
         dic.put(InformationSet.item(prefix, IVAR), Boolean.class);
         dic.put(InformationSet.item(prefix, EPS), Double.class);
+        dic.put(InformationSet.item(prefix, SSTOL), Double.class);
+        dic.put(InformationSet.item(prefix, UNIVARIATE), Boolean.class);
+        dic.put(InformationSet.item(prefix, ANALYTIC), Boolean.class);
         dic.put(InformationSet.item(prefix, METHOD), String.class);
     }
 }
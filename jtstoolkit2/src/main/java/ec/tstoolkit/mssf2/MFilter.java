@@ -20,8 +20,11 @@ import ec.tstoolkit.data.DataBlock;
 import ec.tstoolkit.data.DataBlockIterator;
 import ec.tstoolkit.maths.matrices.LowerTriangularMatrix;
 import ec.tstoolkit.maths.matrices.Matrix;
-import ec.tstoolkit.maths.matrices.SubMatrix;
 import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  *
@@ -38,6 +41,18 @@ public class MFilter {
     private IMSsf m_ssf;
     private IMSsfData m_data;
     private int m_pos, m_end, m_r, m_e, m_v;
+    // steady state
+    private double m_sstol;
+    private boolean m_steady, m_same;
+    private int m_nsteady;
+    private boolean[] m_missing, m_pmissing;
+    private Matrix m_Pprev;
+    // observed variables (by pattern of missing values) and work matrices (by number of observations)
+    private final Map<BitSet, int[]> m_selections = new HashMap<>();
+    private int[] m_obs;
+    private Matrix[] m_Fo, m_Ko;
+    private DataBlock[] m_Eo;
+    private Matrix m_H;
 
     /**
      *
@@ -46,36 +61,54 @@ public class MFilter {
     }
 
     /**
-     * Computes zm = Z * M
      *
-     * @param M
-     * @param zm
+     * @return
      */
-    private void ZM(SubMatrix M, SubMatrix zm) {
-        DataBlockIterator mcols = M.columns();
-        DataBlock mcol = mcols.getData();
-        DataBlockIterator zrows = zm.rows();
-        DataBlock zr = zrows.getData();
-        int i = 0;
-        do {
-            mcols.begin();
-            if (m_data.isMissing(i, m_pos)) {
-                zr.set(0);
-            } else {
-                do {
-                    zr.set(mcols.getPosition(), m_ssf.ZX(m_pos, i, mcol));
-                } while (mcols.next());
-            }
-            ++i;
-        } while (zrows.next());
+    public double getSteadyStateTolerance() {
+        return m_sstol;
     }
 
-    private void cleanMissing(SubMatrix V) {
-        for (int i = 0; i < m_v; ++i) {
-            if (m_data.isMissing(i, m_pos)) {
-                V.row(i).set(0);
-                V.column(i).set(0);
-            }
+    /**
+     * Sets the tolerance used to detect the convergence of the filter. When
+     * the prediction covariance P changes by less than the tolerance (maximum
+     * absolute difference) between two consecutive periods with the same
+     * pattern of missing values, F (its Cholesky factor) and K are kept
+     * unchanged until the pattern changes. The detection is only used with
+     * time invariant models. 0 (default) disables the detection.
+     *
+     * @param tol The tolerance
+     */
+    public void setSteadyStateTolerance(double tol) {
+        m_sstol = tol;
+    }
+
+    /**
+     * Checks that the filter is in steady state for the current position
+     *
+     * @return
+     */
+    public boolean isSteadyState() {
+        return m_steady;
+    }
+
+    /**
+     * Gets the number of periods of the last run where F and K have been
+     * reused (steady state)
+     *
+     * @return
+     */
+    public int getSteadyStateCount() {
+        return m_nsteady;
+    }
+
+    /**
+     * Gets the work matrices (F and K) for the given number of observations
+     */
+    private void loadWorkMatrices(int nobs) {
+        if (m_Fo[nobs] == null) {
+            m_Fo[nobs] = new Matrix(nobs, nobs);
+            m_Ko[nobs] = new Matrix(m_r, nobs);
+            m_Eo[nobs] = new DataBlock(nobs);
         }
     }
 
@@ -83,36 +116,144 @@ public class MFilter {
      *
      */
     public void mpred() {
+        updateMissing();
+        if (m_steady) {
+            if (m_same) {
+                ++m_nsteady;
+                error();
+                return;
+            }
+            m_steady = false;
+        }
 
+        // The computations are done on the observed variables only (o).
+        // The results are stored in the complete matrices, where the rows
+        // and the columns corresponding to missing values are set to 0.
+        m_state.F.set(0);
+        m_state.K.set(0);
+        int nobs = m_obs.length;
+        if (nobs == 0) {
+            m_state.E.set(0);
+            return;
+        }
+        Matrix F = m_Fo[nobs], K = m_Ko[nobs];
         // K = TPZ'(ZPZ')^-1
-        // computes (ZP)' in K'. Missing values are set to 0 
+        // computes (ZP)' in K'. 
         // Z~v x r, P~r x r, K~r x v
-        SubMatrix F = m_state.F.subMatrix(), K = m_state.K.subMatrix();
-        F.set(0);
-        K.set(0);
-        ZM(m_state.P.subMatrix(), K.transpose());
-        // computes ZPZ'; results in m_state.F
-        ZM(K, F);
-        SymmetricMatrix.reinforceSymmetry(m_state.F);
-        m_ssf.addH(m_pos, F);
-        cleanMissing(F);
-
-        // m_state.F contains the Cholesky factor !!!
-        SymmetricMatrix.lcholesky(m_state.F, 1e-9);
+        DataBlockIterator pcols = m_state.P.columns();
+        DataBlock pcol = pcols.getData();
+        do {
+            int c = pcols.getPosition();
+            for (int j = 0; j < nobs; ++j) {
+                K.set(c, j, m_ssf.ZX(m_pos, m_obs[j], pcol));
+            }
+        } while (pcols.next());
+        // computes ZPZ'
+        for (int j = 0; j < nobs; ++j) {
+            DataBlock kcol = K.column(j);
+            for (int i = 0; i < nobs; ++i) {
+                F.set(i, j, m_ssf.ZX(m_pos, m_obs[i], kcol));
+            }
+        }
+        SymmetricMatrix.reinforceSymmetry(F);
+        if (m_H != null) {
+            if (!m_ssf.isMeasurementEquationTimeInvariant()) {
+                m_H.set(0);
+                m_ssf.H(m_pos, m_H.subMatrix());
+            }
+            for (int j = 0; j < nobs; ++j) {
+                for (int i = 0; i < nobs; ++i) {
+                    F.add(i, j, m_H.get(m_obs[i], m_obs[j]));
+                }
+            }
+        }
+
+        // F contains the Cholesky factor !!!
+        SymmetricMatrix.lcholesky(F, 1e-9);
 
         // We put in K  TPZ'*(ZPZ'+H)^-1/2 = TPZ'* F^-1 = TPZ'*(LL')^-1/2 = TPZ'(L')^-1
         // K L' = TPZ' or L K' = ZPT'
-        m_ssf.TM(m_pos, K);
-        LowerTriangularMatrix.rsolve(m_state.F, K.transpose(), Zero);
+        m_ssf.TM(m_pos, K.subMatrix());
+        LowerTriangularMatrix.rsolve(F, K.subMatrix().transpose(), Zero);
+
+        for (int j = 0; j < nobs; ++j) {
+            int cj = m_obs[j];
+            m_state.K.column(cj).copy(K.column(j));
+            for (int i = 0; i < nobs; ++i) {
+                m_state.F.set(m_obs[i], cj, F.get(i, j));
+            }
+        }
 
+        error();
+    }
+
+    /**
+     * Computes the (standardized) prediction errors
+     */
+    private void error() {
         m_state.E.set(0);
+        int nobs = m_obs.length;
+        if (nobs == 0) {
+            return;
+        }
+        DataBlock E = m_Eo[nobs];
+        for (int i = 0; i < nobs; ++i) {
+            int ci = m_obs[i];
+            double y = m_data.get(ci, m_pos);
+            E.set(i, y - m_ssf.ZX(m_pos, ci, m_state.A));
+        }
+        LowerTriangularMatrix.rsolve(m_Fo[nobs], E, Zero);
+        for (int i = 0; i < nobs; ++i) {
+            m_state.E.set(m_obs[i], E.get(i));
+        }
+    }
+
+    private void updateMissing() {
+        boolean[] tmp = m_pmissing;
+        m_pmissing = m_missing;
+        m_missing = tmp;
+        for (int i = 0; i < m_v; ++i) {
+            m_missing[i] = m_data.isMissing(i, m_pos);
+        }
+        // m_obs is undefined at the start of the filter (which may be a
+        // restart, see process(..., start, a, P))
+        m_same = m_obs != null && m_pos > 0 && Arrays.equals(m_missing, m_pmissing);
+        if (!m_same) {
+            m_obs = selection();
+            loadWorkMatrices(m_obs.length);
+        }
+    }
+
+    /**
+     * Gets the positions of the observed variables for the current pattern
+     * of missing values. The selections are cached by pattern.
+     */
+    private int[] selection() {
+        BitSet pattern = new BitSet(m_v);
         for (int i = 0; i < m_v; ++i) {
-            if (!m_data.isMissing(i, m_pos)) {
-                double y = m_data.get(i, m_pos);
-                m_state.E.set(i, y - m_ssf.ZX(m_pos, i, m_state.A));
+            if (!m_missing[i]) {
+                pattern.set(i);
             }
         }
-        LowerTriangularMatrix.rsolve(m_state.F, m_state.E, Zero);
+        int[] sel = m_selections.get(pattern);
+        if (sel == null) {
+            sel = new int[pattern.cardinality()];
+            for (int i = pattern.nextSetBit(0), j = 0; i >= 0; i = pattern.nextSetBit(i + 1)) {
+                sel[j++] = i;
+            }
+            m_selections.put(pattern, sel);
+        }
+        return sel;
+    }
+
+    private boolean hasConverged() {
+        double[] p = m_state.P.internalStorage(), q = m_Pprev.internalStorage();
+        for (int i = 0; i < p.length; ++i) {
+            if (Math.abs(p[i] - q[i]) > m_sstol) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -130,6 +271,27 @@ public class MFilter {
         m_e = m_ssf.getTransitionResDim();
         m_end = m_data.getCount();
         m_pos = 0;
+        m_steady = false;
+        m_same = false;
+        m_nsteady = 0;
+        m_missing = new boolean[m_v];
+        m_pmissing = new boolean[m_v];
+        m_selections.clear();
+        m_obs = null;
+        m_Fo = new Matrix[m_v + 1];
+        m_Ko = new Matrix[m_v + 1];
+        m_Eo = new DataBlock[m_v + 1];
+        if (m_ssf.hasH()) {
+            m_H = new Matrix(m_v, m_v);
+            m_ssf.H(0, m_H.subMatrix());
+        } else {
+            m_H = null;
+        }
+        if (m_sstol > 0 && m_ssf.isTimeInvariant()) {
+            m_Pprev = new Matrix(m_r, m_r);
+        } else {
+            m_Pprev = null;
+        }
         return true;
     }
 
@@ -153,28 +315,31 @@ public class MFilter {
         // P = TPT' - (TM)* F^-1 *(TM)' + RQR' --> Symmetric
         // TPZ'(LL')^-1 ZPT' =TPZ'L'^-1*L^-1*ZPT'
         // A = Ta + (TM)* F^-1 * v
-        m_ssf.TVT(m_pos, m_state.P.subMatrix());
+        // In steady state, P is unchanged
+        if (!m_steady) {
+            boolean check = m_Pprev != null && m_same;
+            if (check) {
+                m_Pprev.copy(m_state.P);
+            }
+            m_ssf.TVT(m_pos, m_state.P.subMatrix());
 
-        for (int i = 0; i < m_v; ++i) {
-            if (!m_data.isMissing(i, m_pos)) {
-                //for (int j = 0; j < m_v; ++j) {
-                //if (!m_data.isMissing(j, m_pos)) {
-                update(m_state.P, m_state.K.column(i));//, m_state.K.column(i));
-                //}
-                //}
+            for (int i = 0; i < m_obs.length; ++i) {
+                update(m_state.P, m_state.K.column(m_obs[i]));
+            }
+            m_ssf.addV(m_pos, m_state.P.subMatrix());
+            if (check && hasConverged()) {
+                m_steady = true;
             }
         }
-        m_ssf.addV(m_pos, m_state.P.subMatrix());
 
         //a(t+1)=Ta(t)+(TPZ)F^-1* v=Ta(t)+(TPZ)(LL')^-1* v
         // = Ta(t)+(TPZ)(L')^-1* L^-1*v =  Ta(t)+K*L^-1*v
         // U = L^-1*E or LU=E
         m_ssf.TX(m_pos, m_state.A);
 
-        for (int i = 0; i < m_v; ++i) {
-            if (!m_data.isMissing(i, m_pos)) {
-                m_state.A.addAY(m_state.E.get(i), m_state.K.column(i));
-            }
+        for (int i = 0; i < m_obs.length; ++i) {
+            int ci = m_obs[i];
+            m_state.A.addAY(m_state.E.get(ci), m_state.K.column(ci));
         }
     }
 
@@ -213,6 +378,50 @@ public class MFilter {
         return true;
     }
 
+    /**
+     * Processes the data from a given position, starting from a given state.
+     * The state (a, P) must be the predicted state at the given position,
+     * computed on the same model and on the same data (for instance by a
+     * previous run of the filter). The results before the start position are
+     * not computed.
+     *
+     * @param ssf
+     * @param data
+     * @param rslts
+     * @param start The position of the initial state
+     * @param a The predicted state at the start position
+     * @param P The covariance of the predicted state at the start position
+     * @return
+     */
+    public boolean process(final IMSsf ssf, final IMSsfData data, final IMFilteringResults rslts,
+            final int start, final DataBlock a, final Matrix P) {
+        m_ssf = ssf;
+        m_data = data;
+        if (!initFilter()) {
+            return false;
+        }
+        m_state = new MState(m_r, m_v);
+        m_state.A.copy(a);
+        m_state.P.copy(P);
+        m_pos = start;
+        if (rslts != null) {
+            rslts.prepare(m_ssf, m_data);
+        }
+        if (m_pos < m_end) {
+            do {
+                mpred();
+                if (rslts != null) {
+                    rslts.save(m_pos, m_state);
+                }
+                next();
+            } while (++m_pos < m_end);
+        }
+        if (rslts != null) {
+            rslts.close();
+        }
+        return true;
+    }
+
     // P -= c*r
     private void update(Matrix P, DataBlock c) {//, DataBlock r) {
 //        DataBlockIterator cols = P.columns();
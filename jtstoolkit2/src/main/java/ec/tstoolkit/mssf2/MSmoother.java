@@ -22,6 +22,7 @@ import ec.tstoolkit.maths.matrices.LowerTriangularMatrix;
 import ec.tstoolkit.maths.matrices.Matrix;
 import ec.tstoolkit.maths.matrices.SubMatrix;
 import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import java.util.Arrays;
 
 /**
  *
@@ -37,14 +38,21 @@ public class MSmoother {
     private IMSsfData m_data;
     private MFilteringResults m_frslts;
     private MSmoothingResults m_srslts;
-    private int m_pos, m_n, m_v, m_stop;
+    private int m_pos, m_n, m_v, m_stop, m_end;
+    // checkpointing
+    private int m_checkpoint;
     private DataBlock m_r, m_E;
     private SubMatrix m_K;
     private Matrix m_F;
     private Matrix m_N, m_L, m_T, m_Z, m_Zl;
     // 
     private DataBlock m_tmp, m_vtmp;
-    private boolean[] m_missing;
+    private boolean[] m_missing, m_pmissing;
+    // steady state
+    private double m_sstol;
+    private boolean m_steady, m_same;
+    private int m_nsteady;
+    private Matrix m_Nprev;
 
     /**
      *
@@ -89,6 +97,62 @@ public class MSmoother {
         m_bvar = calc;
     }
 
+    /**
+     *
+     * @return
+     */
+    public double getSteadyStateTolerance() {
+        return m_sstol;
+    }
+
+    /**
+     * Sets the tolerance used to detect the convergence of the filter (see
+     * MFilter) and of the backward recursion on N. When the filter is in
+     * steady state and N changes by less than the tolerance, N and the
+     * smoothed variance are kept unchanged until the filtering information
+     * changes. 0 (default) disables the detection.
+     *
+     * @param tol The tolerance
+     */
+    public void setSteadyStateTolerance(double tol) {
+        m_sstol = tol;
+    }
+
+    /**
+     * Gets the number of periods of the last backward recursion where N and
+     * the smoothed variance have been reused (steady state)
+     *
+     * @return
+     */
+    public int getSteadyStateCount() {
+        return m_nsteady;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getCheckpointInterval() {
+        return m_checkpoint;
+    }
+
+    /**
+     * Sets the interval between two checkpoints of the filter. When the
+     * interval (k) is positive, the filter (see process(IMSsf, IMSsfData,
+     * MSmoothingResults)) doesn't save K and P for each period. It only saves
+     * P every k periods. The backward recursion is then executed by segments
+     * of k periods: the filter is re-computed on each segment, starting from
+     * its checkpoint. The filtering information (K, P) is so limited to k
+     * periods, at the cost of a second run of the filter. sqrt(n) is a
+     * natural choice for the interval. 0 (default) disables the
+     * checkpointing.
+     *
+     * @param k The interval between two checkpoints
+     */
+    public void setCheckpointInterval(int k) {
+        m_checkpoint = k;
+    }
+
     /**
      *
      * @param stop
@@ -109,13 +173,18 @@ public class MSmoother {
      *
      */
     private void initSmoother() {
-        m_pos = m_data.getCount() - 1;
+        m_end = m_data.getCount();
+        m_pos = m_end - 1;
         m_n = m_ssf.getStateDim();
         m_v = m_ssf.getVarsCount();
         m_r = new DataBlock(m_n);
         m_tmp = new DataBlock(m_n);
         m_vtmp = new DataBlock(m_v);
         m_missing=new boolean[m_v];
+        m_pmissing=new boolean[m_v];
+        m_steady = false;
+        m_same = false;
+        m_nsteady = 0;
         m_F = new Matrix(m_v, m_v);
         m_E = new DataBlock(m_v);
         m_a = new DataBlock(m_n);
@@ -126,6 +195,11 @@ public class MSmoother {
             m_N = new Matrix(m_n, m_n);
             m_L = new Matrix(m_n, m_n);
             m_T = new Matrix(m_n, m_n);
+            if (m_sstol > 0 && m_ssf.isTimeInvariant()) {
+                m_Nprev = new Matrix(m_n, m_n);
+            } else {
+                m_Nprev = null;
+            }
         }
         m_srslts.prepare(m_data.getCount(), m_n, m_v);
     }
@@ -138,11 +212,21 @@ public class MSmoother {
             iterateR();
             m_tmp.product(m_r, m_P.columns());
             m_a.add(m_tmp);
-            if (m_bvar) {
+            // In steady state, N and V are unchanged
+            if (m_bvar && !m_steady) {
+                boolean check = m_Nprev != null && m_same;
+                if (check) {
+                    m_Nprev.copy(m_N);
+                }
                 iterateN();
                 SymmetricMatrix.quadraticForm(m_N.subMatrix(), m_P, m_V.subMatrix());
                 m_V.chs();
                 m_V.subMatrix().add(m_P);
+                if (check && hasConverged()) {
+                    m_steady = true;
+                }
+            } else if (m_bvar) {
+                ++m_nsteady;
             }
         }
         // a = a + r*P
@@ -189,7 +273,52 @@ public class MSmoother {
         }
     }
 
+    private boolean hasConverged() {
+        double[] n = m_N.internalStorage(), q = m_Nprev.internalStorage();
+        for (int i = 0; i < n.length; ++i) {
+            if (Math.abs(n[i] - q[i]) > m_sstol) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the filtering information (missing values, F, K, P) in the
+     * current position is identical to the information in the next position
+     */
+    private void checkSteadyState() {
+        m_same = false;
+        if (m_Nprev != null && m_pos < m_end - 1 && Arrays.equals(m_missing, m_pmissing)) {
+            VarianceMFilter vf = m_frslts.getVarianceFilter();
+            m_same = same(vf.F(m_pos), vf.F(m_pos + 1))
+                    && same(m_K, vf.K(m_pos + 1))
+                    && same(m_P, vf.P(m_pos + 1));
+        }
+        if (!m_same) {
+            m_steady = false;
+        }
+    }
+
+    private static boolean same(SubMatrix a, SubMatrix b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        int nr = a.getRowsCount(), nc = a.getColumnsCount();
+        for (int c = 0; c < nc; ++c) {
+            for (int r = 0; r < nr; ++r) {
+                if (a.get(r, c) != b.get(r, c)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private void loadInfo() {
+        boolean[] tmp = m_pmissing;
+        m_pmissing = m_missing;
+        m_missing = tmp;
         m_F.subMatrix().copy(m_frslts.getVarianceFilter().F(m_pos));
         m_E.copy(m_frslts.getFilteredData().E(m_pos));
         m_K = m_frslts.getVarianceFilter().K(m_pos);
@@ -200,6 +329,9 @@ public class MSmoother {
         for (int i = 0; i < m_v; ++i) {
             m_missing[i]=m_data.isMissing(i, m_pos);
         }
+        if (m_bvar) {
+            checkSteadyState();
+        }
     }
 
     private void loadModelInfo() {
@@ -247,18 +379,140 @@ public class MSmoother {
      * @return
      */
     public boolean process(final IMSsf ssf, final IMSsfData data, final MSmoothingResults rslts) {
+        if (m_checkpoint > 0) {
+            return processCheckpoints(ssf, data, rslts);
+        }
         m_ssf = ssf;
         m_data = data;
         MFilteringResults frslts = new MFilteringResults();
         frslts.getVarianceFilter().setSavingK(true);
         frslts.getVarianceFilter().setSavingP(true);
         MFilter filter = new MFilter();
+        filter.setSteadyStateTolerance(m_sstol);
         if (!filter.process(ssf, data, frslts)) {
             return false;
         }
         return process(ssf, data, frslts, rslts);
     }
 
+    /**
+     * Checkpointed smoothing (see setCheckpointInterval)
+     */
+    private boolean processCheckpoints(final IMSsf ssf, final IMSsfData data, final MSmoothingResults rslts) {
+        // forward pass, without K and P (except at the checkpoints)
+        int n = data.getCount();
+        Matrix[] checkpoints = new Matrix[(n + m_checkpoint - 1) / m_checkpoint];
+        MFilteringResults frslts = new MFilteringResults() {
+            @Override
+            public void save(int t, MState state) {
+                super.save(t, state);
+                if (t % m_checkpoint == 0) {
+                    checkpoints[t / m_checkpoint] = state.P.clone();
+                }
+            }
+        };
+        MFilter filter = new MFilter();
+        filter.setSteadyStateTolerance(m_sstol);
+        if (!filter.process(ssf, data, frslts)) {
+            return false;
+        }
+        clear();
+        m_ssf = ssf;
+        m_data = data;
+        m_srslts = rslts;
+        m_srslts.setSaveP(m_bvar);
+        initSmoother();
+        if (m_ssf.isTimeInvariant()) {
+            loadModelInfo();
+        }
+        // backward pass, by segments
+        for (int j = checkpoints.length - 1; j >= 0 && m_pos >= m_stop; --j) {
+            int start = j * m_checkpoint;
+            m_end = Math.min(start + m_checkpoint, n);
+            MFilteringResults srslts = new MFilteringResults();
+            srslts.saveAll(start);
+            srslts.getFilteredData().setStartSaving(start);
+            if (!filter.process(ssf, new DataWindow(data, m_end), srslts, start,
+                    frslts.getFilteredData().A(start), checkpoints[j])) {
+                return false;
+            }
+            m_frslts = srslts;
+            while (m_pos >= Math.max(start, m_stop)) {
+                if (!m_ssf.isTimeInvariant()) {
+                    loadModelInfo();
+                }
+                loadInfo();
+                iterateSmoother();
+                m_srslts.save(m_pos, m_a, m_V);
+                --m_pos;
+            }
+            checkpoints[j] = null;
+        }
+        // the complete (forward) filtering results
+        m_frslts = frslts;
+        return true;
+    }
+
+    /**
+     * The first observations of some data
+     */
+    private static class DataWindow implements IMSsfData {
+
+        private final IMSsfData data;
+        private final int n;
+
+        DataWindow(IMSsfData data, int n) {
+            this.data = data;
+            this.n = n;
+        }
+
+        @Override
+        public int count(int v) {
+            return n;
+        }
+
+        @Override
+        public double get(int v, int pos) {
+            return data.get(v, pos);
+        }
+
+        @Override
+        public double[] getInitialState() {
+            return data.getInitialState();
+        }
+
+        @Override
+        public int getVarsCount() {
+            return data.getVarsCount();
+        }
+
+        @Override
+        public int getCount() {
+            return n;
+        }
+
+        @Override
+        public boolean hasData() {
+            return data.hasData();
+        }
+
+        @Override
+        public boolean isMissing(int v, int pos) {
+            return data.isMissing(v, pos);
+        }
+
+        @Override
+        public int obsCount(int v) {
+            int nobs = 0;
+            for (int i = 0; i < n; ++i) {
+                if (!data.isMissing(v, i)) {
+                    ++nobs;
+                }
+            }
+            return nobs;
+        }
+    }
+
     /**
      * Compute x*(T-KZ)=xT-(xK * Z)=xT-(xQ*R^-1 * Z)
      *
@@ -25,6 +25,19 @@ import ec.tstoolkit.maths.matrices.SubMatrix;
 import ec.tstoolkit.maths.matrices.SymmetricMatrix;
 
 /**
+ * Results of the multivariate smoother.
+ *
+ * When the variances are computed (see setSaveP), the complete covariance
+ * matrices of the smoothed states are stored by default (O(n*d*d)). The
+ * storage can be limited to some projections of the covariances, which are
+ * computed when the smoother saves its results:
+ * - the diagonal of the covariances (variances of the components)
+ * - the variances of linear combinations of the states (zPz' for each row z
+ * of a given matrix), typically the rows of the measurement equation
+ * - the covariances of selected components
+ *
+ * The methods that retrieve the variances use the projections when the
+ * complete covariances are not available.
  *
  * @author Jean Palate
  */
@@ -35,6 +48,14 @@ public class MSmoothingResults {
     private MatrixStorage m_P, m_N;
     private boolean m_bP, m_bA = true, m_bR, m_bN;
     private int m_start;
+    // projections of the covariances
+    private boolean m_bFullP = true, m_bDiag;
+    private Matrix m_Z;
+    private int[] m_sel;
+    private DataBlockStorage m_diag, m_zvar;
+    private MatrixStorage m_Psel;
+    private DataBlock m_ztmp;
+    private Matrix m_seltmp;
 
     /**
      *
@@ -71,6 +92,9 @@ public class MSmoothingResults {
     public void clear() {
         m_a = null;
         m_P = null;
+        m_diag = null;
+        m_zvar = null;
+        m_Psel = null;
     }
 
     /**
@@ -94,8 +118,26 @@ public class MSmoothingResults {
      * @return
      */
     public DataBlock componentCovar(int i, int j) {
-        int len = m_n - m_start;
-        return m_P.item(i, j);
+        if (m_P != null) {
+            return m_P.item(i, j);
+        }
+        int si = selection(i), sj = selection(j);
+        if (si >= 0 && sj >= 0) {
+            return m_Psel.item(si, sj);
+        }
+        return i == j ? componentVar(i) : null;
+    }
+
+    private int selection(int idx) {
+        if (m_Psel == null) {
+            return -1;
+        }
+        for (int i = 0; i < m_sel.length; ++i) {
+            if (m_sel[i] == idx) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -104,11 +146,11 @@ public class MSmoothingResults {
      * @return
      */
     public double[] componentStdev(int idx) {
-        if (m_P == null) {
+        DataBlock var = componentVar(idx);
+        if (var == null) {
             return null;
         }
         double[] c = new double[m_n - m_start];
-        DataBlock var = componentCovar(idx, idx);
         for (int i = 0; i < c.length; ++i) {
             c[i] = Math.sqrt(var.get(i));
         }
@@ -121,10 +163,14 @@ public class MSmoothingResults {
      * @return
      */
     public DataBlock componentVar(int idx) {
-        if (m_P == null) {
-            return null;
+        if (m_P != null) {
+            return m_P.item(idx, idx);
+        }
+        if (m_diag != null) {
+            return m_diag.item(idx);
         }
-        return componentCovar(idx, idx);
+        int si = selection(idx);
+        return si >= 0 ? m_Psel.item(si, si) : null;
     }
 
     /**
@@ -176,6 +222,83 @@ public class MSmoothingResults {
         clear();
     }
 
+    /**
+     *
+     * @return
+     */
+    public boolean isSavingFullP() {
+        return m_bFullP;
+    }
+
+    /**
+     * Stores the complete covariance matrices of the smoothed states (default)
+     * when the variances are computed. Should be set to false when only
+     * projections of the covariances are needed
+     *
+     * @param value
+     */
+    public void setSaveFullP(boolean value) {
+        m_bFullP = value;
+        clear();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isSavingDiagonal() {
+        return m_bDiag;
+    }
+
+    /**
+     * Stores the variances of the smoothed states (diagonal of the
+     * covariance matrices)
+     *
+     * @param value
+     */
+    public void setSaveDiagonal(boolean value) {
+        m_bDiag = value;
+        clear();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Matrix getProjections() {
+        return m_Z;
+    }
+
+    /**
+     * Stores the variances of linear combinations of the smoothed states
+     * (see projectionVariance).
+     *
+     * @param z The linear combinations (one by row). Null to disable the
+     * projections
+     */
+    public void setProjections(Matrix z) {
+        m_Z = z == null ? null : z.clone();
+        clear();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int[] getSelectedComponents() {
+        return m_sel;
+    }
+
+    /**
+     * Stores the covariances of some components (see componentCovar)
+     *
+     * @param sel The selected components. Null to disable the selection
+     */
+    public void setSelectedComponents(int[] sel) {
+        m_sel = sel == null ? null : sel.clone();
+        clear();
+    }
+
     /**
      *
      * @param start
@@ -210,7 +333,20 @@ public class MSmoothingResults {
             m_a = new DataBlockStorage(m_d, nz);
         }
         if (m_bP) {
-            m_P = new MatrixStorage(m_d, nz);
+            if (m_bFullP) {
+                m_P = new MatrixStorage(m_d, nz);
+            }
+            if (m_bDiag) {
+                m_diag = new DataBlockStorage(m_d, nz);
+            }
+            if (m_Z != null && m_Z.getColumnsCount() == m_d) {
+                m_zvar = new DataBlockStorage(m_Z.getRowsCount(), nz);
+                m_ztmp = new DataBlock(m_Z.getRowsCount());
+            }
+            if (m_sel != null) {
+                m_Psel = new MatrixStorage(m_sel.length, nz);
+                m_seltmp = new Matrix(m_sel.length, m_sel.length);
+            }
         }
     }
 
@@ -229,10 +365,61 @@ public class MSmoothingResults {
             m_a.save(np, a);
         }
         if (m_bP && p != null) {
-            m_P.save(np, p);
+            if (m_P != null) {
+                m_P.save(np, p);
+            }
+            if (m_diag != null) {
+                m_diag.save(np, p.diagonal());
+            }
+            if (m_zvar != null) {
+                SubMatrix sp = p.subMatrix();
+                for (int i = 0; i < m_ztmp.getLength(); ++i) {
+                    m_ztmp.set(i, SymmetricMatrix.quadraticForm(sp, m_Z.row(i)));
+                }
+                m_zvar.save(np, m_ztmp);
+            }
+            if (m_Psel != null) {
+                for (int i = 0; i < m_sel.length; ++i) {
+                    for (int j = 0; j < m_sel.length; ++j) {
+                        m_seltmp.set(i, j, p.get(m_sel[i], m_sel[j]));
+                    }
+                }
+                m_Psel.save(np, m_seltmp);
+            }
         }
     }
 
+    /**
+     * Variances of a projection of the smoothed states (see setProjections)
+     *
+     * @param idx The position of the projection (row of the projections
+     * matrix)
+     * @return The variances or null if the projections are not stored
+     */
+    public DataBlock projectionVariance(int idx) {
+        return m_zvar == null ? null : m_zvar.item(idx);
+    }
+
+    /**
+     * Searches a linear combination in the stored projections
+     */
+    private int projection(DataBlock z) {
+        if (m_zvar == null || z.getLength() != m_d) {
+            return -1;
+        }
+        for (int i = 0; i < m_Z.getRowsCount(); ++i) {
+            DataBlock row = m_Z.row(i);
+            boolean same = true;
+            for (int j = 0; j < m_d && same; ++j) {
+                same = row.get(j) == z.get(j);
+            }
+            if (same) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      *
      * @param value
@@ -245,7 +432,14 @@ public class MSmoothingResults {
     public double[] zcomponent(DataBlock z) {
         int iz = check(z);
         if (iz >= 0) {
-            return component(iz);
+            double[] c = component(iz);
+            if (c != null) {
+                double ziz = z.get(iz);
+                for (int i = 0; i < c.length; ++i) {
+                    c[i] *= ziz;
+                }
+            }
+            return c;
         }
         if (m_a == null) {
             return null;
@@ -277,14 +471,29 @@ public class MSmoothingResults {
      * @return
      */
     public double[] zvariance(DataBlock z) {
+        int iz = check(z);
+        if (iz >= 0) {
+            DataBlock v = componentVar(iz);
+            if (v != null) {
+                double[] var = new double[m_n - m_start];
+                double z2 = z.get(iz) * z.get(iz);
+                for (int i = 0; i < var.length; ++i) {
+                    var[i] = v.get(i) * z2;
+                }
+                return var;
+            }
+        }
         if (m_P == null) {
-            return null;
+            int pz = projection(z);
+            if (pz < 0) {
+                return null;
+            }
+            double[] var = new double[m_n - m_start];
+            m_zvar.item(pz).copyTo(var, 0);
+            return var;
         }
-        int iz = check(z);
         double[] var = new double[m_n - m_start];
-        if (iz >= 0) {
-            componentVar(iz).copyTo(var, 0);
-        } else if (m_d == z.getLength()) {
+        if (m_d == z.getLength()) {
             for (int i = 0; i < m_n - m_start; ++i) {
                 var[i] = SymmetricMatrix.quadraticForm(m_P.matrix(i), z);
             }
@@ -299,6 +508,20 @@ public class MSmoothingResults {
      * @return
      */
     public double zvariance(int idx, DataBlock z) {
-        return m_P == null || idx < m_start ? Double.NaN : SymmetricMatrix.quadraticForm(m_P.matrix(idx), z);
+        if (idx < m_start) {
+            return Double.NaN;
+        }
+        if (m_P != null) {
+            return SymmetricMatrix.quadraticForm(m_P.matrix(idx - m_start), z);
+        }
+        int iz = check(z);
+        if (iz >= 0) {
+            DataBlock v = componentVar(iz);
+            if (v != null) {
+                return v.get(idx - m_start) * z.get(iz) * z.get(iz);
+            }
+        }
+        int pz = projection(z);
+        return pz >= 0 ? m_zvar.item(pz).get(idx - m_start) : Double.NaN;
     }
 }
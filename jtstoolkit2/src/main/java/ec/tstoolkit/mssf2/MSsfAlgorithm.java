@@ -36,6 +36,47 @@ public class MSsfAlgorithm extends AbstractMSsfAlgorithm
     {
     }
 
+    private double m_sstol;
+    private boolean m_univariate;
+
+    /**
+     * 
+     * @return
+     */
+    public double getSteadyStateTolerance()
+    {
+	return m_sstol;
+    }
+
+    /**
+     * Sets the tolerance used by the filter to detect its steady state
+     * (see MFilter). 0 disables the detection.
+     * @param tol
+     */
+    public void setSteadyStateTolerance(final double tol)
+    {
+	m_sstol = tol;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public boolean isUnivariate()
+    {
+	return m_univariate;
+    }
+
+    /**
+     * Uses the univariate treatment of the observations (see UMFilter).
+     * Requires a diagonal H.
+     * @param univariate
+     */
+    public void setUnivariate(final boolean univariate)
+    {
+	m_univariate = univariate;
+    }
+
      /**
      *
      * @param ssf
@@ -44,10 +85,17 @@ public class MSsfAlgorithm extends AbstractMSsfAlgorithm
      */
     @Override
     public DefaultLikelihoodEvaluation<Likelihood> evaluate(IMSsf ssf, IMSsfData data) {
-	MFilter filter = new MFilter();
 	MPredictionErrorDecomposition pred = new MPredictionErrorDecomposition(
 		true);
-	if (filter.process(ssf, data, pred))
+	boolean ok;
+	if (m_univariate) {
+	    ok = new UMFilter().process(ssf, data, pred);
+	} else {
+	    MFilter filter = new MFilter();
+	    filter.setSteadyStateTolerance(m_sstol);
+	    ok = filter.process(ssf, data, pred);
+	}
+	if (ok)
 	    return calcLikelihood(pred);
 	else
 	    return null;
@@ -28,8 +28,12 @@ import ec.tstoolkit.maths.realfunctions.ISsqFunctionDerivatives;
 import ec.tstoolkit.maths.realfunctions.ISsqFunctionInstance;
 import ec.tstoolkit.maths.realfunctions.NumericalDerivatives;
 import ec.tstoolkit.maths.realfunctions.SsqNumericalDerivatives;
+import java.util.concurrent.ExecutorService;
 
 /**
+ * The evaluation of the function is thread-safe, provided that the mapping
+ * creates a new state space model for each set of parameters: each
+ * evaluation uses its own model and its own filter.
  *
  * @author Jean Palate
  */
@@ -48,6 +52,7 @@ public class MSsfFunction<S extends IMSsf> implements IFunction, ISsqFunction {
      *
      */
     public final IMSsfData data;
+    private ExecutorService executor;
 
     /**
      *
@@ -67,14 +72,42 @@ public class MSsfFunction<S extends IMSsf> implements IFunction, ISsqFunction {
         return new MSsfFunctionInstance<>(this, parameters);
     }
 
+    /**
+     *
+     * @return
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to compute in parallel the numerical derivatives
+     * of the function and of the sum of squares (see
+     * ParallelNumericalDerivatives). The derivatives are the same as in the
+     * sequential computation. Null (default) for sequential computation.
+     *
+     * @param executor
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
     @Override
-    public NumericalDerivatives getDerivatives(IFunctionInstance point) {
-        return new NumericalDerivatives(this, point, false, true);
+    public IFunctionDerivatives getDerivatives(IFunctionInstance point) {
+        if (executor != null) {
+            return new ParallelNumericalDerivatives(this, point, false, true, executor);
+        } else {
+            return new NumericalDerivatives(this, point, false, true);
+        }
     }
 
     @Override
     public SsqNumericalDerivatives getDerivatives(ISsqFunctionInstance point) {
-        return new SsqNumericalDerivatives(this, point, false, true);
+        if (executor != null) {
+            return ParallelNumericalDerivatives.ssqDerivatives(this, point, false, true, executor);
+        } else {
+            return new SsqNumericalDerivatives(this, point, false, true);
+        }
     }
 
     /**
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.data.IReadDataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.realfunctions.IFunction;
+import ec.tstoolkit.maths.realfunctions.IFunctionDerivatives;
+import ec.tstoolkit.maths.realfunctions.IFunctionInstance;
+import ec.tstoolkit.maths.realfunctions.IParametersDomain;
+import ec.tstoolkit.maths.realfunctions.ISsqFunction;
+import ec.tstoolkit.maths.realfunctions.ISsqFunctionDerivatives;
+import ec.tstoolkit.maths.realfunctions.ISsqFunctionInstance;
+import ec.tstoolkit.maths.realfunctions.NumericalDerivatives;
+import ec.tstoolkit.maths.realfunctions.SsqNumericalDerivatives;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Numerical derivatives of a function, where the different evaluations of
+ * the function are executed in parallel. The evaluations of the function
+ * must be thread-safe (see MSsfFunction).
+ *
+ * The derivatives are computed by NumericalDerivatives (or by
+ * SsqNumericalDerivatives for the jacobian of a sum of squares), with the
+ * same steps and the same differences as the sequential computation, so that
+ * the results don't depend on the number of threads. The points requested by
+ * the numerical derivatives are first collected, evaluated in parallel and
+ * cached. The derivatives are then computed on the cached evaluations. Points
+ * that are not in the cache (failed evaluations or executor not available)
+ * are evaluated sequentially, so that errors and domain problems are handled
+ * exactly as in the sequential case.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class ParallelNumericalDerivatives implements IFunctionDerivatives {
+
+    private final Prefetcher fn;
+    private final IFunctionInstance point;
+    private final boolean sym, mul;
+    private final ExecutorService executor;
+    private NumericalDerivatives nd;
+
+    /**
+     *
+     * @param fn The function
+     * @param point The point where the derivatives are computed
+     * @param sym Symmetric differences (see NumericalDerivatives)
+     * @param mul Multiplicative steps (see NumericalDerivatives)
+     * @param executor The executor used for the evaluations of the function
+     */
+    public ParallelNumericalDerivatives(IFunction fn, IFunctionInstance point, boolean sym, boolean mul, ExecutorService executor) {
+        this.fn = new Prefetcher(fn, null);
+        this.point = point;
+        this.sym = sym;
+        this.mul = mul;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates the numerical derivatives of a sum of squares, which are
+     * identical to new SsqNumericalDerivatives(fn, point, sym, mul). The
+     * evaluations needed by the jacobian are done in parallel.
+     *
+     * @param fn The function
+     * @param point The point where the derivatives are computed
+     * @param sym Symmetric differences
+     * @param mul Multiplicative steps
+     * @param executor The executor used for the evaluations of the function
+     * @return
+     */
+    public static SsqNumericalDerivatives ssqDerivatives(ISsqFunction fn, ISsqFunctionInstance point, boolean sym, boolean mul, ExecutorService executor) {
+        Prefetcher pfn = new Prefetcher(null, fn);
+        pfn.record(point.getSsqE(), point.getE());
+        new SsqNumericalDerivatives(pfn, point, sym, mul).getJacobian();
+        pfn.prefetch(executor);
+        return new SsqNumericalDerivatives(pfn, point, sym, mul);
+    }
+
+    @Override
+    public double[] getGradient() {
+        if (nd == null) {
+            fn.record(point.getValue(), null);
+            new NumericalDerivatives(fn, point, sym, mul).getGradient();
+            fn.prefetch(executor);
+            nd = new NumericalDerivatives(fn, point, sym, mul);
+        }
+        return nd.getGradient();
+    }
+
+    @Override
+    public void getHessian(SubMatrix hessian) {
+        getGradient();
+        fn.record(point.getValue(), null);
+        NumericalDerivatives rnd = new NumericalDerivatives(fn, point, sym, mul);
+        rnd.getHessian(new Matrix(hessian.getRowsCount(), hessian.getColumnsCount()).subMatrix());
+        fn.prefetch(executor);
+        nd.getHessian(hessian);
+    }
+
+    /**
+     * Function that records the requested points (recording mode) or that
+     * serves the evaluations of the recorded points, which are computed in
+     * parallel
+     */
+    private static class Prefetcher implements IFunction, ISsqFunction {
+
+        private final IFunction fn;
+        private final ISsqFunction sfn;
+        private final ConcurrentHashMap<Key, Object> cache = new ConcurrentHashMap<>();
+        private final List<Key> requests = new ArrayList<>();
+        private boolean recording;
+        // values returned in recording mode (those of the initial point)
+        private double val;
+        private double[] e;
+
+        private Prefetcher(IFunction fn, ISsqFunction sfn) {
+            this.fn = fn;
+            this.sfn = sfn;
+        }
+
+        private void record(double val, double[] e) {
+            this.val = val;
+            this.e = e;
+            recording = true;
+        }
+
+        /**
+         * Evaluates in parallel the points recorded since the last call to
+         * record
+         */
+        private void prefetch(ExecutorService executor) {
+            recording = false;
+            if (executor == null || executor.isShutdown() || requests.isEmpty()) {
+                requests.clear();
+                return;
+            }
+            List<CompletableFuture<Void>> jobs = new ArrayList<>();
+            try {
+                for (Key key : requests) {
+                    if (!cache.containsKey(key)) {
+                        jobs.add(CompletableFuture.runAsync(() -> {
+                            try {
+                                cache.put(key, fn != null ? fn.evaluate(key.p) : sfn.ssqEvaluate(key.p));
+                            } catch (RuntimeException err) {
+                                // evaluated again (sequentially) by the numerical derivatives
+                            }
+                        }, executor));
+                    }
+                }
+            } catch (RejectedExecutionException err) {
+                // the missing evaluations are done sequentially
+            }
+            CompletableFuture.allOf(jobs.toArray(new CompletableFuture<?>[jobs.size()])).join();
+            requests.clear();
+        }
+
+        @Override
+        public IFunctionInstance evaluate(IReadDataBlock parameters) {
+            Key key = new Key(parameters);
+            Object cur = cache.get(key);
+            if (cur != null) {
+                return (IFunctionInstance) cur;
+            }
+            if (recording) {
+                requests.add(key);
+                return new Dummy(key.p);
+            }
+            return fn.evaluate(parameters);
+        }
+
+        @Override
+        public ISsqFunctionInstance ssqEvaluate(IReadDataBlock parameters) {
+            Key key = new Key(parameters);
+            Object cur = cache.get(key);
+            if (cur != null) {
+                return (ISsqFunctionInstance) cur;
+            }
+            if (recording) {
+                requests.add(key);
+                return new Dummy(key.p);
+            }
+            return sfn.ssqEvaluate(parameters);
+        }
+
+        @Override
+        public IFunctionDerivatives getDerivatives(IFunctionInstance point) {
+            return fn.getDerivatives(point);
+        }
+
+        @Override
+        public ISsqFunctionDerivatives getDerivatives(ISsqFunctionInstance point) {
+            return sfn.getDerivatives(point);
+        }
+
+        @Override
+        public IParametersDomain getDomain() {
+            return fn != null ? fn.getDomain() : sfn.getDomain();
+        }
+
+        // Returned in recording mode, with the values of the initial point
+        private class Dummy implements IFunctionInstance, ISsqFunctionInstance {
+
+            private final IReadDataBlock p;
+
+            private Dummy(IReadDataBlock p) {
+                this.p = p;
+            }
+
+            @Override
+            public IReadDataBlock getParameters() {
+                return p;
+            }
+
+            @Override
+            public double getValue() {
+                return val;
+            }
+
+            @Override
+            public double[] getE() {
+                return e;
+            }
+
+            @Override
+            public double getSsqE() {
+                return val;
+            }
+        }
+    }
+
+    private static class Key {
+
+        private final DataBlock p;
+        private final double[] values;
+        private final int hash;
+
+        private Key(IReadDataBlock p) {
+            values = new double[p.getLength()];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = p.get(i);
+            }
+            this.p = new DataBlock(values);
+            hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(values, ((Key) obj).values);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.data.DataBlockIterator;
+import ec.tstoolkit.maths.matrices.Matrix;
+
+/**
+ * Univariate treatment of a multivariate state space model (sequential
+ * processing of the observations, see Durbin-Koopman, 6.4). The model must
+ * have a diagonal H (or no H). The observations of each period are
+ * processed one by one, so that no factorization of ZPZ'+H is needed.
+ *
+ * The results are stored in the usual MState. For each observed variable i,
+ * F(i,i) contains the standard deviation of the univariate prediction error
+ * (sqrt(f(i))), E(i) the standardized prediction error and K(.,i) the
+ * standardized gain P(i)Z(i)'/sqrt(f(i)), where P(i) is the covariance of the
+ * state after the processing of the previous variables. The other elements
+ * of F are 0, so that the likelihood computed on the results (see
+ * MPredictionErrorDecomposition) is identical to the likelihood of MFilter.
+ * The gain doesn't include T: the results must be smoothed by UMSmoother.
+ *
+ * @author Jean Palate
+ */
+public class UMFilter {
+
+    private MState m_state;
+    private IMSsf m_ssf;
+    private IMSsfData m_data;
+    private int m_pos, m_end, m_r, m_v;
+    // state and covariance updated by the successive observations
+    private DataBlock m_a;
+    private Matrix m_P;
+
+    /**
+     *
+     */
+    public UMFilter() {
+    }
+
+    /**
+     * Processes the observations of the current period
+     */
+    public void mpred() {
+        m_state.F.set(0);
+        m_state.K.set(0);
+        m_state.E.set(0);
+        m_a.copy(m_state.A);
+        m_P.copy(m_state.P);
+        boolean hasH = m_ssf.hasH();
+        DataBlockIterator pcols = m_P.columns();
+        DataBlock pcol = pcols.getData();
+        for (int i = 0; i < m_v; ++i) {
+            if (m_data.isMissing(i, m_pos)) {
+                continue;
+            }
+            // M = P(i)Z(i)'
+            DataBlock k = m_state.K.column(i);
+            pcols.begin();
+            do {
+                k.set(pcols.getPosition(), m_ssf.ZX(m_pos, i, pcol));
+            } while (pcols.next());
+            // f = Z(i)P(i)Z(i)'+h(i)
+            double f = m_ssf.ZX(m_pos, i, k);
+            if (hasH) {
+                f += m_ssf.H(m_pos, i);
+            }
+            if (f < MFilter.Zero) {
+                k.set(0);
+                continue;
+            }
+            double sf = Math.sqrt(f);
+            double e = (m_data.get(i, m_pos) - m_ssf.ZX(m_pos, i, m_a)) / sf;
+            k.mul(1 / sf);
+            m_state.F.set(i, i, sf);
+            m_state.E.set(i, e);
+            // a(i+1) = a(i) + M/f * v, P(i+1) = P(i) - MM'/f
+            m_a.addAY(e, k);
+            m_P.addXaXt(-1, k);
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    public MState getState() {
+        return m_state;
+    }
+
+    private boolean initFilter() {
+        m_pos = 0;
+        m_r = m_ssf.getStateDim();
+        m_v = m_ssf.getVarsCount();
+        m_end = m_data.getCount();
+        if (m_ssf.hasH()) {
+            Matrix h = new Matrix(m_v, m_v);
+            m_ssf.H(0, h.subMatrix());
+            if (!h.subMatrix().isDiagonal()) {
+                return false;
+            }
+        }
+        m_a = new DataBlock(m_r);
+        m_P = new Matrix(m_r, m_r);
+        return true;
+    }
+
+    private int initState() {
+        m_state = new MState(m_r, m_v);
+        double[] a0 = m_data.getInitialState();
+        if (a0 != null) {
+            m_state.A.copyFrom(a0, 0);
+        }
+        m_ssf.Pf0(m_state.P.subMatrix());
+        m_ssf.TVT(m_pos, m_state.P.subMatrix());
+        m_ssf.addV(m_pos, m_state.P.subMatrix());
+        return 0;
+    }
+
+    /**
+     *
+     */
+    public void next() {
+        // P(t+1) = T P(p+1) T' + V, a(t+1) = T a(p+1)
+        m_state.P.copy(m_P);
+        m_ssf.TVT(m_pos, m_state.P.subMatrix());
+        m_ssf.addV(m_pos, m_state.P.subMatrix());
+        m_state.A.copy(m_a);
+        m_ssf.TX(m_pos, m_state.A);
+    }
+
+    /**
+     *
+     * @param ssf
+     * @param data
+     * @param rslts
+     * @return False if the model has a non diagonal H
+     */
+    public boolean process(final IMSsf ssf, final IMSsfData data, final IMFilteringResults rslts) {
+        m_ssf = ssf;
+        m_data = data;
+        if (!initFilter()) {
+            return false;
+        }
+        m_pos = initState();
+        if (m_pos < 0) {
+            return false;
+        }
+        if (rslts != null) {
+            rslts.prepare(m_ssf, m_data);
+        }
+        if (m_pos < m_end) {
+            do {
+                mpred();
+                if (rslts != null) {
+                    rslts.save(m_pos, m_state);
+                }
+                next();
+            } while (++m_pos < m_end);
+        }
+        if (rslts != null) {
+            rslts.close();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.data.DataBlockIterator;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+
+/**
+ * Smoother corresponding to the univariate treatment of a multivariate model
+ * (see UMFilter). The filtering results must have been generated by UMFilter.
+ *
+ * @author Jean Palate
+ */
+public class UMSmoother {
+
+    private boolean m_bvar = true;
+    private DataBlock m_a;
+    private SubMatrix m_P, m_K, m_F;
+    private DataBlock m_E;
+    private Matrix m_V;
+    private IMSsf m_ssf;
+    private IMSsfData m_data;
+    private MFilteringResults m_frslts;
+    private MSmoothingResults m_srslts;
+    private int m_pos, m_n, m_v, m_stop;
+    private DataBlock m_r;
+    private Matrix m_N, m_Z;
+    //
+    private DataBlock m_tmp, m_u;
+
+    /**
+     *
+     */
+    public UMSmoother() {
+    }
+
+    /**
+     *
+     */
+    private void clear() {
+        m_a = null;
+        m_V = null;
+        m_P = null;
+        m_K = null;
+        m_F = null;
+        m_E = null;
+        m_r = null;
+        m_ssf = null;
+        m_N = null;
+        m_Z = null;
+        m_frslts = null;
+        m_srslts = null;
+        m_pos = 0;
+        m_tmp = null;
+        m_u = null;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isCalcVariance() {
+        return m_bvar;
+    }
+
+    /**
+     *
+     * @param calc
+     */
+    public void setCalcVariance(boolean calc) {
+        m_bvar = calc;
+    }
+
+    /**
+     *
+     * @param stop
+     */
+    public void setStopPosition(int stop) {
+        m_stop = stop;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getStopPosition() {
+        return m_stop;
+    }
+
+    /**
+     *
+     */
+    private void initSmoother() {
+        m_pos = m_data.getCount() - 1;
+        m_n = m_ssf.getStateDim();
+        m_v = m_ssf.getVarsCount();
+        m_r = new DataBlock(m_n);
+        m_tmp = new DataBlock(m_n);
+        m_a = new DataBlock(m_n);
+        m_Z = new Matrix(m_v, m_n);
+        if (m_bvar) {
+            m_V = new Matrix(m_n, m_n);
+            m_N = new Matrix(m_n, m_n);
+            m_u = new DataBlock(m_n);
+        }
+        m_srslts.prepare(m_data.getCount(), m_n, m_v);
+    }
+
+    /**
+     *
+     */
+    protected void iterateSmoother() {
+        if (m_pos >= m_stop) {
+            // r(t,p) = T'r(t+1,0), N(t,p) = T'N(t+1,0)T
+            m_ssf.XT(m_pos, m_r);
+            if (m_bvar) {
+                XT(m_N.columns());
+                XT(m_N.rows());
+            }
+            for (int i = m_v - 1; i >= 0; --i) {
+                double sf = m_F.get(i, i);
+                if (sf != 0) {
+                    iterate(i, sf);
+                }
+            }
+            // a = a + P*r
+            m_tmp.product(m_r, m_P.columns());
+            m_a.add(m_tmp);
+            if (m_bvar) {
+                // V = P - PNP
+                SymmetricMatrix.quadraticForm(m_N.subMatrix(), m_P, m_V.subMatrix());
+                m_V.chs();
+                m_V.subMatrix().add(m_P);
+            }
+        }
+    }
+
+    /**
+     * Backward recursion for the variable i. With k = M/sqrt(f), L = I - kz/sqrt(f):
+     * r(i-1) = z'(e - k'r(i))/sqrt(f) + r(i)
+     * N(i-1) = z'z/f + L'N(i)L = N(i) - (z'u' + uz)/sqrt(f) + z'z (k'u + 1)/f,
+     * where u = N(i)k
+     */
+    private void iterate(int i, double sf) {
+        DataBlock k = m_K.column(i);
+        if (m_bvar) {
+            DataBlock z = m_Z.row(i);
+            m_u.product(k, m_N.columns());
+            double w = k.dot(m_u) + 1;
+            DataBlockIterator cols = m_N.columns();
+            DataBlock col = cols.getData();
+            do {
+                int c = cols.getPosition();
+                double zc = z.get(c);
+                if (zc != 0) {
+                    col.addAY(-zc / sf, m_u);
+                }
+                col.addAY((zc * w / sf - m_u.get(c)) / sf, z);
+            } while (cols.next());
+        }
+        double c = (m_E.get(i) - k.dot(m_r)) / sf;
+        m_ssf.XpZd(m_pos, i, m_r, c);
+    }
+
+    private void XT(DataBlockIterator X) {
+        DataBlock x = X.getData();
+        do {
+            m_ssf.XT(m_pos, x);
+        } while (X.next());
+    }
+
+    private void loadInfo() {
+        VarianceMFilter vf = m_frslts.getVarianceFilter();
+        m_F = vf.F(m_pos);
+        m_K = vf.K(m_pos);
+        m_P = vf.P(m_pos);
+        m_E = m_frslts.getFilteredData().E(m_pos);
+        m_a.copy(m_frslts.getFilteredData().A(m_pos));
+    }
+
+    private void loadModelInfo() {
+        m_ssf.Z(m_pos, m_Z.subMatrix());
+    }
+
+    /**
+     *
+     * @param ssf
+     * @param data
+     * @param frslts Results of UMFilter, with K and P
+     * @param rslts
+     * @return
+     */
+    public boolean process(final IMSsf ssf, final IMSsfData data,
+            final MFilteringResults frslts, final MSmoothingResults rslts) {
+        clear();
+        m_ssf = ssf;
+        m_data = data;
+        m_frslts = frslts;
+        m_srslts = rslts;
+        m_srslts.setSaveP(m_bvar);
+        initSmoother();
+        if (m_ssf.isTimeInvariant()) {
+            loadModelInfo();
+        }
+        while (m_pos >= m_stop) {
+            if (!m_ssf.isTimeInvariant()) {
+                loadModelInfo();
+            }
+            loadInfo();
+            iterateSmoother();
+            m_srslts.save(m_pos, m_a, m_V);
+            --m_pos;
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param ssf
+     * @param data
+     * @param rslts
+     * @return
+     */
+    public boolean process(final IMSsf ssf, final IMSsfData data, final MSmoothingResults rslts) {
+        MFilteringResults frslts = new MFilteringResults();
+        frslts.getVarianceFilter().setSavingK(true);
+        frslts.getVarianceFilter().setSavingP(true);
+        UMFilter filter = new UMFilter();
+        if (!filter.process(ssf, data, frslts)) {
+            return false;
+        }
+        return process(ssf, data, frslts, rslts);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public MFilteringResults getFilteringResults() {
+        return m_frslts;
+    }
+}
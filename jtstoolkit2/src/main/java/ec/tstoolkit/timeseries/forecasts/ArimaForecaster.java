@@ -58,6 +58,14 @@ public class ArimaForecaster implements ITsForecaster {
         return model_ != null;
     }
 
+    /**
+     *
+     * @return The model used for the last forecasts. May be null
+     */
+    public PreprocessingModel getModel() {
+        return model_;
+    }
+
     @Override
     public TsData getForecast() {
         try {
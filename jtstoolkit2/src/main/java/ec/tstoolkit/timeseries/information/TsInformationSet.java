@@ -25,9 +25,8 @@ import ec.tstoolkit.timeseries.simplets.TsDataTableInfo;
 import ec.tstoolkit.timeseries.simplets.TsDomain;
 import ec.tstoolkit.timeseries.simplets.TsFrequency;
 import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.util.Arrays;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 /**
  *
@@ -215,45 +214,84 @@ public class TsInformationSet {
     }
 
     public Day[] generatePublicationCalendar(int[] delays) {
-        SortedSet<Day> sdays = new TreeSet<>();
-        for (int i = 0; i < table_.getSeriesCount(); ++i) {
-            TsData s = table_.series(i);
-            TsDomain dom = s.getDomain();
-            int ndel = delays == null ? 0 : delays[i];
-            for (int j = 0; j < s.getLength(); ++j) {
-                if (!s.isMissing(j)) {
-                    TsPeriod p = dom.get(j);
-                    Day pub = p.lastday().plus(ndel);
-                    sdays.add(pub);
-                }
-            }
+        int n = table_.getSeriesCount();
+        int[] ndel = new int[n], pos = new int[n];
+        for (int i = 0; i < n; ++i) {
+            ndel[i] = delays == null ? 0 : delays[i];
         }
-        Day[] days = new Day[sdays.size()];
-        return sdays.toArray(days);
+        return generatePublicationCalendar(ndel, pos);
     }
 
     public Day[] generatePublicationCalendar(List<Integer> delays, Day start) {
-        SortedSet<Day> sdays = new TreeSet<>();
-        for (int i = 0; i < table_.getSeriesCount(); ++i) {
+        int n = table_.getSeriesCount();
+        int[] ndel = new int[n], pos = new int[n];
+        for (int i = 0; i < n; ++i) {
+            TsDomain dom = table_.series(i).getDomain();
+            ndel[i] = (delays == null || delays.isEmpty()) ? 0 : delays.get(i);
+            pos[i] = dom.search(start);
+            if (pos[i] < 0 && start.isBefore(dom.getStart().firstday())) {
+                pos[i] = 0;
+            }
+        }
+        return generatePublicationCalendar(ndel, pos);
+    }
+
+    /**
+     * Publication days of the non missing observations of the series,
+     * starting at the given positions (nothing is generated for a series when
+     * its position is negative). The days are handled as offsets from the
+     * start of the table, which are sorted and made unique.
+     */
+    private Day[] generatePublicationCalendar(int[] ndel, int[] pos) {
+        TsDomain tdom = table_.getDomain();
+        if (tdom == null) {
+            return new Day[0];
+        }
+        Day ref = tdom.getStart().firstday();
+        int n = 0;
+        for (int i = 0; i < ndel.length; ++i) {
+            if (pos[i] >= 0) {
+                n += Math.max(0, table_.series(i).getLength() - pos[i]);
+            }
+        }
+        int[] offsets = new int[n];
+        n = 0;
+        for (int i = 0; i < ndel.length; ++i) {
+            if (pos[i] < 0) {
+                continue;
+            }
             TsData s = table_.series(i);
             TsDomain dom = s.getDomain();
-            int ndel = (delays == null || delays.isEmpty()) ? 0 : delays.get(i);
-            int pos = dom.search(start);
-            if (pos < 0 && start.isBefore(dom.getStart().firstday())) {
-                pos = 0;
-            }
-            if (pos >= 0) {
-                for (int j = pos; j < s.getLength(); ++j) {
-                    if (!s.isMissing(j)) {
-                        TsPeriod p = dom.get(j);
-                        Day pub = p.lastday().plus(ndel);
-                        sdays.add(pub);
-                    }
+            for (int j = pos[i]; j < s.getLength(); ++j) {
+                if (!s.isMissing(j)) {
+                    offsets[n++] = dom.get(j).lastday().difference(ref) + ndel[i];
                 }
             }
         }
-        Day[] days = new Day[sdays.size()];
-        return sdays.toArray(days);
+        Arrays.sort(offsets, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; ++i) {
+            if (m == 0 || offsets[i] != offsets[m - 1]) {
+                offsets[m++] = offsets[i];
+            }
+        }
+        Day[] days = new Day[m];
+        for (int i = 0; i < m; ++i) {
+            days[i] = ref.plus(offsets[i]);
+        }
+        return days;
+    }
+
+    /**
+     * Creates an index of the vintages of this information set, which should
+     * be used when many vintages have to be generated (see
+     * generateInformation)
+     *
+     * @param delays The publication delays of the series
+     * @return
+     */
+    public TsVintageIndex createVintageIndex(final List<Integer> delays) {
+        return new TsVintageIndex(this, delays);
     }
 
     public TsInformationSet generateInformation(final List<Integer> delays, final Day date) {
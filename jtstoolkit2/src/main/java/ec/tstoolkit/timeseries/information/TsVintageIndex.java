@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.timeseries.information;
+
+import ec.tstoolkit.timeseries.Day;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsDomain;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Index of the vintages of an information set, for given publication delays.
+ * The publication days of the periods of each series are computed once; the
+ * data available at a given day are then found by a binary search in each
+ * series.
+ *
+ * The vintages generated by the index are identical to the ones generated
+ * by TsInformationSet.generateInformation. However, they share their series
+ * with the reference information set (when a series is complete) or with
+ * other vintages (the last generated vintage of each series is kept). They
+ * should not be modified.
+ *
+ * A TsData can't be a view on the first elements of an array. The incomplete
+ * series are so copied, once for each new number of visible periods (the
+ * successive days of a calendar often share the same vintage of a series).
+ * The number of visible periods (getVisibleCount) identifies a vintage
+ * without copying any data; it should be used when the vintages are only
+ * compared.
+ *
+ * @author Jean Palate
+ */
+public class TsVintageIndex {
+
+    private final TsData[] data_;
+    private final Day ref_;
+    // publication days of the periods of each series (in days from ref_),
+    // in increasing order
+    private final int[][] pub_;
+    // last vintage of each series
+    private final AtomicReferenceArray<TsData> cache_;
+
+    /**
+     *
+     * @param info The reference information set
+     * @param delays The publication delays of the series (in days). May be
+     * null or incomplete (missing delays are considered as 0)
+     */
+    public TsVintageIndex(TsInformationSet info, List<Integer> delays) {
+        data_ = info.toArray();
+        pub_ = new int[data_.length][];
+        cache_ = new AtomicReferenceArray<>(data_.length);
+        TsDomain dom = info.getCurrentDomain();
+        ref_ = dom == null ? null : dom.getStart().firstday();
+        for (int i = 0; i < data_.length; ++i) {
+            int ndel = 0;
+            if (delays != null && i < delays.size()) {
+                ndel = delays.get(i);
+            }
+            TsDomain sdom = data_[i].getDomain();
+            int[] pub = new int[sdom.getLength()];
+            for (int j = 0; j < pub.length; ++j) {
+                pub[j] = sdom.get(j).lastday().difference(ref_) + ndel;
+            }
+            pub_[i] = pub;
+        }
+    }
+
+    /**
+     *
+     * @return The number of series
+     */
+    public int getSeriesCount() {
+        return data_.length;
+    }
+
+    /**
+     * Number of periods of a series available at a given day. The available
+     * periods are always the first periods of the series (including missing
+     * values)
+     *
+     * @param series The position of the series
+     * @param day The considered day
+     * @return
+     */
+    public int getVisibleCount(int series, Day day) {
+        if (ref_ == null) {
+            return 0;
+        }
+        int[] pub = pub_[series];
+        int pos = Arrays.binarySearch(pub, day.difference(ref_));
+        if (pos < 0) {
+            return -pos - 1;
+        }
+        // the publication days are strictly increasing
+        return pos + 1;
+    }
+
+    /**
+     * Numbers of periods of the different series available at a given day
+     *
+     * @param day
+     * @return
+     */
+    public int[] getVisibleCounts(Day day) {
+        int[] n = new int[data_.length];
+        for (int i = 0; i < n.length; ++i) {
+            n[i] = getVisibleCount(i, day);
+        }
+        return n;
+    }
+
+    /**
+     * Generates the information available at a given day
+     *
+     * @param day The considered day
+     * @return A new information set
+     */
+    public TsInformationSet generateInformation(Day day) {
+        TsData[] inputc = new TsData[data_.length];
+        for (int i = 0; i < inputc.length; ++i) {
+            inputc[i] = series(i, getVisibleCount(i, day));
+        }
+        return new TsInformationSet(inputc);
+    }
+
+    /**
+     * Gets the data of a series available at a given day
+     *
+     * @param series The position of the series
+     * @param day The considered day
+     * @return The first periods of the series (see getVisibleCount)
+     */
+    public TsData getSeries(int series, Day day) {
+        return series(series, getVisibleCount(series, day));
+    }
+
+    private TsData series(int i, int n) {
+        TsData s = data_[i];
+        int len = s.getLength();
+        if (n == len) {
+            return s;
+        }
+        TsData cur = cache_.get(i);
+        if (cur != null && cur.getLength() == n) {
+            return cur;
+        }
+        cur = s.drop(0, len - n);
+        cache_.set(i, cur);
+        return cur;
+    }
+}
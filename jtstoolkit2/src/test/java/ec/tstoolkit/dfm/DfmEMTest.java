@@ -11,12 +11,15 @@ import ec.tstoolkit.data.DataBlock;
 import ec.tstoolkit.data.DescriptiveStatistics;
 import ec.tstoolkit.eco.Likelihood;
 import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.mssf2.MSmoothingResults;
 import ec.tstoolkit.ssf2.ResidualsCumulator;
 import ec.tstoolkit.timeseries.simplets.TsData;
 import ec.tstoolkit.timeseries.simplets.TsFrequency;
 import ec.tstoolkit.timeseries.simplets.TsPeriod;
 import ec.tstoolkit.var.VarSpec;
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -193,6 +196,97 @@ public class DfmEMTest {
  
    */  
    }
+
+    @Test
+    public void testEM2Allocation() {
+        if (stressTest) {
+            // bytes allocated by an EM iteration, estimated as the difference
+            // between two runs with a different number of iterations.
+            // Moment buffers of this model (3 factors, blocks of 12, 408
+            // periods, M/Q/YoY measurements), by iteration:
+            // - before the reuse of the buffers: 1461 new series of 408
+            // doubles (9 G, 18 G2, 1020 copies of covariances, 414 Efij),
+            // about 4.8 MB
+            // - after: no new series. The views on the smoothed covariances
+            // are gone too, since the moments are accumulated during the
+            // smoothing (see DfmSmoothedMoments) and the covariances are not
+            // stored anymore. What remains are the temporaries of the filter
+            // and of the smoother
+            java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+                return;
+            }
+            com.sun.management.ThreadMXBean tbean = (com.sun.management.ThreadMXBean) bean;
+            long id = Thread.currentThread().getId();
+            long[] bytes = new long[2];
+            int[] niter = new int[]{10, 20};
+            for (int k = 0; k < 2; ++k) {
+                DynamicFactorModel dmodelc = dmodel.clone();
+                dmodelc.normalize();
+                DfmEM2 em2 = new DfmEM2(null);
+                em2.setEpsilon(0);
+                em2.setMaxIter(niter[k]);
+                long b0 = tbean.getThreadAllocatedBytes(id);
+                em2.initialize(dmodelc, dfmdata);
+                bytes[k] = tbean.getThreadAllocatedBytes(id) - b0;
+            }
+            System.out.println("EM2: bytes allocated by iteration");
+            System.out.println((bytes[1] - bytes[0]) / (niter[1] - niter[0]));
+        }
+    }
+
+    @Test
+    public void testSmoothedMoments() {
+        DynamicFactorModel model = dmodel.clone();
+        model.normalize();
+        DfmProcessor processor = new DfmProcessor();
+        processor.setCalcVariance(true);
+        processor.process(model, dfmdata);
+        MSmoothingResults srslts = processor.getSmoothingResults();
+        DfmSmoothedMoments moments = new DfmSmoothedMoments(model);
+        processor.process(model, dfmdata, moments);
+        int n = model.getBlockLength() * model.getFactorsCount();
+        for (int i = 0; i < n; i += 5) {
+            for (int j = 0; j <= i; j += 3) {
+                DataBlock ai = srslts.getSmoothedStates().item(i), aj = srslts.getSmoothedStates().item(j);
+                DataBlock v = srslts.componentCovar(i, j);
+                assertEquals(v.sum() + ai.dot(aj), moments.sum(i, j), 1e-6);
+                assertEquals(v.get(0) + ai.get(0) * aj.get(0), moments.initial(i, j), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testSquarem() {
+        int[] niter = new int[2];
+        double[] ll = new double[2];
+        for (int k = 0; k < 2; ++k) {
+            DynamicFactorModel dmodelc = dmodel.clone();
+            dmodelc.normalize();
+            DfmEM2 em2 = new DfmEM2(null);
+            em2.setMaxIter(stressTest ? 1000 : 100);
+            em2.setAccelerated(k == 1);
+            long t0 = System.currentTimeMillis();
+            em2.initialize(dmodelc, dfmdata);
+            long t1 = System.currentTimeMillis();
+            niter[k] = em2.getIterationsCount();
+            ll[k] = em2.getFinalLogLikelihood();
+            if (stressTest) {
+                System.out.println(k == 0 ? "EM2" : "EM2 + SQUAREM");
+                System.out.println(niter[k]);
+                System.out.println(ll[k]);
+                System.out.println(t1 - t0);
+                if (k == 1) {
+                    System.out.println(em2.getAcceptedExtrapolationsCount());
+                    System.out.println(em2.getSavedIterationsCount());
+                }
+            }
+        }
+        // SQUAREM reaches (at least) the likelihood of EM, in no more iterations.
+        // The tolerance covers the stopping criterion of the EM (1e-6 by iteration)
+        assertTrue(niter[1] <= niter[0]);
+        assertTrue(ll[1] >= ll[0] - 1e-3);
+    }
     
        
 
@@ -15,6 +15,11 @@ import ec.tstoolkit.dfm.DynamicFactorModel.MeasurementStructure;
 import ec.tstoolkit.dfm.DynamicFactorModel.MeasurementType;
 import ec.tstoolkit.eco.Likelihood;
 import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import ec.tstoolkit.maths.realfunctions.IFunctionInstance;
+import ec.tstoolkit.maths.realfunctions.ISsqFunctionInstance;
+import ec.tstoolkit.maths.realfunctions.NumericalDerivatives;
 import ec.tstoolkit.mssf2.ArrayFilter;
 import ec.tstoolkit.mssf2.DefaultTimeInvariantMultivariateSsf;
 import ec.tstoolkit.mssf2.FullM2UMap;
@@ -24,10 +29,16 @@ import ec.tstoolkit.mssf2.IMSsf;
 import ec.tstoolkit.mssf2.M2UAdapter;
 import ec.tstoolkit.mssf2.M2UData;
 import ec.tstoolkit.mssf2.MFilter;
+import ec.tstoolkit.mssf2.MFilteringResults;
 import ec.tstoolkit.mssf2.MPredictionErrorDecomposition;
 import ec.tstoolkit.mssf2.MSmoother;
 import ec.tstoolkit.mssf2.MSmoothingResults;
+import ec.tstoolkit.mssf2.MSsfFunction;
+import ec.tstoolkit.mssf2.MSsfAlgorithm;
+import ec.tstoolkit.mssf2.MSsfFunctionInstance;
 import ec.tstoolkit.mssf2.MultivariateSsfData;
+import ec.tstoolkit.mssf2.UMFilter;
+import ec.tstoolkit.mssf2.UMSmoother;
 import ec.tstoolkit.ssf2.DiffuseFilteringResults;
 import ec.tstoolkit.ssf2.Filter;
 import ec.tstoolkit.ssf2.PredictionErrorDecomposition;
@@ -39,7 +50,10 @@ import ec.tstoolkit.timeseries.simplets.TsFrequency;
 import ec.tstoolkit.timeseries.simplets.TsPeriod;
 import ec.tstoolkit.var.VarSpec;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -257,6 +271,37 @@ public class DynamicFactorModelTest {
         }
     }
 
+    @Test
+    public void testTVT() {
+        IMSsf ssf = dmodel.ssfRepresentation();
+        DefaultTimeInvariantMultivariateSsf defssf = DefaultTimeInvariantMultivariateSsf.of(ssf);
+        Matrix x = new Matrix(ssf.getStateDim(), ssf.getStateDim());
+        x.randomize();
+        SymmetricMatrix.reinforceSymmetry(x.subMatrix());
+        Matrix y = x.clone();
+        ssf.TVT(0, x.subMatrix());
+        defssf.TVT(0, y.subMatrix());
+        ssf.TVT(0, x.subMatrix());
+        defssf.TVT(0, y.subMatrix());
+        assertTrue(x.minus(y).nrm2() < 1e-9);
+
+        if (stressTest) {
+            long t0 = System.currentTimeMillis();
+            for (int i = 0; i < 10000; ++i) {
+                ssf.TVT(0, y.clone().subMatrix());
+            }
+            long t1 = System.currentTimeMillis();
+            long s0 = System.currentTimeMillis();
+            for (int i = 0; i < 10000; ++i) {
+                defssf.TVT(0, y.clone().subMatrix());
+            }
+            long s1 = System.currentTimeMillis();
+            System.out.println("TVT");
+            System.out.println(s1 - s0);
+            System.out.println(t1 - t0);
+        }
+    }
+
     @Test
     public void testZX() {
         IMSsf ssf = dmodel.ssfRepresentation();
@@ -288,6 +333,221 @@ public class DynamicFactorModelTest {
         }
     }
 
+    /**
+     * Ragged data, with a balanced stretch (all the variables are observed
+     * between the periods 60 and 359)
+     */
+    private static Matrix balancedData() {
+        Matrix data = dd.clone();
+        int nv = data.getRowsCount();
+        data.subMatrix(0, nv, 60, 360).copy(ddrnd.subMatrix(0, nv, 60, 360));
+        return data;
+    }
+
+    @Test
+    public void testSteadyStateFilter() {
+        MultivariateSsfData data = new MultivariateSsfData(balancedData().subMatrix(), null);
+        MPredictionErrorDecomposition results = new MPredictionErrorDecomposition(true);
+        new MFilter().process(dmodel.ssfRepresentation(), data, results);
+        Likelihood ll = new Likelihood();
+        evaluate(results, ll);
+
+        MFilter filter = new MFilter();
+        filter.setSteadyStateTolerance(1e-9);
+        MPredictionErrorDecomposition sresults = new MPredictionErrorDecomposition(true);
+        filter.process(dmodel.ssfRepresentation(), data, sresults);
+        Likelihood sll = new Likelihood();
+        evaluate(sresults, sll);
+        assertEquals(ll.getLogLikelihood(), sll.getLogLikelihood(), 1e-6);
+        // the steady state is reached in the balanced stretch
+        assertTrue(filter.getSteadyStateCount() > 0);
+    }
+
+    @Test
+    public void testSteadyStateSmoother() {
+        MultivariateSsfData data = new MultivariateSsfData(balancedData().subMatrix(), null);
+        IMSsf ssf = dmodel.ssfRepresentation();
+        MSmoothingResults srslts = new MSmoothingResults();
+        new MSmoother().process(ssf, data, srslts);
+        MSmoother smoother = new MSmoother();
+        smoother.setSteadyStateTolerance(1e-9);
+        MSmoothingResults ssrslts = new MSmoothingResults();
+        assertTrue(smoother.process(ssf, data, ssrslts));
+        assertTrue(smoother.getSteadyStateCount() > 0);
+        for (int i = 0; i < ssf.getStateDim(); ++i) {
+            assertTrue(new DataBlock(srslts.component(i)).distance(new DataBlock(ssrslts.component(i))) < 1e-6);
+            assertTrue(srslts.componentVar(i).distance(ssrslts.componentVar(i)) < 1e-6);
+        }
+
+        // same results through the processor
+        Matrix balanced = balancedData();
+        TsData[] s = new TsData[balanced.getRowsCount()];
+        for (int i = 0; i < s.length; ++i) {
+            s[i] = new TsData(new TsPeriod(TsFrequency.Monthly, 1980, 0), balanced.row(i));
+        }
+        TsInformationSet input = new TsInformationSet(s);
+        DfmProcessor processor = new DfmProcessor();
+        processor.setCalcVariance(true);
+        assertTrue(processor.process(dmodel, input));
+        MSmoothingResults prslts = processor.getSmoothingResults();
+        processor = new DfmProcessor();
+        processor.setCalcVariance(true);
+        processor.setSteadyStateTolerance(1e-9);
+        assertTrue(processor.process(dmodel, input));
+        MSmoothingResults psrslts = processor.getSmoothingResults();
+        int c = dmodel.getBlockLength();
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(new DataBlock(prslts.component(i * c)).distance(new DataBlock(psrslts.component(i * c))) < 1e-6);
+            assertTrue(prslts.componentVar(i * c).distance(psrslts.componentVar(i * c)) < 1e-6);
+        }
+    }
+
+    @Test
+    public void testUnivariateFilter() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        MPredictionErrorDecomposition results = new MPredictionErrorDecomposition(true);
+        new MFilter().process(dmodel.ssfRepresentation(), data, results);
+        Likelihood ll = new Likelihood();
+        evaluate(results, ll);
+
+        MPredictionErrorDecomposition uresults = new MPredictionErrorDecomposition(true);
+        assertTrue(new UMFilter().process(dmodel.ssfRepresentation(), data, uresults));
+        Likelihood ull = new Likelihood();
+        evaluate(uresults, ull);
+        assertEquals(ll.getLogLikelihood(), ull.getLogLikelihood(), 1e-6);
+
+        MSmoothingResults srslts = new MSmoothingResults();
+        new MSmoother().process(dmodel.ssfRepresentation(), data, srslts);
+        MSmoothingResults usrslts = new MSmoothingResults();
+        new UMSmoother().process(dmodel.ssfRepresentation(), data, usrslts);
+        int c = dmodel.getBlockLength();
+        assertTrue(new DataBlock(srslts.component(c)).distance(new DataBlock(usrslts.component(c))) < 1e-6);
+        assertTrue(srslts.componentVar(c).distance(usrslts.componentVar(c)) < 1e-6);
+    }
+
+    @Test
+    public void testCheckpointSmoother() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        MSmoothingResults srslts = new MSmoothingResults();
+        new MSmoother().process(dmodel.ssfRepresentation(), data, srslts);
+        MSmoothingResults csrslts = new MSmoothingResults();
+        MSmoother smoother = new MSmoother();
+        // the last segment is incomplete
+        smoother.setCheckpointInterval(7);
+        assertTrue(smoother.process(dmodel.ssfRepresentation(), data, csrslts));
+        assertTrue(smoother.getFilteringResults().getVarianceFilter().P(0) == null);
+        int c = dmodel.getBlockLength();
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(new DataBlock(srslts.component(i * c)).distance(new DataBlock(csrslts.component(i * c))) < 1e-9);
+            assertTrue(srslts.componentVar(i * c).distance(csrslts.componentVar(i * c)) < 1e-9);
+        }
+    }
+
+    @Test
+    public void testProjectedVariances() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        IMSsf ssf = dmodel.ssfRepresentation();
+        int nv = ssf.getVarsCount(), d = ssf.getStateDim();
+        Matrix Z = new Matrix(nv, d);
+        for (int v = 0; v < nv; ++v) {
+            ssf.Z(0, v, Z.row(v));
+        }
+        MSmoothingResults srslts = new MSmoothingResults();
+        new MSmoother().process(ssf, data, srslts);
+        MSmoothingResults psrslts = new MSmoothingResults();
+        psrslts.setSaveFullP(false);
+        psrslts.setSaveDiagonal(true);
+        psrslts.setProjections(Z);
+        psrslts.setSelectedComponents(new int[]{0, 1});
+        new MSmoother().process(ssf, data, psrslts);
+        assertTrue(psrslts.P(0) == null);
+        for (int i = 0; i < d; ++i) {
+            assertTrue(srslts.componentVar(i).distance(psrslts.componentVar(i)) < 1e-9);
+        }
+        assertTrue(srslts.componentCovar(0, 1).distance(psrslts.componentCovar(0, 1)) < 1e-9);
+        for (int v = 0; v < nv; ++v) {
+            DataBlock z = Z.row(v);
+            assertTrue(new DataBlock(srslts.zvariance(z)).distance(new DataBlock(psrslts.zvariance(z))) < 1e-9);
+            assertEquals(srslts.zvariance(10, z), psrslts.zvariance(10, z), 1e-9);
+        }
+    }
+
+    @Test
+    public void testVariancesWithSavingStart() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        IMSsf ssf = dmodel.ssfRepresentation();
+        int nv = ssf.getVarsCount(), d = ssf.getStateDim();
+        int start = 100, n = dd.getColumnsCount();
+        Matrix Z = new Matrix(nv, d);
+        for (int v = 0; v < nv; ++v) {
+            ssf.Z(0, v, Z.row(v));
+        }
+        MSmoothingResults srslts = new MSmoothingResults();
+        new MSmoother().process(ssf, data, srslts);
+        MSmoothingResults ssrslts = new MSmoothingResults();
+        ssrslts.setSavingStart(start);
+        new MSmoother().process(ssf, data, ssrslts);
+        MSmoothingResults psrslts = new MSmoothingResults();
+        psrslts.setSavingStart(start);
+        psrslts.setSaveFullP(false);
+        psrslts.setSaveDiagonal(true);
+        psrslts.setProjections(Z);
+        new MSmoother().process(ssf, data, psrslts);
+        // scaled unit vector
+        DataBlock u = new DataBlock(d);
+        u.set(1, 2);
+        for (MSmoothingResults rslts : new MSmoothingResults[]{ssrslts, psrslts}) {
+            assertTrue(Double.isNaN(rslts.zvariance(start - 1, Z.row(0))));
+            double[] var = rslts.zvariance(Z.row(3)), uvar = rslts.zvariance(u);
+            assertEquals(n - start, var.length);
+            for (int t = start; t < n; ++t) {
+                double q = srslts.zvariance(t, Z.row(3));
+                assertEquals(q, var[t - start], 1e-9);
+                assertEquals(q, rslts.zvariance(t, Z.row(3)), 1e-9);
+                double uq = 4 * srslts.componentVar(1).get(t);
+                assertEquals(uq, uvar[t - start], 1e-9);
+                assertEquals(uq, rslts.zvariance(t, u), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testScore() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        DfmMapping mapping = new DfmMapping(dmodel);
+        DfmFunction fn = new DfmFunction(data, mapping, new MSsfAlgorithm());
+        MSsfFunctionInstance pt = fn.evaluate(mapping.parameters());
+        double[] ga = fn.getDerivatives(pt).getGradient();
+        double[] gn = new NumericalDerivatives(fn, pt, false, true).getGradient();
+        for (int i = 0; i < ga.length; ++i) {
+            assertEquals(gn[i], ga[i], 1e-3 * Math.max(1, Math.abs(gn[i])));
+        }
+    }
+
+    @Test
+    public void testParallelDerivatives() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        DfmMapping mapping = new DfmMapping(dmodel);
+        MSsfFunction fn = new MSsfFunction(data, mapping, new MSsfAlgorithm());
+        MSsfFunctionInstance pt = fn.evaluate(mapping.parameters());
+        double[] g = fn.getDerivatives((IFunctionInstance) pt).getGradient();
+        SubMatrix j = fn.getDerivatives((ISsqFunctionInstance) pt).getJacobian();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            fn.setExecutor(executor);
+            // same steps and same differences as the sequential computation
+            assertArrayEquals(g, fn.getDerivatives((IFunctionInstance) pt).getGradient(), 0);
+            SubMatrix pj = fn.getDerivatives((ISsqFunctionInstance) pt).getJacobian();
+            for (int r = 0; r < j.getRowsCount(); ++r) {
+                for (int c = 0; c < j.getColumnsCount(); ++c) {
+                    assertEquals(j.get(r, c), pj.get(r, c), 0);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     //@Test
     public void testVar2() {
         long q0 = System.currentTimeMillis();
@@ -514,6 +774,241 @@ public class DynamicFactorModelTest {
         System.out.println(q1 - q0);
     }
 
+    @Test
+    public void testNewsWeights() {
+        DfmNews news = new DfmNews(dmodel);
+        TsData[][] data = newsData();
+        TsData[] os = data[0], s = data[1];
+        TsPeriod start = s[0].getStart();
+        news.process(new TsInformationSet(os), new TsInformationSet(s));
+        int[] series = new int[]{0, 5, 23};
+        TsPeriod[] periods = new TsPeriod[series.length];
+        for (int i = 0; i < series.length; ++i) {
+            periods[i] = s[series[i]].getLastPeriod();
+        }
+        Matrix W = news.weights(series, periods);
+        // reference: the weights w of a target solve w * cov(news) = cov(target, news),
+        // where the covariances are computed one by one from the covariance of the
+        // extended states (as in the original, per-update computation)
+        List<TsInformationUpdates.Update> updates = news.newsDetails().news();
+        int n = updates.size();
+        TsPeriod last = start.plus(dd.getColumnsCount() - 1);
+        Matrix cov = new Matrix(n, n);
+        for (int i = 0; i < n; ++i) {
+            TsInformationUpdates.Update ui = updates.get(i);
+            for (int j = 0; j < n; ++j) {
+                TsInformationUpdates.Update uj = updates.get(j);
+                cov.set(i, j, newsCovariance(news, last, ui.series, ui.period, uj.series, uj.period));
+            }
+            cov.add(i, i, dmodel.getMeasurements().get(ui.series).var);
+        }
+        for (int i = 0; i < series.length; ++i) {
+            DataBlock w = W.row(i);
+            for (int j = 0; j < n; ++j) {
+                TsInformationUpdates.Update uj = updates.get(j);
+                double a = newsCovariance(news, last, series[i], periods[i], uj.series, uj.period);
+                assertEquals(a, w.dot(cov.column(j)), 1e-6 * Math.max(1, Math.abs(a)));
+            }
+            assertTrue(news.weights(series[i], periods[i]).distance(w) < 1e-9);
+        }
+    }
+
+    /**
+     * Data of the tests on the news: the complete series (second item) and
+     * the same series without their extremities, where the most recent ones
+     * are shortened by a random number of periods (first item)
+     */
+    private static TsData[][] newsData() {
+        TsData[] s = new TsData[dd.getRowsCount()];
+        TsData[] os = new TsData[dd.getRowsCount()];
+        Random rnd = new Random(0);
+        TsPeriod start = new TsPeriod(TsFrequency.Monthly, 1980, 0);
+        for (int i = 0; i < s.length; ++i) {
+            s[i] = new TsData(start, dd.row(i));
+            os[i] = s[i].cleanExtremities();
+            if (os[i].getEnd().minus(start) > dd.getColumnsCount() - 24) {
+                os[i] = os[i].drop(0, rnd.nextInt(12));
+            }
+        }
+        return new TsData[][]{os, s};
+    }
+
+    /**
+     * Covariance between the series s0 at period p0 and the series s1 at
+     * period p1, computed from the covariance of the extended states of the
+     * news (without the measurement errors)
+     */
+    private static double newsCovariance(DfmNews news, TsPeriod last, int s0, TsPeriod p0, int s1, TsPeriod p1) {
+        IMSsf ssf = news.getSsf();
+        Matrix mcov = news.getStateCovariance();
+        int c = dmodel.getBlockLength();
+        int nb = dmodel.getFactorsCount();
+        int xc = mcov.getRowsCount() / nb;
+        int d = ssf.getStateDim();
+        TsFrequency freq = last.getFrequency();
+        int istart = last.minus(p0.lastPeriod(freq)), jstart = last.minus(p1.lastPeriod(freq));
+        Matrix V = new Matrix(d, d);
+        for (int r = 0; r < nb; ++r) {
+            for (int s = 0; s < nb; ++s) {
+                V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
+                        mcov.subMatrix(r * xc + istart, r * xc + istart + c,
+                                s * xc + jstart, s * xc + jstart + c));
+            }
+        }
+        DataBlock tmp = new DataBlock(d);
+        for (int col = 0; col < d; ++col) {
+            tmp.set(col, ssf.ZX(0, s0, V.column(col)));
+        }
+        return ssf.ZX(0, s1, tmp);
+    }
+
+    @Test
+    public void testFilterRestart() {
+        // the first period of the restart is fully observed
+        int start = 120;
+        Matrix m = dd.clone();
+        DataBlock col = m.column(start);
+        for (int i = 0; i < col.getLength(); ++i) {
+            if (Double.isNaN(col.get(i))) {
+                col.set(i, 0);
+            }
+        }
+        MultivariateSsfData data = new MultivariateSsfData(m.subMatrix(), null);
+        IMSsf ssf = dmodel.ssfRepresentation();
+        MFilteringResults frslts = new MFilteringResults();
+        frslts.saveAll(0);
+        assertTrue(new MFilter().process(ssf, data, frslts));
+        MFilteringResults rrslts = new MFilteringResults();
+        assertTrue(new MFilter().process(ssf, data, rrslts, start,
+                frslts.getFilteredData().A(start), new Matrix(frslts.getVarianceFilter().P(start))));
+        for (int t = start; t < m.getColumnsCount(); ++t) {
+            assertTrue(frslts.getFilteredData().A(t).distance(rrslts.getFilteredData().A(t)) < 1e-9);
+        }
+    }
+
+    @Test
+    public void testIncrementalNews() {
+        TsData[][] data = newsData();
+        TsData[] os = data[0], s = data[1];
+        TsInformationSet oldSet = new TsInformationSet(os), newSet = new TsInformationSet(s);
+        DfmNews news = new DfmNews(dmodel);
+        news.process(oldSet, newSet);
+        DataBlock w = news.weights(23, s[23].getLastPeriod());
+        double f = news.getNewForecast(23, s[23].getLastPeriod());
+        DfmNews.Checkpoint checkpoint = null;
+        for (int k = 0; k < 2; ++k) {
+            DfmNews inews = new DfmNews(dmodel);
+            inews.setIncremental(true);
+            inews.setCheckpoint(checkpoint);
+            inews.process(oldSet, newSet);
+            checkpoint = inews.getCheckpoint();
+            assertTrue(checkpoint != null);
+            DataBlock iw = inews.weights(23, s[23].getLastPeriod());
+            assertTrue(w.distance(iw) < 1e-6);
+            assertEquals(f, inews.getNewForecast(23, s[23].getLastPeriod()), 1e-6);
+        }
+    }
+
+    @Test
+    public void testIncrementalNewsModifiedModel() {
+        TsData[][] data = newsData();
+        TsData[] os = data[0], s = data[1];
+        TsInformationSet oldSet = new TsInformationSet(os), newSet = new TsInformationSet(s);
+        DynamicFactorModel model = dmodel.clone();
+        DfmNews inews = new DfmNews(model);
+        inews.setIncremental(true);
+        inews.process(oldSet, newSet);
+        DfmNews.Checkpoint checkpoint = inews.getCheckpoint();
+        assertTrue(checkpoint != null);
+        // the same model object is modified in place: the checkpoint can't be reused
+        for (MeasurementDescriptor desc : model.getMeasurements()) {
+            desc.var *= 2;
+        }
+        DfmNews news = new DfmNews(model);
+        news.process(oldSet, newSet);
+        inews = new DfmNews(model);
+        inews.setIncremental(true);
+        inews.setCheckpoint(checkpoint);
+        inews.process(oldSet, newSet);
+        assertTrue(inews.getCheckpoint() != checkpoint);
+        assertTrue(news.weights(23, s[23].getLastPeriod()).distance(inews.weights(23, s[23].getLastPeriod())) < 1e-6);
+        assertEquals(news.getNewForecast(23, s[23].getLastPeriod()), inews.getNewForecast(23, s[23].getLastPeriod()), 1e-6);
+    }
+
+    @Test
+    public void testNowcaster() {
+        TsData[][] data = newsData();
+        TsData[] os = data[0], s = data[1];
+        TsInformationSet oldSet = new TsInformationSet(os), newSet = new TsInformationSet(s);
+        DfmNews news = new DfmNews(dmodel);
+        news.process(oldSet, newSet);
+        TsPeriod target = s[23].getLastPeriod();
+        DfmNowcaster nowcaster = new DfmNowcaster(dmodel);
+        nowcaster.initialize(oldSet);
+        nowcaster.addTarget(23, target);
+        double n0 = nowcaster.nowcasts()[0], impacts = 0;
+        long t0 = System.nanoTime();
+        List<TsInformationUpdates.Update> updates = news.newsDetails().news();
+        for (TsInformationUpdates.Update update : updates) {
+            DfmNowcaster.Event event = nowcaster.update(update.series, update.period, update.getObservation());
+            assertTrue(event != null);
+            impacts += event.impacts[0];
+        }
+        long t1 = System.nanoTime();
+        double n1 = nowcaster.nowcast(23, target);
+        assertEquals(news.getNewForecast(23, target), n1, 1e-6);
+        assertEquals(n1 - n0, impacts, 1e-6);
+        if (stressTest) {
+            System.out.println("Nowcaster: microseconds by update");
+            System.out.println((t1 - t0) / (1000 * updates.size()));
+        }
+    }
+
+    @Test
+    public void testNewsCovariance() {
+        int n = 20, dex = 30;
+        Matrix L = new Matrix(n, dex);
+        L.randomize();
+        Matrix X = new Matrix(dex, dex);
+        X.randomize();
+        Matrix mcov = SymmetricMatrix.XXt(X);
+        mcov.diagonal().add(1);
+        DataBlock var = new DataBlock(n);
+        var.set(.5);
+        Matrix lcov = DfmNews.covariance(L, DfmNews.projections(mcov, L), var);
+        Matrix cov = SymmetricMatrix.XXt(lcov);
+        DataBlock tmp = new DataBlock(dex);
+        for (int i = 0; i < n; ++i) {
+            tmp.product(L.row(i), mcov.columns());
+            for (int j = 0; j <= i; ++j) {
+                double q = tmp.dot(L.row(j));
+                if (i == j) {
+                    q += var.get(i);
+                }
+                assertEquals(q, cov.get(i, j), 1e-6 * Math.abs(q));
+            }
+        }
+        if (stressTest) {
+            System.out.println("News covariance");
+            dex = 120;
+            X = new Matrix(dex, dex);
+            X.randomize();
+            mcov = SymmetricMatrix.XXt(X);
+            for (int k : new int[]{10, 100, 1000, 5000}) {
+                L = new Matrix(k, dex);
+                L.randomize();
+                var = new DataBlock(k);
+                var.set(1);
+                long t0 = System.currentTimeMillis();
+                DfmNews.covariance(L, DfmNews.projections(mcov, L), var);
+                long t1 = System.currentTimeMillis();
+                System.out.print(k);
+                System.out.print('\t');
+                System.out.println(t1 - t0);
+            }
+        }
+    }
+
     //@Test
     public void testMapping() {
         DfmMapping mapping = new DfmMapping(dmodel);
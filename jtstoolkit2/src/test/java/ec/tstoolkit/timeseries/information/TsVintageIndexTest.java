@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.timeseries.information;
+
+import ec.tstoolkit.timeseries.Day;
+import ec.tstoolkit.timeseries.TsAggregationType;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Jean Palate
+ */
+public class TsVintageIndexTest {
+
+    public TsVintageIndexTest() {
+    }
+
+    @Test
+    public void testVintages() {
+        TsData m = data.Data.M1.drop(0, 3);
+        TsData q = data.Data.M2.changeFrequency(TsFrequency.Quarterly, TsAggregationType.Sum, true);
+        TsData x = data.Data.X.clone();
+        x.setMissing(x.getLength() - 5);
+        TsInformationSet info = new TsInformationSet(new TsData[]{m, q, x});
+        List<Integer> delays = Arrays.asList(15, 45, 30);
+
+        Day[] cal = info.generatePublicationCalendar(new int[]{15, 45, 30});
+        // reference computation of the calendar
+        TreeSet<Day> days = new TreeSet<>();
+        for (int i = 0; i < 3; ++i) {
+            TsData s = info.series(i);
+            for (int j = 0; j < s.getLength(); ++j) {
+                if (!s.isMissing(j)) {
+                    days.add(s.getDomain().get(j).lastday().plus(delays.get(i)));
+                }
+            }
+        }
+        assertArrayEquals(days.toArray(new Day[days.size()]), cal);
+        assertArrayEquals(cal, info.generatePublicationCalendar(delays, cal[0]));
+
+        TsVintageIndex index = info.createVintageIndex(delays);
+        for (int i = cal.length - 60; i < cal.length; ++i) {
+            for (Day day : new Day[]{cal[i], cal[i].minus(1)}) {
+                TsInformationSet v = info.generateInformation(delays, day);
+                TsInformationSet w = index.generateInformation(day);
+                int[] counts = index.getVisibleCounts(day);
+                for (int s = 0; s < 3; ++s) {
+                    assertEquals(v.series(s).getLength(), counts[s]);
+                    assertEquals(v.series(s), w.series(s));
+                }
+            }
+        }
+        // before the start of the data
+        Day start = info.getCurrentDomain().getStart().firstday();
+        assertEquals(0, index.getVisibleCount(0, start));
+    }
+}
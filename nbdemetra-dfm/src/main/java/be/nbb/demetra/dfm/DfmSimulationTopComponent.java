@@ -25,10 +25,11 @@ import ec.nbdemetra.ui.notification.MessageType;
 import ec.nbdemetra.ui.notification.NotifyUtil;
 import ec.nbdemetra.ui.properties.OpenIdePropertySheetBeanEditor;
 import ec.nbdemetra.ws.WorkspaceItem;
+import ec.tss.dfm.ArimaBenchmark;
 import ec.tss.dfm.DfmDocument;
 import ec.tss.dfm.DfmSimulation;
 import ec.tss.dfm.DfmSimulationResults;
-import ec.tss.dfm.SimulationResultsDocument;
+import ec.tss.dfm.SimulationStore;
 import ec.tss.dfm.VersionedDfmDocument;
 import ec.tstoolkit.dfm.DfmSimulationSpec;
 import ec.tstoolkit.dfm.DfmSpec;
@@ -36,7 +37,6 @@ import ec.tstoolkit.dfm.MeasurementSpec;
 import ec.tstoolkit.modelling.arima.tramo.TramoSpecification;
 import ec.tstoolkit.timeseries.Day;
 import ec.tstoolkit.timeseries.TsException;
-import ec.tstoolkit.timeseries.forecasts.ArimaForecaster;
 import ec.tstoolkit.timeseries.information.TsInformationSet;
 import ec.tstoolkit.timeseries.simplets.TsData;
 import ec.tstoolkit.timeseries.simplets.TsDataTable;
@@ -65,7 +65,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 import javax.swing.AbstractAction;
 import javax.swing.Box;
 import javax.swing.JButton;
@@ -162,6 +165,7 @@ public class DfmSimulationTopComponent extends AbstractDfmDocumentTopComponent {
             case READY:
                 break;
             case STARTED:
+                releaseStore();
                 swingWorker = new SimulationSwingWorker(getDocument());
                 progressHandle = ProgressHandleFactory.createHandle(getName(), () -> {
                     swingWorker.cancel(false);
@@ -185,6 +189,27 @@ public class DfmSimulationTopComponent extends AbstractDfmDocumentTopComponent {
         super.onSimulationStateChange();
     }
 
+    @Override
+    public void componentClosed() {
+        releaseStore();
+        super.componentClosed();
+    }
+
+    /**
+     * Closes the temporary store of the last simulation and deletes its file
+     */
+    private void releaseStore() {
+        if (simulation != null) {
+            SimulationStore store = simulation.getStore();
+            simulation.setStore(null);
+            // the file may still be mapped (Windows): it is then deleted at
+            // the exit of the application
+            if (store != null && !store.getFile().delete()) {
+                store.getFile().deleteOnExit();
+            }
+        }
+    }
+
     void writeProperties(java.util.Properties p) {
     }
 
@@ -222,16 +247,43 @@ public class DfmSimulationTopComponent extends AbstractDfmDocumentTopComponent {
             });
 
             publish("Processing simulation of DFM...");
-            simulation.process(vdoc.getCurrent(), new ArrayList<>(Arrays.asList(vdoc.getCurrent().getSpecification().getSimulationSpec().getEstimationDays())));
-            Map<Day, SimulationResultsDocument> results = simulation.getResults();
-            Day[] cal = new Day[results.size()];
-            cal = results.keySet().toArray(cal);
-            Arrays.sort(cal);
-
+            ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            SimulationStore store;
+            Day[] cal;
             List<Integer> delays = new ArrayList<>();
-            vdoc.getCurrent().getSpecification().getModelSpec().getMeasurements().stream().forEach((m) -> {
-                delays.add(m.getDelay());
-            });
+            TsData[][] arima;
+            try {
+                simulation.setExecutor(executor);
+                Day[] estimationDays = vdoc.getCurrent().getSpecification().getSimulationSpec().getEstimationDays();
+                // the results of the vintages are streamed to a temporary store
+                File sfile = File.createTempFile("dfm-simulation", ".bin");
+                sfile.deleteOnExit();
+                try (SimulationStore.Writer swriter = SimulationStore.create(sfile, info, horizon)) {
+                    simulation.setResultsConsumer(swriter);
+                    simulation.process(vdoc.getCurrent(), new ArrayList<>(Arrays.asList(estimationDays)));
+                }
+                store = SimulationStore.open(sfile);
+                simulation.setStore(store);
+                cal = store.getDays();
+
+                vdoc.getCurrent().getSpecification().getModelSpec().getMeasurements().stream().forEach((m) -> {
+                    delays.add(m.getDelay());
+                });
+
+                publish("Processing simulation of Arima...");
+                List<MeasurementSpec> measurements = vdoc.getCurrent().getSpecification().getModelSpec().getMeasurements();
+                int[] wseries = IntStream.range(0, measurements.size()).filter(j -> measurements.get(j).isWatched()).toArray();
+                ArimaBenchmark benchmark = new ArimaBenchmark(TramoSpecification.TRfull);
+                benchmark.setExecutor(executor);
+                benchmark.setEstimationDays(estimationDays);
+                TsData[][] warima = benchmark.process(info, wseries, delays, cal, horizon);
+                arima = new TsData[info.getSeriesCount()][];
+                for (int j = 0; j < wseries.length; ++j) {
+                    arima[wseries[j]] = warima[j];
+                }
+            } finally {
+                executor.shutdown();
+            }
 
             for (int s = 0; s < info.getSeriesCount(); ++s) {
                 boolean isWatched = vdoc.getCurrent().getSpecification().getModelSpec().getMeasurements().get(s).isWatched();
@@ -240,29 +292,13 @@ public class DfmSimulationTopComponent extends AbstractDfmDocumentTopComponent {
                     publish("Generating results of series #" + s);
                     TsDataTable tble = new TsDataTable();
                     for (int i = 0; i < cal.length; ++i) {
-                        if (results.get(cal[i]) != null) {
-                            if (results.get(cal[i]).getSimulationResults() != null) {
-                                if (results.get(cal[i]).getSimulationResults().contains("var" + (s + 1))) {
-                                    tble.insert(-1, results.get(cal[i]).getSimulationResults().getData("var" + (s + 1), TsData.class));
-                                } else {
-                                    System.out.println("Simulation results for calendar " + cal[i].toString() + " don't contain variable " + (s + 1));
-                                }
-                            } else {
-                                System.out.println("No simulation results for calendar " + cal[i].toString() + " - Variable " + (s + 1));
-                            }
-                        } else {
-                            System.out.println("No results for calendar " + cal[i].toString() + " - Variable " + (s + 1));
-                        }
+                        tble.insert(-1, store.getValues(i, s));
                     }
                     tble.insert(-1, info.series(s));
 
                     TsDataTable tble2 = new TsDataTable();
-                    ArimaForecaster af = new ArimaForecaster(TramoSpecification.TRfull.build());
-
-                    publish("Processing simulation of Arima for series #" + s + "...");
                     for (int i = 0; i < cal.length; ++i) {
-                        af.process(info.generateInformation(delays, cal[i]), s, horizon);
-                        tble2.insert(-1, af.getForecast());
+                        tble2.insert(-1, arima[s][i]);
                     }
                     tble2.insert(-1, info.series(s));
 
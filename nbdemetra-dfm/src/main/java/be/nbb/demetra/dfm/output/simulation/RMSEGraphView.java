@@ -26,6 +26,7 @@ import ec.tss.dfm.DfmSimulation;
 import ec.tss.dfm.DfmSimulationResults;
 import ec.tss.dfm.ForecastEvaluationResults;
 import ec.tss.dfm.SimulationResultsDocument;
+import ec.tss.dfm.SimulationStore;
 import ec.tss.tsproviders.utils.Formatters;
 import ec.tstoolkit.data.Table;
 import ec.tstoolkit.timeseries.Day;
@@ -365,10 +366,16 @@ public class RMSEGraphView extends javax.swing.JPanel {
         arimaDataset.addSeries("RMSE (Arima recursive est.)", new double[][]{xvalues, arimaValues});
 
         // Stdev
+        SimulationStore store = dfmSimulation.getStore();
         Map<Day, SimulationResultsDocument> results = dfmSimulation.getResults();
-        Day[] cal = new Day[results.size()];
-        cal = results.keySet().toArray(cal);
-        Arrays.sort(cal);
+        Day[] cal;
+        if (store != null) {
+            cal = store.getDays();
+        } else {
+            cal = new Day[results.size()];
+            cal = results.keySet().toArray(cal);
+            Arrays.sort(cal);
+        }
         TsPeriod lastPeriod = filteredPeriods.get(filterPanel.getEnd());
 
         xStdev = new ArrayList<>();
@@ -386,18 +393,23 @@ public class RMSEGraphView extends javax.swing.JPanel {
             }
         }
 
-        for (Day d : cal) {
+        for (int i = 0; i < cal.length; ++i) {
+            Day d = cal[i];
             int horizon = d.difference(lastPeriod.lastday());
             if (dfmTs.containsKey(horizon)) {
-                TsData[] smoothStdev = results.get(d).getSmoothedSeriesStdev();
-                if (smoothStdev != null) {
-                    TsData stdevs = results.get(d).getSmoothedSeriesStdev()[selectedIndex];
+                TsData[] smoothStdev = store != null ? null : results.get(d).getSmoothedSeriesStdev();
+                if (store != null || smoothStdev != null) {
+                    // the store is read lazily, vintage by vintage
+                    TsData stdevs = store != null ? store.getStdevs(i, selectedIndex) : smoothStdev[selectedIndex];
                     if (!stdevs.getFrequency().equals(lastPeriod.getFrequency())) {
                         stdevs = stdevs.changeFrequency(lastPeriod.getFrequency(), TsAggregationType.Last, true);
                     }
-                    Double stdev = stdevs.get(lastPeriod);
-                    xStdev.add(horizon);
-                    yStdev.add(stdev);
+                    double stdev = stdevs.get(lastPeriod);
+                    // missing stdevs (NaN in the store) are skipped
+                    if (!Double.isNaN(stdev)) {
+                        xStdev.add(horizon);
+                        yStdev.add(stdev);
+                    }
                 }
             }
         }
@@ -30,8 +30,8 @@ import ec.tss.dfm.DfmDocument;
 import ec.tss.dfm.DfmSeriesDescriptor;
 import ec.tss.dfm.DfmSimulation;
 import ec.tss.dfm.DfmSimulationResults;
-import ec.tss.dfm.ForecastEvaluationResults;
-import ec.tss.dfm.ForecastEvaluationResults.AccuracyTests;
+import ec.tss.dfm.ForecastEvaluation;
+import ec.tss.dfm.ForecastEvaluation.Measure;
 import ec.tss.tsproviders.utils.Formatters;
 import ec.tstoolkit.timeseries.TsAggregationType;
 import ec.tstoolkit.timeseries.simplets.TsData;
@@ -51,6 +51,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ToDoubleFunction;
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.DefaultComboBoxModel;
@@ -315,177 +316,82 @@ public class SimulationQuantifiedResultsView extends JPanel {
         TsPeriod end = filteredPeriods.get(filterPanel.getEnd());
         TsDomain dom = new TsDomain(start, end.minus(start)+1);
 
-        // Base
-        SimulationNode scale = new SimulationNode("Scale dependent", null);
-
-        List<Double> valuesRMSE = new ArrayList<>();
-        List<Double> valuesMAE = new ArrayList<>();
-        List<Double> valuesMdAE = new ArrayList<>();
+        // All the measures of a horizon are computed in one pass
+        List<ForecastEvaluation> evals = new ArrayList<>();
         for (Integer horizon : filteredHorizons) {
-            ForecastEvaluationResults rslt = new ForecastEvaluationResults(
-                    dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom), 
-                    arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom), 
-                    trueTsData.fittoDomain(dom));
-            
-            valuesRMSE.add(rslt.calcRMSE());
-            valuesMAE.add(rslt.calcMAE());
-            valuesMdAE.add(rslt.calcMdAE());
+            evals.add(ForecastEvaluation.of(
+                    dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom),
+                    arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom),
+                    trueTsData.fittoDomain(dom)));
         }
-        scale.addChild(new SimulationNode("RMSE", valuesRMSE));
-        scale.addChild(new SimulationNode("MAE", valuesMAE));
-        scale.addChild(new SimulationNode("MdAE", valuesMdAE));
+
+        // Base
+        SimulationNode scale = new SimulationNode("Scale dependent", null);
+        scale.addChild(new SimulationNode("RMSE", values(evals, e -> e.get(Measure.RMSE))));
+        scale.addChild(new SimulationNode("MAE", values(evals, e -> e.get(Measure.MAE))));
+        scale.addChild(new SimulationNode("MdAE", values(evals, e -> e.get(Measure.MdAE))));
 
         nodes.add(scale);
 
         SimulationNode percentage = new SimulationNode("Percentage errors", null);
-
-        List<Double> valuesRMSPE = new ArrayList<>();
-        List<Double> values_sMAPE = new ArrayList<>();
-        List<Double> values_sMdAPE = new ArrayList<>();
-        for (Integer horizon : filteredHorizons) {
-            ForecastEvaluationResults rslt = new ForecastEvaluationResults(
-                    dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom), 
-                    arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom), 
-                    trueTsData.fittoDomain(dom));
-            
-            valuesRMSPE.add(rslt.calcRMSPE());
-            values_sMAPE.add(rslt.calc_sMAPE());
-            values_sMdAPE.add(rslt.calc_sMdAPE());
-        }
-        percentage.addChild(new SimulationNode("RMSPE", valuesRMSPE));
-        percentage.addChild(new SimulationNode("sMAPE", values_sMAPE));
-        percentage.addChild(new SimulationNode("sMdAPE", values_sMdAPE));
+        percentage.addChild(new SimulationNode("RMSPE", values(evals, e -> e.get(Measure.RMSPE))));
+        percentage.addChild(new SimulationNode("sMAPE", values(evals, e -> e.get(Measure.sMAPE))));
+        percentage.addChild(new SimulationNode("sMdAPE", values(evals, e -> e.get(Measure.sMdAPE))));
 
         nodes.add(percentage);
 
         SimulationNode errors = new SimulationNode("Scaled errors", null);
-
-        List<Double> valuesRMSSE = new ArrayList<>();
-        List<Double> valuesMASE = new ArrayList<>();
-        List<Double> values_MdASE = new ArrayList<>();
-        for (Integer horizon : filteredHorizons) {
-            ForecastEvaluationResults rslt = new ForecastEvaluationResults(
-                    dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom), 
-                    arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom), 
-                    trueTsData.fittoDomain(dom));
-            
-            valuesRMSSE.add(rslt.calcRMSSE());
-            valuesMASE.add(rslt.calcMASE());
-            values_MdASE.add(rslt.calcMdASE());
-        }
-        errors.addChild(new SimulationNode("RMSSE", valuesRMSSE));
-        errors.addChild(new SimulationNode("MASE", valuesMASE));
-        errors.addChild(new SimulationNode("MdASE", values_MdASE));
+        errors.addChild(new SimulationNode("RMSSE", values(evals, e -> e.get(Measure.RMSSE))));
+        errors.addChild(new SimulationNode("MASE", values(evals, e -> e.get(Measure.MASE))));
+        errors.addChild(new SimulationNode("MdASE", values(evals, e -> e.get(Measure.MdASE))));
 
         nodes.add(errors);
 
         // Relative
         SimulationNode relative = new SimulationNode("Relative", null);
         scale = new SimulationNode("Scale dependent", null);
-
-        valuesRMSE = new ArrayList<>();
-        valuesMAE = new ArrayList<>();
-        valuesMdAE = new ArrayList<>();
-        for (Integer horizon : filteredHorizons) {
-            ForecastEvaluationResults rslt = new ForecastEvaluationResults(
-                    dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom), 
-                    arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom), 
-                    trueTsData.fittoDomain(dom));
-            
-            valuesRMSE.add(rslt.calcRelRMSE());
-            valuesMAE.add(rslt.calcRelMAE());
-            valuesMdAE.add(rslt.calcRelMdAE());
-        }
-        scale.addChild(new SimulationNode("RMSE", valuesRMSE));
-        scale.addChild(new SimulationNode("MAE", valuesMAE));
-        scale.addChild(new SimulationNode("MdAE", valuesMdAE));
+        scale.addChild(new SimulationNode("RMSE", values(evals, e -> e.getRelative(Measure.RMSE))));
+        scale.addChild(new SimulationNode("MAE", values(evals, e -> e.getRelative(Measure.MAE))));
+        scale.addChild(new SimulationNode("MdAE", values(evals, e -> e.getRelative(Measure.MdAE))));
 
         relative.addChild(scale);
 
         percentage = new SimulationNode("Percentage errors", null);
-
-        valuesRMSPE = new ArrayList<>();
-        values_sMAPE = new ArrayList<>();
-        values_sMdAPE = new ArrayList<>();
-        for (Integer horizon : filteredHorizons) {
-            ForecastEvaluationResults rslt = new ForecastEvaluationResults(
-                    dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom), 
-                    arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom), 
-                    trueTsData.fittoDomain(dom));
-            
-            valuesRMSPE.add(rslt.calcRelRMSPE());
-            values_sMAPE.add(rslt.calcRel_sMAPE());
-            values_sMdAPE.add(rslt.calcRel_sMdAPE());
-        }
-        percentage.addChild(new SimulationNode("RMSPE", valuesRMSPE));
-        percentage.addChild(new SimulationNode("sMAPE", values_sMAPE));
-        percentage.addChild(new SimulationNode("sMdAPE", values_sMdAPE));
+        percentage.addChild(new SimulationNode("RMSPE", values(evals, e -> e.getRelative(Measure.RMSPE))));
+        percentage.addChild(new SimulationNode("sMAPE", values(evals, e -> e.getRelative(Measure.sMAPE))));
+        percentage.addChild(new SimulationNode("sMdAPE", values(evals, e -> e.getRelative(Measure.sMdAPE))));
 
         relative.addChild(percentage);
 
         errors = new SimulationNode("Scaled errors", null);
-
-        valuesRMSSE = new ArrayList<>();
-        valuesMASE = new ArrayList<>();
-        values_MdASE = new ArrayList<>();
-        for (Integer horizon : filteredHorizons) {
-            ForecastEvaluationResults rslt = new ForecastEvaluationResults(
-                    dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom), 
-                    arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom), 
-                    trueTsData.fittoDomain(dom));
-            
-            valuesRMSSE.add(rslt.calcRelRMSSE());
-            valuesMASE.add(rslt.calcRelMASE());
-            values_MdASE.add(rslt.calcRelMdASE());
-        }
-        errors.addChild(new SimulationNode("RMSSE", valuesRMSSE));
-        errors.addChild(new SimulationNode("MASE", valuesMASE));
-        errors.addChild(new SimulationNode("MdASE", values_MdASE));
+        errors.addChild(new SimulationNode("RMSSE", values(evals, e -> e.getRelative(Measure.RMSSE))));
+        errors.addChild(new SimulationNode("MASE", values(evals, e -> e.getRelative(Measure.MASE))));
+        errors.addChild(new SimulationNode("MdASE", values(evals, e -> e.getRelative(Measure.MdASE))));
 
         relative.addChild(errors);
 
-        List<Double> pbValues = new ArrayList<>();
-        filteredHorizons.stream().map((horizon) -> new ForecastEvaluationResults(
-                dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom),
-                arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom),
-                trueTsData.fittoDomain(dom))).forEach((rslt) -> {
-                    pbValues.add(rslt.calcPB());
-        });
-        relative.addChild(new SimulationNode("Percentage better", pbValues));
+        relative.addChild(new SimulationNode("Percentage better", values(evals, ForecastEvaluation::getPB)));
 
         nodes.add(relative);
 
         // Diebold Mariano + Encompassing Test
         SimulationNode dm = new SimulationNode("Diebold Mariano", null);
-
-        List<Double> dmSqValues = new ArrayList<>();
-        List<Double> dmAbsValues = new ArrayList<>();
-        filteredHorizons.stream().map((horizon) -> new ForecastEvaluationResults(
-                dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom),
-                arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom),
-                trueTsData.fittoDomain(dom))).map((rslt) -> rslt.new AccuracyTests()).map((test) -> {
-                    dmSqValues.add(test.getDM());
-            return test;
-        }).forEach((test) -> {
-            dmAbsValues.add(test.getDMabs());
-        });
-        dm.addChild(new SimulationNode(D_M_TEST, dmSqValues));
-        dm.addChild(new SimulationNode(D_M_ABS_TEST, dmAbsValues));
+        dm.addChild(new SimulationNode(D_M_TEST, values(evals, ForecastEvaluation::getDM)));
+        dm.addChild(new SimulationNode(D_M_ABS_TEST, values(evals, ForecastEvaluation::getDMabs)));
 
         nodes.add(dm);
 
-        List<Double> encValues = new ArrayList<>();
-        filteredHorizons.stream().map((horizon) -> new ForecastEvaluationResults(
-                dfmTs.get(horizon) == null ? null : dfmTs.get(horizon).fittoDomain(dom),
-                arimaTs.get(horizon) == null ? null : arimaTs.get(horizon).fittoDomain(dom),
-                trueTsData.fittoDomain(dom))).map((rslt) -> rslt.new AccuracyTests()).forEach((test) -> {
-                    encValues.add(test.getDM_e());
-        });
-        SimulationNode enc = new SimulationNode(ENCOMPASING_TEST, encValues);
+        SimulationNode enc = new SimulationNode(ENCOMPASING_TEST, values(evals, ForecastEvaluation::getDM_e));
 
         nodes.add(enc);
     }
 
+    private static List<Double> values(List<ForecastEvaluation> evals, ToDoubleFunction<ForecastEvaluation> fn) {
+        List<Double> values = new ArrayList<>();
+        evals.forEach(e -> values.add(fn.applyAsDouble(e)));
+        return values;
+    }
+
     private List<TsPeriod> filterEvaluationSample(List<Double> trueValues) {
         List<TsPeriod> p = new ArrayList<>();
         for (int i = 0; i < trueValues.size(); i++) {